@@ -0,0 +1,47 @@
+package benchmarks;
+
+import common.DistributionMessage;
+import common.MessageUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/** Adjuntos XML y JSON que genera EmailService para cada estación. */
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class AttachmentBenchmark {
+
+    @Param({ "3", "30", "300" })
+    int variableCount;
+
+    private DistributionMessage message;
+
+    @Setup
+    public void setup() {
+        message = Fixtures.distribution(variableCount, MessageUtils.ENCODING_XML);
+    }
+
+    @Benchmark
+    public String xmlAttachment() {
+        return message.serializeToXmlStringForAttachment();
+    }
+
+    @Benchmark
+    public String jsonAttachment() {
+        return MessageUtils.toPrettyJson(message);
+    }
+}
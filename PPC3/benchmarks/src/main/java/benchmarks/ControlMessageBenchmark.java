@@ -0,0 +1,66 @@
+package benchmarks;
+
+import common.ByteSink;
+import common.ControlMessage;
+import common.ResponseMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ida y vuelta de los mensajes del canal de control: lo que hace el broker al
+ * enviar un comando y el servidor al recibirlo, y al revés con la respuesta.
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ControlMessageBenchmark {
+
+    private ControlMessage control;
+    private ResponseMessage response;
+    private final ByteSink sink = new ByteSink(1024);
+
+    @Setup
+    public void setup() {
+        control = new ControlMessage("SET_UNIT", "S1");
+        control.addParameter("variableName", "temperature");
+        control.addParameter("newUnit", "K");
+        response = new ResponseMessage(control.getMessageId(), "OK", "Unit for temperature changed to K");
+    }
+
+    @Benchmark
+    public ControlMessage controlRoundTrip() {
+        return ControlMessage.deserialize(control.serialize());
+    }
+
+    @Benchmark
+    public ControlMessage controlRoundTripBytes() {
+        sink.reset();
+        control.writeTo(sink);
+        return ControlMessage.deserialize(sink.array(), 0, sink.size());
+    }
+
+    @Benchmark
+    public ResponseMessage responseRoundTrip() {
+        return ResponseMessage.deserialize(response.serialize());
+    }
+
+    @Benchmark
+    public ResponseMessage responseRoundTripBytes() {
+        sink.reset();
+        response.writeTo(sink);
+        return ResponseMessage.deserialize(sink.array(), 0, sink.size());
+    }
+}
@@ -0,0 +1,74 @@
+package benchmarks;
+
+import common.ByteSink;
+import common.DistributionMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coste de codificar y decodificar un DistributionMessage en JSON y XML, tanto por
+ * la API textual (serialize/deserialize(String)) como por la de bytes que usan
+ * el servidor y el broker (writeTo/deserialize(byte[])).
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DistributionMessageBenchmark {
+
+    @Param({ "3", "30", "300" })
+    int variableCount;
+
+    @Param({ "JSON", "XML" })
+    String encoding;
+
+    private DistributionMessage message;
+    private String serialized;
+    private byte[] wire;
+    private final ByteSink sink = new ByteSink(64 * 1024);
+
+    @Setup
+    public void setup() {
+        message = Fixtures.distribution(variableCount, encoding);
+        serialized = message.serialize();
+        wire = message.toBytes();
+        if (DistributionMessage.deserialize(serialized) == null || DistributionMessage.deserialize(wire, 0, wire.length) == null) {
+            throw new IllegalStateException("Fixture does not round-trip in " + encoding);
+        }
+    }
+
+    @Benchmark
+    public String serialize() {
+        return message.serialize();
+    }
+
+    @Benchmark
+    public DistributionMessage deserialize() {
+        return DistributionMessage.deserialize(serialized);
+    }
+
+    @Benchmark
+    public int writeTo() {
+        sink.reset();
+        message.writeTo(sink);
+        return sink.size();
+    }
+
+    @Benchmark
+    public DistributionMessage deserializeBytes() {
+        return DistributionMessage.deserialize(wire, 0, wire.length);
+    }
+}
@@ -0,0 +1,27 @@
+package benchmarks;
+
+import common.DistributionMessage;
+import common.WeatherVariable;
+
+import java.util.Random;
+
+/** Mensajes de prueba con el aspecto de los que difunde un servidor. */
+final class Fixtures {
+    private static final String[][] BASE_VARIABLES = {
+            { "temperature", "C" }, { "humidity", "%" }, { "pressure", "hPa" } };
+
+    private Fixtures() {
+    }
+
+    /** Mensaje con {@code count} variables; las tres primeras son las de un servidor por defecto. */
+    static DistributionMessage distribution(int count, String encoding) {
+        Random random = new Random(42); // Mismos valores en cada fork
+        DistributionMessage msg = new DistributionMessage("S1", encoding);
+        for (int i = 0; i < count; i++) {
+            String name = i < BASE_VARIABLES.length ? BASE_VARIABLES[i][0] : "sensor_" + i;
+            String unit = i < BASE_VARIABLES.length ? BASE_VARIABLES[i][1] : "u";
+            msg.addVariable(new WeatherVariable(name, 10 + random.nextDouble() * 1000, unit));
+        }
+        return msg;
+    }
+}
@@ -9,10 +9,10 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.net.*;
-import java.util.Collections;
 import java.util.HashMap; // Necesario para el nuevo método handleConsoleControlCommand
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class Client {
 	private static final int BROADCAST_PORT = 5000;
@@ -21,7 +21,27 @@ public class Client {
 	private final String logFileSent = "client_sent_control.log";
 	private final String logFileServerResponses = "client_received_server_response.log";
 
-	private final Map<String, DistributionMessage> latestServerData = new ConcurrentHashMap<>();
+	// Últimos paquetes por estación, decodificados solo cuando se consultan
+	private final StationStore stationStore = new StationStore();
+	private final Map<String, DistributionMessage> latestServerData = stationStore.asMap();
+	private final SchemaDictionary schemaDictionary = new SchemaDictionary();
+	private final RequestThrottle keyframeRequests = new RequestThrottle(2000);
+	// Pérdidas, duplicados, desorden y jitter por estación según el número de secuencia
+	private final LinkMonitor linkMonitor = new LinkMonitor();
+	// Tramas y esquemas que el servidor envió fragmentados ("FRAG:"); solo lo usa el hilo de broadcast
+	private final Reassembler broadcastReassembler = new Reassembler(32, 1024 * 1024, 3000);
+	// Diario binario de las tramas recibidas (-Dbroker.journal=<dir>); null si no se usa
+	private final BroadcastJournal journal = BroadcastJournal.fromProperty("broker.journal");
+	// Espera por intento y número de intentos de cada comando de control. Los reintentos
+	// reenvían el mismo mensaje (mismo messageId), así que el servidor no lo ejecuta dos veces
+	private final int controlTimeoutMs = Math.max(1, Integer.getInteger("broker.controlTimeoutMs", 2000));
+	private final int controlAttempts = Math.max(1, Integer.getInteger("broker.controlAttempts", 3));
+	// Peticiones de control lanzadas desde el hilo de broadcast (p. ej. REQUEST_KEYFRAME)
+	private final ExecutorService backgroundCommands = Executors.newSingleThreadExecutor(r -> {
+		Thread t = new Thread(r, "BackgroundControlThread");
+		t.setDaemon(true);
+		return t;
+	});
 
 	// Target server para comandos enviados desde la consola del Broker
 	private InetAddress currentConsoleTargetServerAddress = null;
@@ -55,11 +75,30 @@ public class Client {
 			"S3", new ServerP2Info("localhost", 5003) // Asume que S3 está en localhost:5003
 	);
 
+	// Estaciones de un server.StationHost: cualquier ID no conocido se envía a su
+	// puerto de control compartido, p. ej. -Dbroker.stationHost=localhost:6000
+	private final ServerP2Info stationHost = parseStationHost(System.getProperty("broker.stationHost"));
+
+	private static ServerP2Info parseStationHost(String hostAndPort) {
+		if (hostAndPort == null || hostAndPort.isBlank()) {
+			return null;
+		}
+		int colon = hostAndPort.lastIndexOf(':');
+		try {
+			return new ServerP2Info(hostAndPort.substring(0, colon).trim(),
+					Integer.parseInt(hostAndPort.substring(colon + 1).trim()));
+		} catch (RuntimeException e) {
+			System.err.println("Invalid broker.stationHost '" + hostAndPort + "', expected host:port");
+			return null;
+		}
+	}
+
 	// Método para obtener la dirección y puerto de un servidor P2 por su ID
 	private ServerP2Info getServerP2Details(String serverId) {
 		if (serverId == null)
 			return null;
-		return knownP2Servers.get(serverId.toUpperCase()); // Búsqueda case-insensitive del ID
+		ServerP2Info known = knownP2Servers.get(serverId.toUpperCase()); // Búsqueda case-insensitive del ID
+		return known != null ? known : stationHost;
 	}
 	// --- FIN: Configuración de Servidores P2 Conocidos ---
 
@@ -111,22 +150,77 @@ public class Client {
 		System.out.println("Client shutdown complete.");
 	}
 
+	/**
+	 * Socket de escucha en el puerto 5000. Si se configuran grupos multicast
+	 * (-Dbroker.multicastGroups=239.255.10.1,239.255.10.2 y, opcionalmente,
+	 * -Dbroker.multicastInterface=eth0) se une solo a esos grupos: el resto de
+	 * estaciones multicast se filtran en la tarjeta y el kernel. Los broadcasts
+	 * siguen llegando igual.
+	 */
+	private DatagramSocket openBroadcastSocket() throws IOException {
+		String groups = System.getProperty("broker.multicastGroups", "").trim();
+		if (groups.isEmpty()) {
+			return new DatagramSocket(BROADCAST_PORT);
+		}
+		String interfaceName = System.getProperty("broker.multicastInterface");
+		NetworkInterface nif = null;
+		if (interfaceName != null && !interfaceName.isBlank()) {
+			nif = NetworkInterface.getByName(interfaceName.trim());
+			if (nif == null) {
+				System.err.println("Broker: Unknown multicast interface " + interfaceName + ", using the default one.");
+			}
+		}
+		MulticastSocket socket = new MulticastSocket(BROADCAST_PORT);
+		for (String group : groups.split(",")) {
+			if (group.isBlank()) {
+				continue;
+			}
+			try {
+				socket.joinGroup(new InetSocketAddress(InetAddress.getByName(group.trim()), 0), nif);
+				System.out.println("Broker: Joined multicast group " + group.trim());
+			} catch (IOException | IllegalArgumentException e) {
+				System.err.println("Broker: Could not join multicast group " + group.trim() + ": " + e.getMessage());
+			}
+		}
+		return socket;
+	}
+
 	private void listenForBroadcasts() {
-		try (DatagramSocket broadcastSocket = new DatagramSocket(BROADCAST_PORT)) {
+		try (DatagramSocket broadcastSocket = openBroadcastSocket()) {
 			broadcastSocket.setSoTimeout(5000);
 			byte[] buffer = new byte[8192];
+			PayloadCompressor decompressor = new PayloadCompressor(); // Solo lo usa este hilo
 
 			System.out.println("Client listening for broadcasts on port " + BROADCAST_PORT);
 			while (running) {
 				DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
 				try {
 					broadcastSocket.receive(packet);
-					String rawData = new String(packet.getData(), 0, packet.getLength());
-					MessageUtils.logMessage(logFileReceived,
-							"From " + packet.getAddress() + ":" + packet.getPort() + " - " + rawData);
-					DistributionMessage distMsg = DistributionMessage.deserialize(rawData);
-					if (distMsg != null) {
-						latestServerData.put(distMsg.getServerId(), distMsg);
+					byte[] data = packet.getData();
+					int offset = packet.getOffset();
+					int length = packet.getLength();
+					if (Fragmenter.hasPrefix(data, offset, length)) {
+						data = broadcastReassembler.accept(packet.getSocketAddress(), data, offset, length,
+								System.currentTimeMillis());
+						if (data == null) {
+							continue; // Faltan fragmentos
+						}
+						offset = 0;
+						length = data.length;
+					}
+					if (PayloadCompressor.isCompressed(data, offset, length)) {
+						ByteSink inflated = decompressor.decompress(data, offset, length);
+						data = inflated.array();
+						offset = 0;
+						length = inflated.size();
+					}
+					String source = packet.getAddress() + ":" + packet.getPort();
+					if (FrameBatch.hasPrefix(data, offset, length)) {
+						// Lote de muestras: se procesan en el orden en que las añadió el servidor
+						FrameBatch.forEach(data, offset, length, (frame, frameOffset, frameLength) -> handleFrame(
+								frame, frameOffset, frameLength, source));
+					} else {
+						handleFrame(data, offset, length, source);
 					}
 				} catch (SocketTimeoutException e) {
 					// Normal
@@ -136,15 +230,80 @@ public class Client {
 					}
 				}
 			}
-		} catch (SocketException e) {
+		} catch (IOException e) {
 			System.err.println("Broadcast listener socket error: " + e.getMessage());
 		} finally {
 			System.out.println("Broadcast listener stopped.");
 		}
 	}
 
+	private void handleFrame(byte[] data, int offset, int length, String source) {
+		if (SchemaMessage.hasPrefix(data, offset, length)) {
+			SchemaMessage schemaMsg = SchemaMessage.deserialize(data, offset, length);
+			if (schemaMsg != null) {
+				schemaDictionary.update(schemaMsg);
+				if (journal != null) {
+					journal.append(schemaMsg.getServerId(), data, offset, length);
+				}
+			}
+			return;
+		}
+		// Solo se lee la cabecera; el mensaje se decodifica cuando alguien consulta la estación
+		PacketHeader header = PacketHeader.peek(data, offset, length);
+		DistributionMessage decoded = null;
+		if (header == null) {
+			decoded = DistributionMessage.deserialize(data, offset, length);
+			header = decoded != null ? PacketHeader.of(decoded) : null;
+		}
+		if (BinaryCodec.hasPrefix(data, offset, length)) {
+			MessageUtils.logMessage(logFileReceived, "From " + source + " - " + MessageUtils.ENCODING_BIN + ": " + length
+					+ " bytes, " + (header != null ? header.getServerId() + " " + header.getFrameType() + " @" + header.getTimestamp()
+							: "(malformed)"));
+		} else {
+			MessageUtils.logMessage(logFileReceived, "From " + source + " - "
+					+ new String(data, offset, length, java.nio.charset.StandardCharsets.UTF_8));
+		}
+		if (header != null) {
+			if (journal != null) {
+				journal.append(header.getServerId(), data, offset, length);
+			}
+			storeBroadcast(header, data, offset, length, decoded);
+		}
+	}
+
+	private void storeBroadcast(PacketHeader header, byte[] data, int offset, int length, DistributionMessage decoded) {
+		String serverId = header.getServerId();
+		if (!linkMonitor.record(header, System.currentTimeMillis())) {
+			return; // Duplicado o más antiguo que lo ya recibido: no sobrescribe datos más nuevos
+		}
+		StationSchema schema = null;
+		if (header.getSchemaVersion() > 0) {
+			schema = schemaDictionary.lookup(serverId, header.getSchemaVersion());
+			if (schema == null) {
+				// Versión de esquema desconocida: se descarta el dato y se pide el esquema
+				if (schemaDictionary.shouldRequestSchema(serverId)) {
+					System.out.println("Broker: Unknown schema version " + header.getSchemaVersion() + " from " + serverId
+							+ ", requesting schema.");
+					backgroundCommands.execute(() -> sendControlCommand(serverId, "REQUEST_SCHEMA", null));
+				}
+				return;
+			}
+		}
+		if (!stationStore.store(header, data, offset, length, schema, decoded) && keyframeRequests.tryAcquire(serverId)) {
+			// Falta la KEY de esta DELTA: se pide sin bloquear la escucha (si falla, llegará la siguiente KEY periódica)
+			System.out.println("Broker: Missing keyframe " + header.getKeyframeId() + " from " + serverId
+					+ ", requesting a new one.");
+			backgroundCommands.execute(() -> sendControlCommand(serverId, "REQUEST_KEYFRAME", null));
+		}
+	}
+
 	public Map<String, DistributionMessage> getLatestServerData() {
-		return Collections.unmodifiableMap(latestServerData);
+		return latestServerData;
+	}
+
+	/** Estadísticas de recepción por estación (pérdidas, desorden, jitter). */
+	public Map<String, StationLinkStats> getLinkStats() {
+		return linkMonitor.snapshot();
 	}
 
 
@@ -177,31 +336,70 @@ public class Client {
 		}
 
 		try (DatagramSocket unicastSocket = new DatagramSocket()) {
-			unicastSocket.setSoTimeout(5000); // Timeout para la respuesta
+			unicastSocket.setSoTimeout(controlTimeoutMs); // Timeout para la respuesta, por intento
 
-			String serializedMsg = controlMsg.serialize();
-			byte[] sendBuffer = serializedMsg.getBytes();
+			// Se serializa una vez: los reintentos envían exactamente los mismos bytes
+			ByteSink sendBuffer = new ByteSink(256);
+			controlMsg.writeTo(sendBuffer);
+			Fragmenter fragmenter = new Fragmenter();
+			Fragmenter.DatagramSender sender = (data, offset, length) -> unicastSocket
+					.send(new DatagramPacket(data, offset, length, targetIp, targetPort));
 
-			// Usar targetIp y targetPort obtenidos del serverId para el envío UDP
-			DatagramPacket sendPacket = new DatagramPacket(sendBuffer, sendBuffer.length, targetIp, targetPort);
-			unicastSocket.send(sendPacket);
+			// Usar targetIp y targetPort obtenidos del serverId para el envío UDP (fragmentado si no cabe)
+			fragmenter.send(sendBuffer.array(), 0, sendBuffer.size(), sender);
 			MessageUtils.logMessage(logFileSent, "To " + targetIp + ":" + targetPort + " (for server "
-					+ targetServerIdInPayload + ") - " + serializedMsg);
+					+ targetServerIdInPayload + ") - " + sendBuffer.toString(java.nio.charset.StandardCharsets.UTF_8));
 			System.out.println("Broker: Sent command '" + command + "' to P2 Server '" + targetServerIdInPayload
 					+ "' at " + targetIp.getHostAddress() + ":" + targetPort);
 
-			// Esperar respuesta
-			byte[] receiveBuffer = new byte[1024];
+			// Esperar respuesta; si es larga llega en varios fragmentos
+			byte[] receiveBuffer = new byte[Fragmenter.MAX_DATAGRAM];
 			DatagramPacket receivePacket = new DatagramPacket(receiveBuffer, receiveBuffer.length);
-			unicastSocket.receive(receivePacket);
-			String responseData = new String(receivePacket.getData(), 0, receivePacket.getLength());
-			MessageUtils.logMessage(logFileServerResponses,
-					"From " + receivePacket.getAddress() + ":" + receivePacket.getPort() + " - " + responseData);
-			return ResponseMessage.deserialize(responseData);
+			Reassembler responseReassembler = null;
+			byte[] response = receiveBuffer;
+			int responseOffset;
+			int responseLength;
+			int attempt = 1;
+			while (true) {
+				try {
+					unicastSocket.receive(receivePacket);
+				} catch (SocketTimeoutException e) {
+					if (attempt >= controlAttempts) {
+						throw e;
+					}
+					// Respuesta (o comando) perdida: se reenvía el mismo mensaje; si ya se ejecutó,
+					// el servidor contesta con la respuesta guardada sin repetirlo
+					attempt++;
+					System.out.println("Broker: No response to '" + command + "' from " + targetServerIdInPayload
+							+ " yet, resending (attempt " + attempt + "/" + controlAttempts + ")");
+					fragmenter.send(sendBuffer.array(), 0, sendBuffer.size(), sender);
+					continue;
+				}
+				responseOffset = receivePacket.getOffset();
+				responseLength = receivePacket.getLength();
+				if (!Fragmenter.hasPrefix(receiveBuffer, responseOffset, responseLength)) {
+					break;
+				}
+				if (responseReassembler == null) {
+					responseReassembler = new Reassembler(1, Fragmenter.MAX_FRAGMENTS * Fragmenter.MAX_DATAGRAM, 5000);
+				}
+				response = responseReassembler.accept(receivePacket.getSocketAddress(), receiveBuffer, responseOffset,
+						responseLength, System.currentTimeMillis());
+				if (response != null) {
+					responseOffset = 0;
+					responseLength = response.length;
+					break;
+				}
+				receivePacket.setLength(receiveBuffer.length);
+			}
+			MessageUtils.logMessage(logFileServerResponses, "From " + receivePacket.getAddress() + ":"
+					+ receivePacket.getPort() + " - "
+					+ new String(response, responseOffset, responseLength, java.nio.charset.StandardCharsets.UTF_8));
+			return ResponseMessage.deserialize(response, responseOffset, responseLength);
 
 		} catch (SocketTimeoutException e) {
 			System.err.println("No response from P2 server " + targetServerIdInPayload + " ("
-					+ targetIp.getHostAddress() + ":" + targetPort + ") (timeout).");
+					+ targetIp.getHostAddress() + ":" + targetPort + ") (timeout, " + controlAttempts + " attempts).");
 			return new ResponseMessage(controlMsg.getMessageId(), "TIMEOUT",
 					"No response from server " + targetServerIdInPayload);
 		} catch (IOException e) {
@@ -280,7 +478,7 @@ public class Client {
 		String actualCommandToSend = commandType; // Por defecto, el comando es el mismo
 
 		if (currentConsoleTargetServerAddress == null || currentConsoleTargetServerPort == -1
-				&& !("LIST_DATA".equals(commandType) || "HELP".equals(commandType))) { // LIST_DATA y HELP no necesitan
+				&& !("LIST_DATA".equals(commandType) || "STATS".equals(commandType) || "HELP".equals(commandType))) { // LIST_DATA, STATS y HELP no necesitan
 																						// target
 			System.err.println(
 					"Error: Console target server IP or port not set. Use TARGET_SERVER <ip_address> <port> first for this console command.");
@@ -307,10 +505,56 @@ public class Client {
 			System.out.println("--- End Brokered Data ---");
 			return; // No envía mensaje
 
+		case "STATS":
+			System.out.println("--- Broadcast Reception Stats ---");
+			Map<String, StationLinkStats> stats = getLinkStats();
+			if (stats.isEmpty()) {
+				System.out.println("No broadcasts received yet.");
+			} else {
+				stats.values().forEach(s -> System.out.println("  " + s));
+			}
+			System.out.println("  Fragmented messages: " + broadcastReassembler);
+			if (journal != null) {
+				System.out.println("  Journal: " + journal.stats());
+			}
+			System.out.println("  Log writer: " + AsyncLogWriter.get().stats());
+			System.out.println("--- End Stats ---");
+			return; // No envía mensaje
+
+		case "XML_VALIDATION":
+			if (parts.length < 2) {
+				System.out.println("Usage: XML_VALIDATION <FULL|OFF|SAMPLED> [sample_every_n]");
+				System.out.println("Current: " + XmlCodec.getValidation() + " (1 in " + XmlCodec.getSampleEvery() + " when sampled)");
+				return;
+			}
+			try {
+				XmlCodec.setValidation(XmlCodec.Validation.valueOf(parts[1].toUpperCase()),
+						parts.length > 2 ? Integer.parseInt(parts[2]) : XmlCodec.getSampleEvery());
+				System.out.println("XML validation set to " + XmlCodec.getValidation());
+			} catch (IllegalArgumentException e) {
+				System.err.println("Invalid XML validation setting: " + e.getMessage());
+			}
+			return; // No envía mensaje
+		case "LOG_POLICY":
+			// Política del log asíncrono de este broker cuando su buffer se llena
+			if (parts.length < 2) {
+				System.out.println("Usage: LOG_POLICY <DROP|BLOCK|SAMPLE> [sample_every_n]");
+				System.out.println("Current: " + AsyncLogWriter.get().stats());
+				return;
+			}
+			try {
+				AsyncLogWriter.get().setPolicy(AsyncLogWriter.FullPolicy.valueOf(parts[1].toUpperCase()),
+						parts.length > 2 ? Integer.parseInt(parts[2]) : 10);
+				System.out.println("Log writer: " + AsyncLogWriter.get().stats());
+			} catch (IllegalArgumentException e) {
+				System.err.println("Invalid log policy: " + e.getMessage());
+			}
+			return; // No envía mensaje
+
 		// Comandos que SÍ envían un mensaje
 		case "SET_ENCODING":
 			if (parts.length < 3) {
-				System.out.println("Usage: SET_ENCODING <TargetServerID_in_payload> <JSON|XML>");
+				System.out.println("Usage: SET_ENCODING <TargetServerID_in_payload> <JSON|XML|BIN>");
 				return;
 			}
 			targetServerIdInPayload = parts[1];
@@ -339,6 +583,140 @@ public class Client {
 			parameters.put("variableName", parts[2]);
 			parameters.put("newUnit", parts[3]);
 			break;
+		case "SET_DELTA_MODE":
+			if (parts.length < 3) {
+				System.out.println("Usage: SET_DELTA_MODE <TargetServerID_in_payload> <keyframe_interval_ticks|0>");
+				return;
+			}
+			targetServerIdInPayload = parts[1];
+			try {
+				parameters.put("keyframeInterval", Integer.parseInt(parts[2]));
+			} catch (NumberFormatException e) {
+				System.err.println("Invalid keyframe interval.");
+				return;
+			}
+			break;
+		case "SET_SCHEMA_MODE":
+			if (parts.length < 3) {
+				System.out.println("Usage: SET_SCHEMA_MODE <TargetServerID_in_payload> <ON|OFF>");
+				return;
+			}
+			targetServerIdInPayload = parts[1];
+			parameters.put("active", "ON".equalsIgnoreCase(parts[2]) || "true".equalsIgnoreCase(parts[2]));
+			break;
+		case "SET_COMPRESSION":
+			if (parts.length < 3) {
+				System.out.println("Usage: SET_COMPRESSION <TargetServerID_in_payload> <ON|OFF>");
+				return;
+			}
+			targetServerIdInPayload = parts[1];
+			parameters.put("active", "ON".equalsIgnoreCase(parts[2]) || "true".equalsIgnoreCase(parts[2]));
+			break;
+		case "PUBLISH_POLICY":
+			if (parts.length < 4) {
+				System.out.println("Usage: PUBLISH_POLICY <TargetServerID_in_payload> <variable_name> <deadband|OFF> [heartbeat_s] [quantum]");
+				return;
+			}
+			targetServerIdInPayload = parts[1];
+			actualCommandToSend = "SET_PUBLISH_POLICY";
+			parameters.put("variableName", parts[2]);
+			try {
+				if ("OFF".equalsIgnoreCase(parts[3])) {
+					parameters.put("deadband", "OFF");
+				} else {
+					parameters.put("deadband", Double.parseDouble(parts[3]));
+					if (parts.length > 4) {
+						parameters.put("heartbeatSec", Integer.parseInt(parts[4]));
+					}
+					if (parts.length > 5) {
+						parameters.put("quantum", Double.parseDouble(parts[5]));
+					}
+				}
+			} catch (NumberFormatException e) {
+				System.err.println("Invalid publish policy parameters.");
+				return;
+			}
+			break;
+		case "PUBLISH_POLICIES":
+			if (parts.length < 2) {
+				System.out.println("Usage: PUBLISH_POLICIES <TargetServerID_in_payload>");
+				return;
+			}
+			targetServerIdInPayload = parts[1];
+			actualCommandToSend = "GET_PUBLISH_POLICY";
+			break;
+		case "SERVER_LOG_POLICY":
+			if (parts.length < 3) {
+				System.out.println("Usage: SERVER_LOG_POLICY <TargetServerID_in_payload> <DROP|BLOCK|SAMPLE> [sample_every_n]");
+				return;
+			}
+			targetServerIdInPayload = parts[1];
+			actualCommandToSend = "SET_LOG_POLICY";
+			parameters.put("policy", parts[2].toUpperCase());
+			if (parts.length > 3) {
+				try {
+					parameters.put("sampleRate", Integer.parseInt(parts[3]));
+				} catch (NumberFormatException e) {
+					System.err.println("Invalid sample rate: " + parts[3]);
+					return;
+				}
+			}
+			break;
+		case "SERVER_LOG_STATS":
+			if (parts.length < 2) {
+				System.out.println("Usage: SERVER_LOG_STATS <TargetServerID_in_payload>");
+				return;
+			}
+			targetServerIdInPayload = parts[1];
+			actualCommandToSend = "GET_LOG_STATS";
+			break;
+		case "SET_VARIABLE_PERIOD":
+			if (parts.length < 4) {
+				System.out.println("Usage: SET_VARIABLE_PERIOD <TargetServerID_in_payload> <variable_name> <period_us|0>");
+				return;
+			}
+			targetServerIdInPayload = parts[1];
+			parameters.put("variableName", parts[2]);
+			try {
+				parameters.put("periodMicros", Integer.parseInt(parts[3]));
+			} catch (NumberFormatException e) {
+				System.err.println("Invalid period: " + parts[3]);
+				return;
+			}
+			break;
+		case "SPIN_WAIT":
+			if (parts.length < 3) {
+				System.out.println("Usage: SPIN_WAIT <TargetServerID_in_payload> <ON|OFF>");
+				return;
+			}
+			targetServerIdInPayload = parts[1];
+			actualCommandToSend = "SET_SPIN_WAIT";
+			parameters.put("active", "ON".equalsIgnoreCase(parts[2]) || "true".equalsIgnoreCase(parts[2]));
+			break;
+		case "SCHEDULER_STATS":
+			if (parts.length < 2) {
+				System.out.println("Usage: SCHEDULER_STATS <TargetServerID_in_payload>");
+				return;
+			}
+			targetServerIdInPayload = parts[1];
+			actualCommandToSend = "GET_SCHEDULER_STATS";
+			break;
+		case "SET_BATCHING":
+			if (parts.length < 3) {
+				System.out.println("Usage: SET_BATCHING <TargetServerID_in_payload> <max_bytes|0> [max_latency_ms]");
+				return;
+			}
+			targetServerIdInPayload = parts[1];
+			try {
+				parameters.put("maxBytes", Integer.parseInt(parts[2]));
+				if (parts.length > 3) {
+					parameters.put("maxLatencyMs", Integer.parseInt(parts[3]));
+				}
+			} catch (NumberFormatException e) {
+				System.err.println("Invalid batching parameters.");
+				return;
+			}
+			break;
 		case "ACTIVATE_SERVER":
 			if (parts.length < 2) {
 				System.out.println("Usage: ACTIVATE_SERVER <TargetServerID_in_payload>");
@@ -365,6 +743,80 @@ public class Client {
 			targetServerIdInPayload = parts[1];
 			actualCommandToSend = "STOP_SERVER_PROCESS";
 			break;
+		case "SET_MULTICAST":
+			if (parts.length < 3) {
+				System.out.println("Usage: SET_MULTICAST <TargetServerID_in_payload> <group_address|OFF> [ttl]");
+				return;
+			}
+			targetServerIdInPayload = parts[1];
+			parameters.put("group", parts[2]);
+			if (parts.length > 3) {
+				try {
+					parameters.put("ttl", Integer.parseInt(parts[3]));
+				} catch (NumberFormatException e) {
+					System.err.println("Invalid TTL.");
+					return;
+				}
+			}
+			break;
+		case "SET_DATA_SOURCE":
+			if (parts.length < 3) {
+				System.out.println("Usage: SET_DATA_SOURCE <TargetServerID_in_payload> <RANDOM|file.csv|file.bin> [speed 1-1000] [LOOP|ONCE]");
+				return;
+			}
+			targetServerIdInPayload = parts[1];
+			parameters.put("source", parts[2]);
+			try {
+				if (parts.length > 3) {
+					parameters.put("speed", Integer.parseInt(parts[3]));
+				}
+			} catch (NumberFormatException e) {
+				System.err.println("Invalid replay speed.");
+				return;
+			}
+			if (parts.length > 4) {
+				parameters.put("loop", !"ONCE".equalsIgnoreCase(parts[4]));
+			}
+			break;
+		case "HOST_STATS":
+			// Estadísticas de un server.StationHost (requiere -Dbroker.stationHost)
+			targetServerIdInPayload = "HOST";
+			actualCommandToSend = "GET_HOST_STATS";
+			break;
+		case "BROADCAST_STATS":
+			if (parts.length < 2) {
+				System.out.println("Usage: BROADCAST_STATS <TargetServerID_in_payload>");
+				return;
+			}
+			targetServerIdInPayload = parts[1];
+			actualCommandToSend = "GET_BROADCAST_STATS";
+			break;
+		case "CONTROL_STATS":
+			if (parts.length < 2) {
+				System.out.println("Usage: CONTROL_STATS <TargetServerID_in_payload>");
+				return;
+			}
+			targetServerIdInPayload = parts[1];
+			actualCommandToSend = "GET_CONTROL_STATS";
+			break;
+		case "CONTROL_RATE_LIMIT":
+			if (parts.length < 3) {
+				System.out.println(
+						"Usage: CONTROL_RATE_LIMIT <TargetServerID_in_payload> <per_source_rate> [per_source_burst] [global_rate] [global_burst]");
+				return;
+			}
+			targetServerIdInPayload = parts[1];
+			actualCommandToSend = "SET_CONTROL_RATE_LIMIT";
+			try {
+				String[] names = { "perSourceRate", "perSourceBurst", "globalRate", "globalBurst" };
+				for (int i = 2; i < parts.length && i - 2 < names.length; i++) {
+					parameters.put(names[i - 2], Double.parseDouble(parts[i]));
+				}
+			} catch (NumberFormatException e) {
+				System.err.println("Invalid rate limit parameters.");
+				return;
+			}
+			break;
 		default:
 			System.out.println("Unknown command entered in console. Type 'HELP'.");
 			return; // No envía mensaje si el comando no se reconoce aquí
@@ -404,24 +856,64 @@ public class Client {
 		System.out.println(
 				"                                      (Note: API REST determines target from 'serverId' URL parameter).");
 		System.out.println("  LIST_DATA - Display current data stored by the broker.");
+		System.out.println("  STATS - Show per-station packets received, losses, duplicates, reordering and jitter.");
 		System.out.println(
-				"  SET_ENCODING <TargetServerID_in_payload> <JSON|XML> - Change data encoding for the specified P2 server.");
+				"  SET_ENCODING <TargetServerID_in_payload> <JSON|XML|BIN> - Change data encoding for the specified P2 server.");
 		System.out.println(
 				"  SET_FREQUENCY <TargetServerID_in_payload> <milliseconds> - Change broadcast frequency for the specified P2 server.");
 		System.out.println(
 				"  SET_UNIT <TargetServerID_in_payload> <VariableName> <NewUnit> - Change unit for a variable on the specified P2 server.");
+		System.out.println(
+				"  SET_DELTA_MODE <TargetServerID_in_payload> <ticks|0> - Send a keyframe every N ticks and only changes in between (0 disables).");
+		System.out.println(
+				"  SET_SCHEMA_MODE <TargetServerID_in_payload> <ON|OFF> - Send (id, value) pairs against the announced station schema.");
+		System.out.println(
+				"  SET_COMPRESSION <TargetServerID_in_payload> <ON|OFF> - Deflate broadcasts with the shared preset dictionary.");
+		System.out.println(
+				"  SET_BATCHING <TargetServerID_in_payload> <bytes|0> [ms] - Pack several samples per datagram (e.g. 1400 bytes, 200 ms; default 200 ms, 0 ms = send only when full).");
+		System.out.println(
+				"  PUBLISH_POLICY <TargetServerID_in_payload> <variable_name> <deadband|OFF> [heartbeat_s] [quantum] - Publish a variable only when it moves more than the dead-band (default heartbeat 30 s).");
+		System.out.println(
+				"  PUBLISH_POLICIES <TargetServerID_in_payload> - Show the server's per-variable publish policies.");
+		System.out.println(
+				"  SET_VARIABLE_PERIOD <TargetServerID_in_payload> <variable_name> <period_us|0> - Sample a variable at its own period (0 = broadcast frequency).");
+		System.out.println(
+				"  SPIN_WAIT <TargetServerID_in_payload> <ON|OFF> - Busy-wait the last 100us before each tick, for sub-millisecond periods.");
+		System.out.println(
+				"  SCHEDULER_STATS <TargetServerID_in_payload> - Show the broadcast scheduler's ticks, overruns and missed ticks.");
 		System.out.println(
 				"  ACTIVATE_SERVER <TargetServerID_in_payload> - Tell specified P2 server to start sending data.");
 		System.out.println(
 				"  DEACTIVATE_SERVER <TargetServerID_in_payload> - Tell specified P2 server to stop sending data.");
 		System.out.println(
 				"  STOP_SERVER <TargetServerID_in_payload> - Request the specified P2 server process to shut down.");
+		System.out.println(
+				"  SET_MULTICAST <TargetServerID_in_payload> <group|OFF> [ttl] - Publish to a multicast group (the broker joins the groups in -Dbroker.multicastGroups).");
+		System.out.println(
+				"  SET_DATA_SOURCE <TargetServerID_in_payload> <RANDOM|file> [speed] [LOOP|ONCE] - Replay a CSV/binary recording on the server (path on the server host).");
+		System.out.println(
+				"  HOST_STATS - Show tick and send counters of the station host set with -Dbroker.stationHost=<host:port>.");
+		System.out.println(
+				"  BROADCAST_STATS <TargetServerID_in_payload> - Show the server's broadcast send counters, failures and latency.");
+		System.out.println(
+				"  CONTROL_STATS <TargetServerID_in_payload> - Show the server's control port counters (queued, processed, dropped, slowest command).");
+		System.out.println(
+				"  CONTROL_RATE_LIMIT <TargetServerID_in_payload> <rate> [burst] [global_rate] [global_burst] - Datagrams/s accepted on the server's control port per source and in total (0: unlimited; burst >= 128 fragments).");
+		System.out.println(
+				"  XML_VALIDATION <FULL|OFF|SAMPLED> [n] - DTD validation of received XML broadcasts (SAMPLED: 1 in n).");
+		System.out.println(
+				"  LOG_POLICY <DROP|BLOCK|SAMPLE> [n] - What this broker's async log does when its buffer is full (SAMPLE: keep 1 in n).");
+		System.out.println(
+				"  SERVER_LOG_POLICY <TargetServerID_in_payload> <DROP|BLOCK|SAMPLE> [n] - Same for the server's log.");
+		System.out.println(
+				"  SERVER_LOG_STATS <TargetServerID_in_payload> - Show the server's async log counters (written, dropped, rotations).");
 		System.out.println("  HELP - Show this help message.");
 		System.out.println("  EXIT - Exit the client/broker application.");
 		System.out.println("\nHTTPS Gateway available at https://localhost:" + HTTP_GATEWAY_PORT + "/");
 		System.out.println("  - HTML Weather: https://localhost:" + HTTP_GATEWAY_PORT + "/meteorologia.html");
 		System.out
 				.println("  - REST API (example): https://localhost:" + HTTP_GATEWAY_PORT + "/apirest/muestra_valores");
+		System.out.println("  - REST API (stats): https://localhost:" + HTTP_GATEWAY_PORT + "/apirest/estadisticas");
 		System.out.println("  - Email Service: Check your configured email inbox ("
 				+ (emailService != null ? emailService.getServiceEmailAddress() : "not configured")
 				+ ") for requests/responses.");
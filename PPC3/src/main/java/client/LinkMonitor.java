@@ -0,0 +1,123 @@
+package client;
+
+import common.PacketHeader;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Sigue el número de secuencia de cada estación para contar pérdidas, duplicados
+ * y paquetes desordenados, y decide si un paquete es más nuevo que lo ya guardado.
+ * Los últimos 64 números de secuencia se recuerdan en una máscara de bits para
+ * distinguir un duplicado de un paquete que llega tarde.
+ */
+class LinkMonitor {
+	// Límites superiores (ms) de los intervalos del histograma de jitter; el último es abierto
+	private static final long[] JITTER_BOUNDS_MS = { 1, 5, 10, 50, 100, 500 };
+	private static final int WINDOW = 64;
+
+	private final Map<String, Station> stations = new ConcurrentHashMap<>();
+
+	/**
+	 * Registra la llegada de un paquete. Devuelve false si es un duplicado o llega
+	 * después de otro más nuevo de la misma estación (no debe sobrescribir datos).
+	 */
+	boolean record(PacketHeader header, long arrivalMillis) {
+		return stations.computeIfAbsent(header.getServerId(), id -> new Station())
+				.record(header.getSequence(), header.getTimestamp(), arrivalMillis);
+	}
+
+	/** Estadísticas por estación, ordenadas por serverId. */
+	Map<String, StationLinkStats> snapshot() {
+		Map<String, StationLinkStats> result = new TreeMap<>();
+		stations.forEach((serverId, station) -> result.put(serverId, station.snapshot(serverId)));
+		return result;
+	}
+
+	private static final class Station {
+		private long received;
+		private long lost;
+		private long duplicates;
+		private long outOfOrder;
+		private long restarts;
+
+		private long firstSequence; // Primera secuencia de la ejecución actual del servidor
+		private long highestSequence;
+		private long highestTimestamp;
+		private long seenMask; // Bit i: se recibió highestSequence - i
+
+		private boolean hasTransit;
+		private long lastTransit;
+		private double jitter;
+		private final long[] jitterCounts = new long[JITTER_BOUNDS_MS.length + 1];
+
+		synchronized boolean record(long sequence, long senderTimestamp, long arrivalMillis) {
+			received++;
+			recordTransit(arrivalMillis - senderTimestamp);
+			if (sequence <= 0) {
+				return true; // El servidor no numera los mensajes: no se puede comprobar
+			}
+			if (highestSequence == 0 || sequence > highestSequence) {
+				if (highestSequence == 0) {
+					firstSequence = sequence;
+					seenMask = 1;
+				} else {
+					long gap = sequence - highestSequence - 1;
+					lost += gap;
+					seenMask = gap + 1 >= WINDOW ? 1 : (seenMask << (gap + 1)) | 1;
+				}
+				highestSequence = sequence;
+				highestTimestamp = senderTimestamp;
+				return true;
+			}
+			if (senderTimestamp > highestTimestamp) {
+				// Secuencia menor pero emitida después: el servidor se ha reiniciado
+				restarts++;
+				firstSequence = sequence;
+				highestSequence = sequence;
+				highestTimestamp = senderTimestamp;
+				seenMask = 1;
+				return true;
+			}
+			long age = highestSequence - sequence;
+			if (age < WINDOW && (seenMask & (1L << age)) != 0) {
+				duplicates++;
+				return false;
+			}
+			outOfOrder++;
+			if (age < WINDOW && sequence > firstSequence) {
+				seenMask |= 1L << age;
+				lost--; // Se contó como hueco al llegar el más nuevo
+			}
+			return false;
+		}
+
+		private void recordTransit(long transit) {
+			if (hasTransit) {
+				long d = Math.abs(transit - lastTransit);
+				jitter += (d - jitter) / 16.0;
+				int bucket = 0;
+				while (bucket < JITTER_BOUNDS_MS.length && d >= JITTER_BOUNDS_MS[bucket]) {
+					bucket++;
+				}
+				jitterCounts[bucket]++;
+			}
+			lastTransit = transit;
+			hasTransit = true;
+		}
+
+		synchronized StationLinkStats snapshot(String serverId) {
+			Map<String, Long> histogram = new LinkedHashMap<>();
+			long lower = 0;
+			for (int i = 0; i < JITTER_BOUNDS_MS.length; i++) {
+				histogram.put(lower + "-" + JITTER_BOUNDS_MS[i] + "ms", jitterCounts[i]);
+				lower = JITTER_BOUNDS_MS[i];
+			}
+			histogram.put(">=" + lower + "ms", jitterCounts[JITTER_BOUNDS_MS.length]);
+			return new StationLinkStats(serverId, received, lost, duplicates, outOfOrder, restarts, highestSequence,
+					jitter, histogram);
+		}
+	}
+}
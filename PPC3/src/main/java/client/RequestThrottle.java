@@ -0,0 +1,24 @@
+package client;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/** Limita las peticiones automáticas a una estación (KEY, esquema...) a una cada cierto tiempo. */
+class RequestThrottle {
+	private final long intervalMs;
+	private final Map<String, Long> lastRequest = new ConcurrentHashMap<>();
+
+	RequestThrottle(long intervalMs) {
+		this.intervalMs = intervalMs;
+	}
+
+	boolean tryAcquire(String serverId) {
+		long now = System.currentTimeMillis();
+		Long last = lastRequest.get(serverId);
+		if (last != null && now - last < intervalMs) {
+			return false;
+		}
+		lastRequest.put(serverId, now);
+		return true;
+	}
+}
@@ -0,0 +1,53 @@
+package client;
+
+import common.DistributionMessage;
+import common.SchemaMessage;
+import common.StationSchema;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Diccionario de esquemas por estación. Resuelve los mensajes en modo esquema,
+ * que solo traen pares (id, valor), a variables con nombre y unidad.
+ */
+class SchemaDictionary {
+	private final Map<String, StationSchema> schemas = new ConcurrentHashMap<>();
+	private final RequestThrottle requestThrottle = new RequestThrottle(2000);
+
+	void update(SchemaMessage msg) {
+		if (msg.getServerId() == null || msg.getSchema() == null) {
+			return;
+		}
+		StationSchema previous = schemas.get(msg.getServerId());
+		if (previous == null || previous.getVersion() != msg.getSchema().getVersion()) {
+			System.out.println("Broker: Schema version " + msg.getSchema().getVersion() + " received from "
+					+ msg.getServerId() + " (" + msg.getSchema().size() + " variables)");
+		}
+		schemas.put(msg.getServerId(), msg.getSchema());
+	}
+
+	/** Esquema de la estación con esa versión, o null si no se conoce (aún). */
+	StationSchema lookup(String serverId, int schemaVersion) {
+		StationSchema schema = schemas.get(serverId);
+		return schema != null && schema.getVersion() == schemaVersion ? schema : null;
+	}
+
+	/**
+	 * Rellena nombre y unidad de las variables del mensaje con el esquema dado.
+	 * Devuelve false si algún id no pertenece al esquema.
+	 */
+	static boolean resolve(DistributionMessage msg, StationSchema schema) {
+		if (msg.getSchemaVersion() <= 0) {
+			return true;
+		}
+		if (schema == null || schema.getVersion() != msg.getSchemaVersion()) {
+			return false;
+		}
+		return msg.applySchema(schema);
+	}
+
+	boolean shouldRequestSchema(String serverId) {
+		return requestThrottle.tryAcquire(serverId);
+	}
+}
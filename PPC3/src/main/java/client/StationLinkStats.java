@@ -0,0 +1,63 @@
+package client;
+
+import java.util.Map;
+
+/**
+ * Estadísticas de recepción de broadcasts de una estación (copia de solo lectura).
+ * El jitter sigue el RFC 3550: variación del tiempo de tránsito (llegada menos
+ * timestamp del emisor) entre paquetes consecutivos, así que no hace falta que
+ * los relojes del servidor y del broker estén sincronizados.
+ */
+public class StationLinkStats {
+	private final String serverId;
+	private final long received;
+	private final long lost;
+	private final long duplicates;
+	private final long outOfOrder;
+	private final long restarts;
+	private final long lastSequence;
+	private final double jitterMs;
+	private final Map<String, Long> jitterHistogram;
+
+	StationLinkStats(String serverId, long received, long lost, long duplicates, long outOfOrder, long restarts,
+			long lastSequence, double jitterMs, Map<String, Long> jitterHistogram) {
+		this.serverId = serverId;
+		this.received = received;
+		this.lost = lost;
+		this.duplicates = duplicates;
+		this.outOfOrder = outOfOrder;
+		this.restarts = restarts;
+		this.lastSequence = lastSequence;
+		this.jitterMs = jitterMs;
+		this.jitterHistogram = jitterHistogram;
+	}
+
+	public String getServerId() { return serverId; }
+	public long getReceived() { return received; }
+	/** Huecos de secuencia aún sin rellenar (un paquete tardío deja de contar como perdido). */
+	public long getLost() { return lost; }
+	public long getDuplicates() { return duplicates; }
+	/** Paquetes que llegaron después de otro más nuevo (se descartan). */
+	public long getOutOfOrder() { return outOfOrder; }
+	/** Veces que la secuencia volvió a empezar (reinicio del servidor). */
+	public long getRestarts() { return restarts; }
+	public long getLastSequence() { return lastSequence; }
+	/** Jitter suavizado (J += (|D| - J) / 16), en milisegundos. */
+	public double getJitterMs() { return jitterMs; }
+	/** Número de muestras de |D| por intervalo, p. ej. "5-10ms". */
+	public Map<String, Long> getJitterHistogram() { return jitterHistogram; }
+
+	/** Porcentaje de paquetes perdidos sobre los esperados. */
+	public double getLossPercent() {
+		long expected = received - duplicates + lost;
+		return expected > 0 ? 100.0 * lost / expected : 0;
+	}
+
+	@Override
+	public String toString() {
+		return String.format(java.util.Locale.US,
+				"%s: received=%d lost=%d (%.2f%%) duplicates=%d outOfOrder=%d restarts=%d lastSeq=%d jitter=%.2fms\n    jitter histogram: %s",
+				serverId, received, lost, getLossPercent(), duplicates, outOfOrder, restarts, lastSequence, jitterMs,
+				jitterHistogram);
+	}
+}
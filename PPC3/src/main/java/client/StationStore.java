@@ -0,0 +1,271 @@
+package client;
+
+import common.DistributionMessage;
+import common.PacketHeader;
+import common.StationSchema;
+import common.VariableLayout;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Últimos datos de cada estación guardados como bytes crudos. Al recibir solo se
+ * lee la cabecera (PacketHeader); el DistributionMessage completo se decodifica
+ * cuando alguien consulta la estación y se reutiliza mientras no llegue otro
+ * paquete.
+ *
+ * En modo delta se guardan la última KEY y la última DELTA: la KEY decodificada
+ * se reutiliza para todas las DELTA que dependen de ella. Perder una DELTA no
+ * rompe el estado; perder una KEY se detecta porque el keyframeId no coincide.
+ *
+ * Las PARTIAL (solo las variables que la estación publica por su política de banda
+ * muerta) se combinan por nombre sobre lo anterior; las variables nuevas se añaden
+ * al final. Cada {@link #MAX_PENDING_PARTIALS} se consolidan en un único mensaje.
+ *
+ * Los mensajes que devuelve son de solo lectura ({@link DistributionMessage#freeze()}):
+ * el mismo objeto se entrega a todos los lectores hasta que llega otro paquete.
+ */
+class StationStore {
+	static final int MAX_PENDING_PARTIALS = 16;
+	private final Map<String, Slot> slots = new ConcurrentHashMap<>();
+	private final Map<String, DistributionMessage> view = new LatestView();
+
+	/**
+	 * Guarda un paquete de la estación. {@code decoded} puede venir ya decodificado
+	 * (si la cabecera no se pudo leer sin decodificar) o ser null. Devuelve false si
+	 * es una DELTA cuya KEY no se tiene.
+	 */
+	boolean store(PacketHeader header, byte[] data, int offset, int length, StationSchema schema,
+			DistributionMessage decoded) {
+		// Se copia: el buffer de recepción se reutiliza en el siguiente datagrama
+		if (header.isDelta() && !slots.containsKey(header.getServerId())) {
+			return false; // Sin KEY no se guarda, ni se crea un slot vacío que contaría en size()
+		}
+		Frame frame = new Frame(header, Arrays.copyOfRange(data, offset, offset + length), schema, decoded);
+		return slots.computeIfAbsent(header.getServerId(), id -> new Slot()).store(frame);
+	}
+
+	/** Vista de solo lectura; los valores se decodifican al leerlos. */
+	Map<String, DistributionMessage> asMap() {
+		return view;
+	}
+
+	/** Un paquete recibido, decodificado como mucho una vez. */
+	private static final class Frame {
+		final PacketHeader header;
+		final byte[] raw;
+		final StationSchema schema;
+		private DistributionMessage decoded;
+		private boolean failed;
+
+		/** Frame ya decodificado (resultado de consolidar PARTIAL). */
+		Frame(PacketHeader header, DistributionMessage decoded) {
+			this(header, null, null, decoded);
+		}
+
+		Frame(PacketHeader header, byte[] raw, StationSchema schema, DistributionMessage decoded) {
+			this.header = header;
+			this.raw = raw;
+			this.schema = schema;
+			this.decoded = decoded;
+		}
+
+		/** Se llama con el lock del Slot. */
+		DistributionMessage decode() {
+			if (decoded == null && !failed) {
+				DistributionMessage msg = DistributionMessage.deserialize(raw, 0, raw.length);
+				if (msg == null || !SchemaDictionary.resolve(msg, schema)) {
+					System.err.println("Broker: Could not decode stored packet from " + header.getServerId());
+					failed = true;
+				} else {
+					decoded = msg;
+				}
+			}
+			return decoded;
+		}
+	}
+
+	private static final class Slot {
+		private Frame base; // FULL o KEY
+		private Frame delta; // última DELTA sobre base, o null
+		private final List<Frame> partials = new ArrayList<>(); // PARTIAL posteriores, en orden
+		private long version;
+		private DistributionMessage materialized;
+		private long materializedVersion = -1;
+
+		synchronized boolean store(Frame frame) {
+			if (frame.header.isPartial()) {
+				partials.add(frame);
+				version++;
+				if (partials.size() >= MAX_PENDING_PARTIALS) {
+					consolidate();
+				}
+				return true;
+			}
+			partials.clear(); // FULL, KEY y DELTA traen el estado completo
+			if (frame.header.isDelta()) {
+				if (base == null || !DistributionMessage.FRAME_KEY.equals(base.header.getFrameType())
+						|| base.header.getKeyframeId() != frame.header.getKeyframeId()) {
+					return false;
+				}
+				delta = frame;
+			} else {
+				base = frame;
+				delta = null;
+			}
+			version++;
+			return true;
+		}
+
+		/** Mensaje completo de la estación; si el paquete nuevo no se puede decodificar, el anterior. */
+		synchronized DistributionMessage get() {
+			if (materializedVersion == version) {
+				return materialized;
+			}
+			DistributionMessage full = base != null ? base.decode() : null;
+			if (full != null && delta != null) {
+				DistributionMessage changes = delta.decode();
+				full = changes != null ? merge(full, changes) : null;
+			}
+			for (Frame partial : partials) {
+				DistributionMessage changes = partial.decode();
+				if (changes != null) {
+					full = full != null ? mergePartial(full, changes) : changes; // Sin base, la primera PARTIAL hace de base
+				}
+			}
+			if (full != null) {
+				full.freeze(); // Se entrega a todos los lectores (REST, HTML, correo): nadie puede cambiarlo
+				materialized = full;
+			}
+			materializedVersion = version;
+			return materialized;
+		}
+
+		// Se decodifican ya las PARTIAL pendientes para no guardarlas sin límite
+		private void consolidate() {
+			DistributionMessage full = get();
+			if (full != null) {
+				Frame last = partials.get(partials.size() - 1);
+				base = new Frame(base != null ? base.header : last.header, full);
+				delta = null;
+			}
+			partials.clear();
+		}
+
+		private static DistributionMessage mergePartial(DistributionMessage current, DistributionMessage partial) {
+			DistributionMessage full = new DistributionMessage(partial.getServerId(), partial.getEncodingFormat());
+			VariableLayout layout = current.getLayout();
+			double[] values = current.copyValues();
+			VariableLayout changed = partial.getLayout();
+			for (int i = 0; i < changed.size(); i++) {
+				String name = changed.getName(i);
+				int index = layout.indexOf(name);
+				if (index < 0) {
+					layout = layout.append(name, changed.getUnit(i), changed.getId(i));
+					values = Arrays.copyOf(values, layout.size());
+					index = layout.size() - 1;
+				} else if (changed.getUnit(i) != null && !changed.getUnit(i).equals(layout.getUnit(index))) {
+					layout = layout.with(index, name, changed.getUnit(i), changed.getId(i)); // Cambio de unidad
+				}
+				values[index] = partial.getValue(i);
+			}
+			full.setVariables(layout, values);
+			full.setTimestamp(partial.getTimestamp());
+			return full;
+		}
+
+		private static DistributionMessage merge(DistributionMessage keyframe, DistributionMessage delta) {
+			// Comparte el layout de la KEY; solo se copian los valores
+			DistributionMessage full = new DistributionMessage(delta.getServerId(), delta.getEncodingFormat());
+			double[] values = keyframe.copyValues();
+			VariableLayout changed = delta.getLayout();
+			for (int i = 0; i < changed.size(); i++) {
+				int index = keyframe.getLayout().indexOf(changed.getName(i));
+				if (index >= 0) {
+					values[index] = delta.getValue(i);
+				}
+			}
+			full.setVariables(keyframe.getLayout(), values);
+			full.setTimestamp(delta.getTimestamp());
+			return full;
+		}
+	}
+
+	/**
+	 * Map sobre los slots que decodifica cada estación solo cuando se accede a ella.
+	 * size() e isEmpty() cuentan los slots sin decodificar nada; una estación cuyos
+	 * paquetes no se han podido decodificar cuenta pero no aparece al iterar.
+	 */
+	private final class LatestView extends AbstractMap<String, DistributionMessage> {
+		private final Set<Entry<String, DistributionMessage>> entries = new AbstractSet<>() {
+			@Override
+			public Iterator<Entry<String, DistributionMessage>> iterator() {
+				Iterator<Entry<String, Slot>> it = slots.entrySet().iterator();
+				return new Iterator<>() {
+					private Entry<String, DistributionMessage> next;
+
+					@Override
+					public boolean hasNext() {
+						while (next == null && it.hasNext()) {
+							Entry<String, Slot> e = it.next();
+							DistributionMessage msg = e.getValue().get();
+							if (msg != null) {
+								next = new SimpleImmutableEntry<>(e.getKey(), msg);
+							}
+						}
+						return next != null;
+					}
+
+					@Override
+					public Entry<String, DistributionMessage> next() {
+						if (!hasNext()) {
+							throw new NoSuchElementException();
+						}
+						Entry<String, DistributionMessage> result = next;
+						next = null;
+						return result;
+					}
+				};
+			}
+
+			@Override
+			public int size() {
+				return slots.size();
+			}
+
+			@Override
+			public boolean isEmpty() {
+				return slots.isEmpty();
+			}
+		};
+
+		@Override
+		public Set<Entry<String, DistributionMessage>> entrySet() {
+			return entries;
+		}
+
+		@Override
+		public DistributionMessage get(Object key) {
+			Slot slot = slots.get(key);
+			return slot != null ? slot.get() : null;
+		}
+
+		@Override
+		public boolean containsKey(Object key) {
+			return get(key) != null;
+		}
+
+		@Override
+		public boolean isEmpty() {
+			return entries.isEmpty();
+		}
+	}
+}
@@ -14,9 +14,16 @@ public abstract class AbstractMessage implements Serializable {
         this.timestamp = System.currentTimeMillis();
     }
 
+    /** Para mensajes decodificados: messageId y timestamp se leen después, sin generar un UUID. */
+    protected AbstractMessage(String messageId, long timestamp) {
+        this.messageId = messageId;
+        this.timestamp = timestamp;
+    }
+
     // Getters and Setters
     public String getMessageId() { return messageId; }
     public long getTimestamp() { return timestamp; }
+    public void setTimestamp(long timestamp) { this.timestamp = timestamp; }
     public String getEncodingFormat() { return encodingFormat; }
     public void setEncodingFormat(String encodingFormat) { this.encodingFormat = encodingFormat; }
 
@@ -0,0 +1,312 @@
+package common;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Escritor de logs en segundo plano detrás de {@link MessageUtils#logMessage}. Los
+ * hilos que registran solo encolan la línea en un buffer circular acotado; un hilo
+ * propio la escribe por lotes en ficheros que se mantienen abiertos, y hace flush
+ * tras cada lote.
+ *
+ * Cuando el buffer está lleno se aplica la política configurada:
+ * <ul>
+ *   <li>DROP: la línea se descarta (y se cuenta);</li>
+ *   <li>BLOCK: el hilo espera a que haya sitio, como el log síncrono de antes;</li>
+ *   <li>SAMPLE: a partir de la mitad de ocupación solo se guarda 1 de cada
+ *       {@code sampleRate} líneas, y si aun así se llena se descartan.</li>
+ * </ul>
+ *
+ * Rotación: al pasar de {@code log.maxFileBytes} o de {@code log.rotateMinutes} el
+ * fichero se renombra a {@code nombre.1} (los anteriores pasan a .2, .3... hasta
+ * {@code log.maxFiles}) y se empieza uno nuevo.
+ *
+ * Configuración con propiedades del sistema: log.bufferSize (8192), log.fullPolicy
+ * (SAMPLE), log.sampleRate (10), log.maxFileBytes (10 MB, 0 sin límite),
+ * log.rotateMinutes (0: sin rotación por tiempo), log.maxFiles (5), log.flushMillis (200).
+ */
+public final class AsyncLogWriter {
+    public enum FullPolicy { DROP, BLOCK, SAMPLE }
+
+    private static final int MAX_BATCH = 1024;
+    private static final int MAX_OPEN_FILES = 256;
+    private static final String SEPARATOR = System.lineSeparator() + "----" + System.lineSeparator();
+
+    private static final class Holder {
+        static final AsyncLogWriter INSTANCE = new AsyncLogWriter();
+    }
+
+    private static final class Entry {
+        final String fileName;
+        final String content;
+
+        Entry(String fileName, String content) {
+            this.fileName = fileName;
+            this.content = content;
+        }
+    }
+
+    /** Fichero abierto; solo lo usa el hilo escritor. */
+    private static final class LogFile {
+        final Path path;
+        BufferedWriter out;
+        long size;
+        long openedMillis;
+
+        LogFile(Path path) {
+            this.path = path;
+        }
+    }
+
+    private final ArrayBlockingQueue<Entry> queue;
+    private final long maxFileBytes;
+    private final long rotateMillis;
+    private final int maxFiles;
+    private final long flushMillis;
+    private volatile FullPolicy policy;
+    private volatile int sampleRate;
+    private volatile boolean running = true;
+    private final Thread thread;
+
+    // Ficheros abiertos, cerrando el menos usado si hay demasiados
+    private final Map<String, LogFile> files = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, LogFile> eldest) {
+            if (size() > MAX_OPEN_FILES) {
+                close(eldest.getValue());
+                return true;
+            }
+            return false;
+        }
+    };
+
+    private final LongAdder enqueued = new LongAdder();
+    private final LongAdder written = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder sampledOut = new LongAdder();
+    private final LongAdder blockedNanos = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder rotations = new LongAdder();
+    private final LongAdder writeErrors = new LongAdder();
+    private final AtomicLong sampleCounter = new AtomicLong();
+    private volatile int maxBatch;
+
+    private AsyncLogWriter() {
+        this.queue = new ArrayBlockingQueue<>(Math.max(16, Integer.getInteger("log.bufferSize", 8192)));
+        this.maxFileBytes = Long.getLong("log.maxFileBytes", 10L * 1024 * 1024);
+        this.rotateMillis = Long.getLong("log.rotateMinutes", 0) * 60_000L;
+        this.maxFiles = Math.max(0, Integer.getInteger("log.maxFiles", 5));
+        this.flushMillis = Math.max(1, Long.getLong("log.flushMillis", 200));
+        FullPolicy configured;
+        try {
+            configured = FullPolicy.valueOf(System.getProperty("log.fullPolicy", "SAMPLE").trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            System.err.println("Unknown log.fullPolicy, using SAMPLE: " + e.getMessage());
+            configured = FullPolicy.SAMPLE;
+        }
+        this.policy = configured;
+        this.sampleRate = Math.max(1, Integer.getInteger("log.sampleRate", 10));
+        this.thread = new Thread(this::loop, "AsyncLogWriter");
+        this.thread.setDaemon(true);
+        this.thread.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::shutdown, "AsyncLogWriterShutdown"));
+    }
+
+    public static AsyncLogWriter get() {
+        return Holder.INSTANCE;
+    }
+
+    /** Encola una línea para {@code fileName}; no espera a que se escriba (salvo con BLOCK y el buffer lleno). */
+    public void log(String fileName, String content) {
+        if (!running) {
+            dropped.increment();
+            return;
+        }
+        Entry entry = new Entry(fileName, content);
+        FullPolicy p = policy;
+        if (p == FullPolicy.SAMPLE && queue.size() > queue.remainingCapacity()
+                && sampleCounter.incrementAndGet() % sampleRate != 0) {
+            sampledOut.increment();
+            return;
+        }
+        if (queue.offer(entry)) {
+            enqueued.increment();
+            return;
+        }
+        if (p != FullPolicy.BLOCK) {
+            dropped.increment();
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            queue.put(entry);
+            enqueued.increment();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            dropped.increment();
+        } finally {
+            blockedNanos.add(System.nanoTime() - start);
+        }
+    }
+
+    public void setPolicy(FullPolicy policy, int sampleRate) {
+        if (sampleRate < 1) {
+            throw new IllegalArgumentException("Sample rate must be >= 1: " + sampleRate);
+        }
+        this.sampleRate = sampleRate;
+        this.policy = policy;
+    }
+
+    private void loop() {
+        List<Entry> batch = new ArrayList<>(MAX_BATCH);
+        List<LogFile> touched = new ArrayList<>();
+        while (running || !queue.isEmpty()) {
+            try {
+                Entry first = queue.poll(flushMillis, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    queue.drainTo(batch, MAX_BATCH - 1);
+                    writeBatch(batch, touched);
+                    batch.clear();
+                }
+                if (rotateMillis > 0) {
+                    rotateOld(System.currentTimeMillis());
+                }
+            } catch (InterruptedException e) {
+                break;
+            } catch (RuntimeException e) {
+                System.err.println("Async log writer error: " + e.getMessage());
+            }
+        }
+        for (LogFile f : files.values()) {
+            close(f);
+        }
+        files.clear();
+    }
+
+    private void writeBatch(List<Entry> batch, List<LogFile> touched) {
+        if (batch.size() > maxBatch) {
+            maxBatch = batch.size();
+        }
+        for (Entry e : batch) {
+            LogFile f = files.computeIfAbsent(e.fileName, name -> new LogFile(Paths.get(name)));
+            try {
+                if (f.out == null) {
+                    open(f);
+                } else if (maxFileBytes > 0 && f.size >= maxFileBytes) {
+                    rotate(f);
+                }
+                if (!touched.contains(f)) {
+                    touched.add(f);
+                }
+                f.out.write(e.content);
+                f.out.write(SEPARATOR);
+                f.size += e.content.length() + SEPARATOR.length(); // Aproximado: caracteres, no bytes
+                written.increment();
+            } catch (IOException ex) {
+                writeErrors.increment();
+                System.err.println("Error logging message to " + e.fileName + ": " + ex.getMessage());
+                close(f);
+            }
+        }
+        for (LogFile f : touched) {
+            try {
+                if (f.out != null) {
+                    f.out.flush();
+                }
+            } catch (IOException ex) {
+                writeErrors.increment();
+                close(f);
+            }
+        }
+        touched.clear();
+        batches.increment();
+    }
+
+    private void open(LogFile f) throws IOException {
+        f.out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(f.path.toFile(), true), StandardCharsets.UTF_8),
+                64 * 1024);
+        f.size = Files.size(f.path);
+        f.openedMillis = System.currentTimeMillis();
+    }
+
+    private void rotateOld(long now) {
+        for (LogFile f : new ArrayList<>(files.values())) {
+            if (f.out != null && now - f.openedMillis >= rotateMillis && f.size > 0) {
+                try {
+                    rotate(f);
+                } catch (IOException e) {
+                    writeErrors.increment();
+                    System.err.println("Error rotating log " + f.path + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    // nombre -> nombre.1 -> nombre.2 ...; con maxFiles 0 el fichero simplemente se vacía
+    private void rotate(LogFile f) throws IOException {
+        close(f);
+        String name = f.path.toString();
+        if (maxFiles == 0) {
+            Files.deleteIfExists(f.path);
+        } else {
+            Files.deleteIfExists(Paths.get(name + "." + maxFiles));
+            for (int i = maxFiles - 1; i >= 1; i--) {
+                Path older = Paths.get(name + "." + i);
+                if (Files.exists(older)) {
+                    Files.move(older, Paths.get(name + "." + (i + 1)), StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+            if (Files.exists(f.path)) {
+                Files.move(f.path, Paths.get(name + ".1"), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        rotations.increment();
+        open(f);
+    }
+
+    private void close(LogFile f) {
+        if (f.out != null) {
+            try {
+                f.out.close();
+            } catch (IOException e) {
+                writeErrors.increment();
+            }
+            f.out = null;
+        }
+    }
+
+    // Al salir de la JVM se escribe lo que quede en el buffer
+    private void shutdown() {
+        running = false;
+        try {
+            thread.join(2000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public String stats() {
+        return "policy=" + policy + (policy == FullPolicy.SAMPLE ? " 1/" + sampleRate : "") + ", queued=" + queue.size()
+                + "/" + (queue.size() + queue.remainingCapacity()) + ", enqueued=" + enqueued.sum() + ", written="
+                + written.sum() + ", dropped=" + dropped.sum() + ", sampledOut=" + sampledOut.sum() + ", blockedMs="
+                + blockedNanos.sum() / 1_000_000 + ", batches=" + batches.sum() + ", maxBatch=" + maxBatch
+                + ", rotations=" + rotations.sum() + ", writeErrors=" + writeErrors.sum();
+    }
+}
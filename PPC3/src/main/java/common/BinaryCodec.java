@@ -0,0 +1,290 @@
+package common;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Codificación binaria compacta ("BIN") de DistributionMessage.
+ *
+ * Formato (tras el prefijo ASCII "BIN:"):
+ * <pre>
+ *   u8      versión del formato
+ *   u8      flags (bit 0: información de trama, bit 1: modo esquema, bit 2: secuencia)
+ *   [u8 tipo de trama (0 FULL, 1 KEY, 2 DELTA, 3 PARTIAL), varint keyframeId]  si flag de trama
+ *   [varint versión de esquema]  si flag de esquema (bit 1)
+ *   [varint número de secuencia]  si flag de secuencia (bit 2)
+ *   varint  timestamp (ms)
+ *   str     messageId
+ *   str     serverId
+ *   varint  número de variables
+ *   repetido: str nombre, f64 valor (IEEE 754 big-endian), str unidad
+ *   (en modo esquema, repetido: varint id, f64 valor)
+ * </pre>
+ * Cada {@code str} es un varint con la longitud en bytes seguido de UTF-8.
+ * Un {@code str} vacío representa un valor ausente (messageId y unidades de las
+ * tramas DELTA). Una trama PARTIAL lleva solo las variables que se publican en
+ * ese tick.
+ */
+public final class BinaryCodec {
+
+    public static final int FORMAT_VERSION = 1;
+
+    private static final int FLAG_FRAME = 0x01;
+    private static final int FLAG_SCHEMA = 0x02;
+    private static final int FLAG_SEQUENCE = 0x04;
+    private static final String[] FRAME_TYPES = {
+            DistributionMessage.FRAME_FULL, DistributionMessage.FRAME_KEY, DistributionMessage.FRAME_DELTA,
+            DistributionMessage.FRAME_PARTIAL };
+
+    private static final byte[] PREFIX = (MessageUtils.ENCODING_BIN + ":").getBytes(StandardCharsets.US_ASCII);
+
+    private BinaryCodec() {
+    }
+
+    /** Indica si el datagrama empieza por el prefijo "BIN:". */
+    public static boolean hasPrefix(byte[] data, int offset, int length) {
+        if (length < PREFIX.length) {
+            return false;
+        }
+        for (int i = 0; i < PREFIX.length; i++) {
+            if (data[offset + i] != PREFIX[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public static void encode(DistributionMessage msg, ByteSink out) {
+        out.write(PREFIX, 0, PREFIX.length);
+        out.write(FORMAT_VERSION);
+        int frameCode = frameCode(msg.getFrameType());
+        boolean schemaMode = msg.getSchemaVersion() > 0;
+        boolean sequenced = msg.getSequence() > 0;
+        out.write((frameCode != 0 ? FLAG_FRAME : 0) | (schemaMode ? FLAG_SCHEMA : 0) | (sequenced ? FLAG_SEQUENCE : 0));
+        if (frameCode != 0) {
+            out.write(frameCode);
+            out.writeVarLong(msg.getKeyframeId());
+        }
+        if (schemaMode) {
+            out.writeVarLong(msg.getSchemaVersion());
+        }
+        if (sequenced) {
+            out.writeVarLong(msg.getSequence());
+        }
+        out.writeVarLong(msg.getTimestamp());
+        writeString(out, msg.getMessageId());
+        writeString(out, msg.getServerId());
+        VariableLayout layout = msg.getLayout();
+        out.writeVarLong(layout.size());
+        for (int i = 0; i < layout.size(); i++) {
+            if (schemaMode) {
+                out.writeVarLong(layout.getId(i));
+                out.writeDouble(msg.getValue(i));
+            } else {
+                writeString(out, layout.getName(i));
+                out.writeDouble(msg.getValue(i));
+                writeString(out, layout.getUnit(i));
+            }
+        }
+    }
+
+    /**
+     * Decodifica directamente desde el buffer del datagrama, sin pasar el
+     * payload a String. Devuelve null si el formato no es válido.
+     */
+    public static DistributionMessage decode(byte[] data, int offset, int length) {
+        Reader in = new Reader(data, offset + PREFIX.length, offset + length);
+        try {
+            int version = in.readByte();
+            if (version != FORMAT_VERSION) {
+                System.err.println("Unsupported BIN format version: " + version);
+                return null;
+            }
+            int flags = in.readByte();
+            String frameType = DistributionMessage.FRAME_FULL;
+            long keyframeId = 0;
+            if ((flags & FLAG_FRAME) != 0) {
+                int code = in.readByte();
+                if (code >= FRAME_TYPES.length) {
+                    System.err.println("Unknown BIN frame type: " + code);
+                    return null;
+                }
+                frameType = FRAME_TYPES[code];
+                keyframeId = in.readVarLong();
+            }
+            int schemaVersion = (flags & FLAG_SCHEMA) != 0 ? (int) in.readVarLong() : 0;
+            long sequence = (flags & FLAG_SEQUENCE) != 0 ? in.readVarLong() : 0;
+            long timestamp = in.readVarLong();
+            String messageId = in.readString();
+            String serverId = in.readString();
+            int count = (int) in.readVarLong();
+
+            DistributionMessage msg = DistributionMessage.forDecoding(serverId, MessageUtils.ENCODING_BIN);
+            msg.setFrame(frameType, keyframeId);
+            msg.messageId = messageId.isEmpty() ? null : messageId;
+            msg.timestamp = timestamp;
+            msg.setSchemaVersion(schemaVersion);
+            msg.setSequence(sequence);
+            for (int i = 0; i < count; i++) {
+                if (schemaVersion > 0) {
+                    int id = (int) in.readVarLong();
+                    msg.addVariable(id, in.readDouble());
+                    continue;
+                }
+                String name = in.readString();
+                double value = in.readDouble();
+                String unit = in.readString();
+                msg.addVariable(name, value, unit.isEmpty() ? null : unit);
+            }
+            return msg;
+        } catch (IndexOutOfBoundsException e) {
+            System.err.println("Truncated BIN distribution message (" + length + " bytes)");
+            return null;
+        }
+    }
+
+    /** Lee solo la cabecera (hasta serverId) sin decodificar las variables. */
+    static PacketHeader peekHeader(byte[] data, int offset, int length) {
+        Reader in = new Reader(data, offset + PREFIX.length, offset + length);
+        try {
+            if (in.readByte() != FORMAT_VERSION) {
+                return null;
+            }
+            int flags = in.readByte();
+            String frameType = DistributionMessage.FRAME_FULL;
+            long keyframeId = 0;
+            if ((flags & FLAG_FRAME) != 0) {
+                int code = in.readByte();
+                if (code >= FRAME_TYPES.length) {
+                    return null;
+                }
+                frameType = FRAME_TYPES[code];
+                keyframeId = in.readVarLong();
+            }
+            int schemaVersion = (flags & FLAG_SCHEMA) != 0 ? (int) in.readVarLong() : 0;
+            long sequence = (flags & FLAG_SEQUENCE) != 0 ? in.readVarLong() : 0;
+            long timestamp = in.readVarLong();
+            in.skip((int) in.readVarLong()); // messageId
+            String serverId = in.readString();
+            return new PacketHeader(serverId, timestamp, frameType, keyframeId, schemaVersion, sequence);
+        } catch (IndexOutOfBoundsException e) {
+            return null;
+        }
+    }
+
+    private static int frameCode(String frameType) {
+        for (int i = 0; i < FRAME_TYPES.length; i++) {
+            if (FRAME_TYPES[i].equals(frameType)) {
+                return i;
+            }
+        }
+        return 0;
+    }
+
+    private static void writeString(ByteSink out, String s) {
+        if (s == null) {
+            s = "";
+        }
+        out.writeVarLong(utf8Length(s));
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                out.write(c);
+            } else if (c < 0x800) {
+                out.write(0xC0 | (c >> 6));
+                out.write(0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, s.charAt(++i));
+                out.write(0xF0 | (cp >> 18));
+                out.write(0x80 | ((cp >> 12) & 0x3F));
+                out.write(0x80 | ((cp >> 6) & 0x3F));
+                out.write(0x80 | (cp & 0x3F));
+            } else {
+                out.write(0xE0 | (c >> 12));
+                out.write(0x80 | ((c >> 6) & 0x3F));
+                out.write(0x80 | (c & 0x3F));
+            }
+        }
+    }
+
+    private static int utf8Length(String s) {
+        int len = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                len += 1;
+            } else if (c < 0x800) {
+                len += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+                len += 4;
+                i++;
+            } else {
+                len += 3;
+            }
+        }
+        return len;
+    }
+
+    /** Cursor de lectura sobre el buffer recibido. */
+    static final class Reader {
+        private final byte[] data;
+        private int pos;
+        private final int end;
+
+        Reader(byte[] data, int pos, int end) {
+            this.data = data;
+            this.pos = pos;
+            this.end = end;
+        }
+
+        int readByte() {
+            if (pos >= end) {
+                throw new IndexOutOfBoundsException("BIN payload truncated at " + pos);
+            }
+            return data[pos++] & 0xFF;
+        }
+
+        long readVarLong() {
+            long result = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                result |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return result;
+                }
+            }
+            throw new IndexOutOfBoundsException("Malformed varint");
+        }
+
+        double readDouble() {
+            long bits = 0;
+            for (int i = 0; i < 8; i++) {
+                bits = (bits << 8) | readByte();
+            }
+            return Double.longBitsToDouble(bits);
+        }
+
+        int remaining() {
+            return end - pos;
+        }
+
+        /** Salta {@code n} bytes y devuelve la posición donde empezaban. */
+        int skip(int n) {
+            if (n < 0 || pos + n > end) {
+                throw new IndexOutOfBoundsException("Length " + n + " exceeds payload");
+            }
+            int start = pos;
+            pos += n;
+            return start;
+        }
+
+        String readString() {
+            int len = (int) readVarLong();
+            if (len < 0 || pos + len > end) {
+                throw new IndexOutOfBoundsException("BIN string exceeds payload");
+            }
+            String s = new String(data, pos, len, StandardCharsets.UTF_8);
+            pos += len;
+            return s;
+        }
+    }
+}
@@ -0,0 +1,325 @@
+package common;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Diario binario de difusiones: copia tal cual de cada payload enviado o recibido,
+ * en segmentos de solo-añadir proyectados en memoria ({@code journal-NNNNNN.seg}).
+ *
+ * Segmento: "PPCJ", int versión (1), long creación; después registros con cabecera
+ * fija de {@link #RECORD_HEADER} bytes (long timestamp en ms, int hash del serverId,
+ * int longitud) y el payload. El timestamp se escribe el último y un timestamp 0
+ * marca el final, así que un lector concurrente o tras una caída nunca ve un
+ * registro a medias. Los timestamps de un diario no decrecen.
+ *
+ * Índice disperso por segmento ({@code journal-NNNNNN.idx}): un par (long
+ * timestamp, int posición) como mucho cada {@link #INDEX_INTERVAL_MS}; para leer un
+ * intervalo se busca la última entrada anterior y se recorre desde ahí.
+ *
+ * Cada proceso empieza un segmento nuevo al abrir el diario. Con maxSegments > 0 se
+ * borran los más antiguos.
+ */
+public final class BroadcastJournal implements AutoCloseable {
+    private static final int MAGIC = 0x5050434A; // "PPCJ"
+    private static final int VERSION = 1;
+    private static final int SEGMENT_HEADER = 16;
+    public static final int RECORD_HEADER = 16;
+    public static final long INDEX_INTERVAL_MS = 1000;
+    private static final int INDEX_ENTRY = 12;
+    public static final long DEFAULT_SEGMENT_BYTES = 64L * 1024 * 1024;
+
+    /** Recibe los registros de {@link #read}; devuelve false para dejar de leer. */
+    public interface RecordVisitor {
+        boolean visit(long timestamp, int serverIdHash, ByteBuffer payload);
+    }
+
+    private final Path dir;
+    private final long segmentBytes;
+    private final int maxSegments;
+    private int segmentNumber;
+    private FileChannel segmentChannel;
+    private MappedByteBuffer segment;
+    private FileChannel indexChannel;
+    private final ByteBuffer indexEntry = ByteBuffer.allocate(INDEX_ENTRY);
+    private long lastTimestamp;
+    private long lastIndexedTimestamp = Long.MIN_VALUE;
+    private boolean closed;
+
+    private long records;
+    private long bytes;
+    private long segmentsOpened;
+    private long rejected;
+
+    private BroadcastJournal(Path dir, long segmentBytes, int maxSegments) {
+        this.dir = dir;
+        this.segmentBytes = segmentBytes;
+        this.maxSegments = maxSegments;
+    }
+
+    /**
+     * Abre el diario en {@code dir} (se crea si no existe) y empieza un segmento nuevo.
+     *
+     * @throws IllegalArgumentException si el tamaño de segmento no cabe en un mmap
+     */
+    public static BroadcastJournal open(Path dir, long segmentBytes, int maxSegments) throws IOException {
+        if (segmentBytes <= SEGMENT_HEADER + RECORD_HEADER || segmentBytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid journal segment size: " + segmentBytes);
+        }
+        Files.createDirectories(dir);
+        BroadcastJournal journal = new BroadcastJournal(dir, segmentBytes, maxSegments);
+        List<Path> existing = segments(dir);
+        journal.segmentNumber = existing.isEmpty() ? 0 : segmentNumber(existing.get(existing.size() - 1));
+        synchronized (journal) {
+            journal.roll();
+        }
+        return journal;
+    }
+
+    /**
+     * Diario configurado con la propiedad {@code property} (directorio), p. ej.
+     * -Dserver.journal=journal -Djournal.segmentMB=64 -Djournal.maxSegments=0;
+     * null si no está configurado o no se puede abrir.
+     */
+    public static BroadcastJournal fromProperty(String property) {
+        String dir = System.getProperty(property);
+        if (dir == null || dir.isBlank()) {
+            return null;
+        }
+        try {
+            BroadcastJournal journal = open(Paths.get(dir.trim()), Long.getLong("journal.segmentMB", DEFAULT_SEGMENT_BYTES >> 20) << 20,
+                    Integer.getInteger("journal.maxSegments", 0));
+            System.out.println("Journaling broadcasts to " + dir.trim());
+            return journal;
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Could not open journal " + dir + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    public static int serverIdHash(String serverId) {
+        return serverId != null ? serverId.hashCode() : 0;
+    }
+
+    /** Añade un registro con la hora actual. Los payloads que no caben en un segmento se descartan. */
+    public synchronized void append(String serverId, byte[] data, int offset, int length) {
+        if (closed) {
+            return;
+        }
+        if (length > segmentBytes - SEGMENT_HEADER - RECORD_HEADER) {
+            rejected++;
+            return;
+        }
+        try {
+            if (segment.remaining() < RECORD_HEADER + length) {
+                roll();
+            }
+            long timestamp = Math.max(lastTimestamp, System.currentTimeMillis()); // Nunca decrece
+            int position = segment.position();
+            if (timestamp - lastIndexedTimestamp >= INDEX_INTERVAL_MS) {
+                indexEntry.clear();
+                indexEntry.putLong(timestamp).putInt(position).flip();
+                while (indexEntry.hasRemaining()) {
+                    indexChannel.write(indexEntry);
+                }
+                lastIndexedTimestamp = timestamp;
+            }
+            segment.putInt(position + 8, serverIdHash(serverId));
+            segment.putInt(position + 12, length);
+            segment.put(position + RECORD_HEADER, data, offset, length);
+            segment.putLong(position, timestamp); // El último: hace visible el registro
+            segment.position(position + RECORD_HEADER + length);
+            lastTimestamp = timestamp;
+            records++;
+            bytes += length;
+        } catch (IOException e) {
+            System.err.println("Journal write failed, journaling stopped: " + e.getMessage());
+            close();
+        }
+    }
+
+    // Cierra el segmento actual (si lo hay) y abre el siguiente
+    private void roll() throws IOException {
+        closeSegment();
+        segmentNumber++;
+        Path seg = dir.resolve(String.format("journal-%06d.seg", segmentNumber));
+        segmentChannel = FileChannel.open(seg, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        segment = segmentChannel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        segment.putInt(MAGIC).putInt(VERSION).putLong(System.currentTimeMillis());
+        indexChannel = FileChannel.open(indexPath(seg), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        lastIndexedTimestamp = Long.MIN_VALUE;
+        segmentsOpened++;
+        if (maxSegments > 0) {
+            List<Path> all = segments(dir);
+            for (int i = 0; i < all.size() - maxSegments; i++) {
+                Files.deleteIfExists(all.get(i));
+                Files.deleteIfExists(indexPath(all.get(i)));
+            }
+        }
+    }
+
+    private void closeSegment() throws IOException {
+        if (segment != null) {
+            segment.force();
+            segment = null;
+        }
+        if (segmentChannel != null) {
+            segmentChannel.close();
+            segmentChannel = null;
+        }
+        if (indexChannel != null) {
+            indexChannel.close();
+            indexChannel = null;
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            closeSegment();
+        } catch (IOException e) {
+            System.err.println("Error closing journal: " + e.getMessage());
+        }
+    }
+
+    public synchronized String stats() {
+        return "journal=" + dir + ", segment=" + segmentNumber + ", records=" + records + ", bytes=" + bytes
+                + ", segmentsOpened=" + segmentsOpened + ", rejected=" + rejected + (closed ? " (closed)" : "");
+    }
+
+    // --- Lectura ---
+
+    /**
+     * Recorre en orden los registros de {@code dir} con timestamp entre
+     * {@code fromMillis} y {@code toMillis} (ambos incluidos). El payload que recibe
+     * el visitor solo es válido durante la llamada.
+     */
+    public static void read(Path dir, long fromMillis, long toMillis, RecordVisitor visitor) throws IOException {
+        List<Path> all = segments(dir);
+        for (int s = 0; s < all.size(); s++) {
+            // Se salta el segmento si el siguiente ya empieza antes del intervalo
+            if (s + 1 < all.size() && firstTimestamp(all.get(s + 1)) <= fromMillis && firstTimestamp(all.get(s + 1)) != 0) {
+                continue;
+            }
+            if (!readSegment(all.get(s), fromMillis, toMillis, visitor)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Como {@link #read} pero sobre un solo segmento. Devuelve false si el visitor
+     * pidió parar o se ha llegado a un registro posterior a {@code toMillis}.
+     */
+    public static boolean readSegment(Path seg, long fromMillis, long toMillis, RecordVisitor visitor) throws IOException {
+        MappedByteBuffer buf = map(seg);
+        if (buf == null) {
+            return true;
+        }
+        int pos = startPosition(seg, fromMillis);
+        int limit = buf.limit();
+        while (pos + RECORD_HEADER <= limit) {
+            long timestamp = buf.getLong(pos);
+            if (timestamp == 0) {
+                break; // Final del segmento
+            }
+            int length = buf.getInt(pos + 12);
+            if (length < 0 || pos + RECORD_HEADER + length > limit) {
+                System.err.println("Corrupt journal record in " + seg + " at " + pos);
+                break;
+            }
+            if (timestamp > toMillis) {
+                return false;
+            }
+            if (timestamp >= fromMillis) {
+                ByteBuffer payload = buf.slice(pos + RECORD_HEADER, length);
+                if (!visitor.visit(timestamp, buf.getInt(pos + 8), payload)) {
+                    return false;
+                }
+            }
+            pos += RECORD_HEADER + length;
+        }
+        return true;
+    }
+
+    // Posición de la última entrada del índice con timestamp <= fromMillis
+    private static int startPosition(Path seg, long fromMillis) throws IOException {
+        Path idx = indexPath(seg);
+        if (!Files.exists(idx)) {
+            return SEGMENT_HEADER;
+        }
+        ByteBuffer index = ByteBuffer.wrap(Files.readAllBytes(idx));
+        int lo = 0;
+        int hi = index.limit() / INDEX_ENTRY - 1;
+        int position = SEGMENT_HEADER;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (index.getLong(mid * INDEX_ENTRY) <= fromMillis) {
+                position = index.getInt(mid * INDEX_ENTRY + 8);
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return position;
+    }
+
+    /** Timestamp del primer registro del segmento, 0 si está vacío o no es válido. */
+    public static long firstTimestamp(Path seg) throws IOException {
+        MappedByteBuffer buf = map(seg);
+        return buf != null && buf.limit() >= SEGMENT_HEADER + 8 ? buf.getLong(SEGMENT_HEADER) : 0;
+    }
+
+    private static MappedByteBuffer map(Path seg) throws IOException {
+        try (FileChannel ch = FileChannel.open(seg, StandardOpenOption.READ)) {
+            if (ch.size() < SEGMENT_HEADER || ch.size() > Integer.MAX_VALUE) {
+                return null;
+            }
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            if (buf.getInt(0) != MAGIC || buf.getInt(4) != VERSION) {
+                System.err.println("Not a journal segment: " + seg);
+                return null;
+            }
+            return buf;
+        }
+    }
+
+    /** Segmentos del diario, en orden. */
+    public static List<Path> segments(Path dir) throws IOException {
+        List<Path> result = new ArrayList<>();
+        if (!Files.isDirectory(dir)) {
+            return result;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "journal-*.seg")) {
+            for (Path p : stream) {
+                result.add(p);
+            }
+        }
+        Collections.sort(result); // Nombres con número de ancho fijo
+        return result;
+    }
+
+    private static int segmentNumber(Path seg) {
+        String name = seg.getFileName().toString();
+        return Integer.parseInt(name.substring("journal-".length(), name.length() - ".seg".length()));
+    }
+
+    private static Path indexPath(Path seg) {
+        String name = seg.getFileName().toString();
+        return seg.resolveSibling(name.substring(0, name.length() - ".seg".length()) + ".idx");
+    }
+}
@@ -0,0 +1,46 @@
+package common;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * ByteArrayOutputStream reutilizable que expone su array interno para poder
+ * enviar el contenido (p. ej. en un DatagramPacket) sin copiarlo.
+ */
+public class ByteSink extends ByteArrayOutputStream {
+
+    public ByteSink() {
+        super(512);
+    }
+
+    public ByteSink(int initialCapacity) {
+        super(initialCapacity);
+    }
+
+    /** Array interno; solo son válidos los primeros {@link #size()} bytes. */
+    public byte[] array() {
+        return buf;
+    }
+
+    public void writeAscii(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            write(s.charAt(i));
+        }
+    }
+
+    /** Entero sin signo en formato varint (7 bits por byte, LSB primero). */
+    public void writeVarLong(long value) {
+        while ((value & ~0x7FL) != 0) {
+            write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        write((int) value);
+    }
+
+    /** Double IEEE 754 en crudo, big-endian. */
+    public void writeDouble(double value) {
+        long bits = Double.doubleToRawLongBits(value);
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            write((int) (bits >>> shift));
+        }
+    }
+}
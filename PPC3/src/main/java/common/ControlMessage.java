@@ -39,6 +39,25 @@ public class ControlMessage extends AbstractMessage {
         return MessageUtils.toJson(this); // GSON serializará el objeto 'this'
     }
 
+    /** Escribe el JSON compacto directamente sobre el sink. */
+    public void writeTo(ByteSink sink) {
+        JsonCodec.write(JsonCodec.CONTROL_ADAPTER, this, sink);
+    }
+
+    /** Decodifica desde el buffer del datagrama sin crear un String intermedio. */
+    public static ControlMessage deserialize(byte[] data, int offset, int length) {
+        try {
+            ControlMessage msg = JsonCodec.read(JsonCodec.CONTROL_ADAPTER, data, offset, length);
+            if (msg != null) {
+                msg.setEncodingFormat(MessageUtils.ENCODING_JSON);
+            }
+            return msg;
+        } catch (JsonSyntaxException e) {
+            System.err.println("Error parsing JSON control message: " + e.getMessage());
+            return null;
+        }
+    }
+
     public static ControlMessage deserialize(String jsonData) {
         try {
             ControlMessage msg = MessageUtils.fromJson(jsonData, ControlMessage.class);
@@ -1,8 +1,10 @@
 package common;
 
-import java.util.ArrayList;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Locale; // Importar Locale
+import java.util.RandomAccess;
 
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
@@ -12,25 +14,181 @@ import com.google.gson.JsonSyntaxException;
 
 public class DistributionMessage extends AbstractMessage {
     private static final long serialVersionUID = 1L;
+    private static final double[] NO_VALUES = new double[0];
     private String serverId;
-    private List<WeatherVariable> variables;
+    // Nombres/unidades compartidos (VariableLayout internado) y valores en un array primitivo
+    private VariableLayout layout = VariableLayout.EMPTY;
+    private double[] values = NO_VALUES;
+    private transient List<WeatherVariable> variablesView;
+    private transient boolean frozen;
     private String messageType = "DISTRIBUTION";
 
+    // Modo delta: una trama KEY lleva todas las variables; las DELTA solo las que
+    // difieren de la última KEY (identificada por keyframeId). FULL es el modo normal.
+    // PARTIAL lleva solo las variables que la estación publica en ese tick (política de
+    // banda muerta); el receptor las combina por nombre con lo último que tenga.
+    public static final String FRAME_FULL = "FULL";
+    public static final String FRAME_KEY = "KEY";
+    public static final String FRAME_DELTA = "DELTA";
+    public static final String FRAME_PARTIAL = "PARTIAL";
+    private String frameType = FRAME_FULL;
+    private long keyframeId;
+    // Versión del StationSchema usado (0: las variables llevan nombre y unidad)
+    private int schemaVersion;
+    // Número de secuencia monótono por estación (0: el emisor no lo asigna)
+    private long sequence;
+
+    private static final byte[] XML_PREFIX = (MessageUtils.ENCODING_XML + ":").getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] JSON_PREFIX = (MessageUtils.ENCODING_JSON + ":").getBytes(StandardCharsets.US_ASCII);
+
     public DistributionMessage(String serverId, String encodingFormat) {
         super();
         this.serverId = serverId;
-        this.variables = new ArrayList<>();
+        this.setEncodingFormat(encodingFormat);
+    }
+
+    /** Mensaje para rellenar al decodificar: no genera messageId. */
+    static DistributionMessage forDecoding(String serverId, String encodingFormat) {
+        return new DistributionMessage(serverId, encodingFormat, null);
+    }
+
+    private DistributionMessage(String serverId, String encodingFormat, String messageId) {
+        super(messageId, 0);
+        this.serverId = serverId;
         this.setEncodingFormat(encodingFormat);
     }
 
     public void addVariable(WeatherVariable var) {
-        this.variables.add(var);
+        addVariable(var.getName(), var.getValue(), var.getUnit(), var.getId());
+    }
+
+    public void addVariable(String name, double value, String unit) {
+        addVariable(name, value, unit, -1);
+    }
+
+    /** Variable en modo esquema: solo id y valor. */
+    public void addVariable(int id, double value) {
+        addVariable(null, value, null, id);
+    }
+
+    public void addVariable(String name, double value, String unit, int id) {
+        checkMutable();
+        int size = layout.size();
+        if (size == values.length) {
+            values = Arrays.copyOf(values, Math.max(4, size * 2));
+        }
+        values[size] = value;
+        layout = layout.append(name, unit, id);
+    }
+
+    /** Sustituye todas las variables; el mensaje se queda con el array {@code values}. */
+    public void setVariables(VariableLayout layout, double[] values) {
+        checkMutable();
+        if (values.length < layout.size()) {
+            throw new IllegalArgumentException("Expected " + layout.size() + " values, got " + values.length);
+        }
+        this.layout = layout;
+        this.values = values;
+    }
+
+    public VariableLayout getLayout() { return layout; }
+    public int getVariableCount() { return layout.size(); }
+    public double getValue(int index) { return values[java.util.Objects.checkIndex(index, layout.size())]; }
+    public void setValue(int index, double value) { checkMutable(); values[java.util.Objects.checkIndex(index, layout.size())] = value; }
+
+    /** Copia de los valores, del tamaño justo. */
+    public double[] copyValues() {
+        return Arrays.copyOf(values, layout.size());
+    }
+
+    /**
+     * Rellena nombre y unidad de las variables (id, valor) con el esquema dado. Las
+     * DELTA conservan su unidad (la aporta la KEY). Devuelve false si algún id no
+     * pertenece al esquema.
+     */
+    public boolean applySchema(StationSchema schema) {
+        checkMutable();
+        VariableLayout resolved = VariableLayout.EMPTY;
+        boolean delta = isDelta();
+        for (int i = 0; i < layout.size(); i++) {
+            int id = layout.getId(i);
+            if (id < 0 || id >= schema.size()) {
+                return false;
+            }
+            resolved = resolved.append(schema.getName(id), delta ? layout.getUnit(i) : schema.getUnit(id), id);
+        }
+        layout = resolved;
+        return true;
     }
 
     public String getServerId() { return serverId; }
-    public List<WeatherVariable> getVariables() { return variables; }
+    void setServerId(String serverId) { checkMutable(); this.serverId = serverId; }
+    /**
+     * Vista de las variables como objetos WeatherVariable, creados al acceder a ellos.
+     * Los cambios sobre un elemento se reflejan en el mensaje.
+     */
+    public List<WeatherVariable> getVariables() {
+        List<WeatherVariable> view = variablesView;
+        if (view == null) {
+            view = new VariablesView();
+            variablesView = view;
+        }
+        return view;
+    }
     public String getMessageType() { return messageType; }
+    public String getFrameType() { return frameType; }
+    public long getKeyframeId() { return keyframeId; }
+    public boolean isDelta() { return FRAME_DELTA.equals(frameType); }
+    public boolean isPartial() { return FRAME_PARTIAL.equals(frameType); }
+    public int getSchemaVersion() { return schemaVersion; }
+    public void setSchemaVersion(int schemaVersion) { checkMutable(); this.schemaVersion = schemaVersion; }
+    public long getSequence() { return sequence; }
+    public void setSequence(long sequence) { checkMutable(); this.sequence = sequence; }
+
+    @Override
+    public void setTimestamp(long timestamp) {
+        checkMutable();
+        super.setTimestamp(timestamp);
+    }
+
+    @Override
+    public void setEncodingFormat(String encodingFormat) {
+        checkMutable();
+        super.setEncodingFormat(encodingFormat);
+    }
+
+    /**
+     * Deja el mensaje de solo lectura: a partir de aquí los setters (también los de
+     * las variables de {@link #getVariables()}) lanzan UnsupportedOperationException.
+     * Para mensajes que comparten varios lectores, como el último de cada estación en
+     * el broker.
+     */
+    public void freeze() { frozen = true; }
+    public boolean isFrozen() { return frozen; }
+
+    private void checkMutable() {
+        if (frozen) {
+            throw new UnsupportedOperationException("Read-only DistributionMessage from " + serverId);
+        }
+    }
+
+    /**
+     * Marca el mensaje como trama KEY, DELTA, PARTIAL o FULL. Las DELTA y PARTIAL no
+     * llevan messageId; las variables de una DELTA pueden ir sin unidad (se toma de la KEY).
+     */
+    public void setFrame(String frameType, long keyframeId) {
+        checkMutable();
+        this.frameType = frameType != null ? frameType : FRAME_FULL;
+        this.keyframeId = keyframeId;
+        if (FRAME_DELTA.equals(this.frameType) || FRAME_PARTIAL.equals(this.frameType)) {
+            this.messageId = null;
+        }
+    }
 
+    /**
+     * Representación textual del mensaje (JSON o XML con prefijo de tipo).
+     * Los mensajes BIN se representan como XML; para el envío usar {@link #toBytes()}.
+     */
     public String serialize() {
         if (MessageUtils.ENCODING_JSON.equalsIgnoreCase(getEncodingFormat())) {
             return MessageUtils.ENCODING_JSON + ":" + MessageUtils.toJson(this);
@@ -39,41 +197,72 @@ public class DistributionMessage extends AbstractMessage {
         }
     }
 
-    private String toXmlString() {
-        try {
-            Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
-            Element root = doc.createElement("distributionMessage");
-            doc.appendChild(root);
+    /** Bytes listos para enviar en un datagrama, según el formato de codificación. */
+    public byte[] toBytes() {
+        ByteSink sink = new ByteSink();
+        writeTo(sink);
+        return sink.toByteArray();
+    }
 
-            root.setAttribute("messageId", getMessageId());
-            root.setAttribute("timestamp", String.valueOf(getTimestamp()));
-            root.setAttribute("serverId", serverId);
-            root.setAttribute("encodingFormat", getEncodingFormat());
-            root.setAttribute("messageType", messageType); // Atributo añadido según DTD
+    /** Escribe el mensaje codificado (con prefijo de tipo) al final del sink, sin copias intermedias. */
+    public void writeTo(ByteSink sink) {
+        if (MessageUtils.ENCODING_BIN.equalsIgnoreCase(getEncodingFormat())) {
+            BinaryCodec.encode(this, sink);
+        } else if (MessageUtils.ENCODING_JSON.equalsIgnoreCase(getEncodingFormat())) {
+            sink.writeAscii(MessageUtils.ENCODING_JSON + ":");
+            JsonCodec.write(JsonCodec.DISTRIBUTION_ADAPTER, this, sink);
+        } else {
+            sink.write(XML_PREFIX, 0, XML_PREFIX.length);
+            XmlCodec.encode(this, sink);
+        }
+    }
 
-            Element varsElement = doc.createElement("variables");
-            root.appendChild(varsElement);
+    private String toXmlString() {
+        return MessageUtils.ENCODING_XML + ":" + XmlCodec.encodeToString(this);
+    }
 
-            for (WeatherVariable var : variables) {
-                Element varElement = doc.createElement("variable");
-                varElement.setAttribute("name", var.getName());
-                Element valueEl = doc.createElement("value");
-                // --- CAMBIO IMPORTANTE: Usar Locale.US para formatear el double ---
-                valueEl.appendChild(doc.createTextNode(String.format(Locale.US, "%.2f", var.getValue())));
-                // -----------------------------------------------------------------
-                Element unitEl = doc.createElement("unit");
-                unitEl.appendChild(doc.createTextNode(var.getUnit()));
-                varElement.appendChild(valueEl);
-                varElement.appendChild(unitEl);
-                varsElement.appendChild(varElement);
+    /** Decodifica un datagrama recibido directamente desde su buffer, en cualquier codificación. */
+    public static DistributionMessage deserialize(byte[] data, int offset, int length) {
+        if (BinaryCodec.hasPrefix(data, offset, length)) {
+            return BinaryCodec.decode(data, offset, length);
+        }
+        if (hasPrefix(data, offset, length, XML_PREFIX)) {
+            try {
+                return XmlCodec.decode(data, offset + XML_PREFIX.length, length - XML_PREFIX.length);
+            } catch (Exception e) { // XMLStreamException o NumberFormatException
+                System.err.println("Error parsing XML distribution message: " + e.getMessage());
+                return null;
             }
-            // MessageUtils.toXml ahora añade el DOCTYPE si está configurado en el Transformer
-            return MessageUtils.ENCODING_XML + ":" + MessageUtils.toXml(doc);
-        } catch (ParserConfigurationException e) {
-            throw new RuntimeException("Error creating XML for DistributionMessage", e);
         }
+        if (hasPrefix(data, offset, length, JSON_PREFIX)) {
+            try {
+                DistributionMessage msg = JsonCodec.read(JsonCodec.DISTRIBUTION_ADAPTER, data,
+                        offset + JSON_PREFIX.length, length - JSON_PREFIX.length);
+                if (msg != null) {
+                    msg.setEncodingFormat(MessageUtils.ENCODING_JSON);
+                }
+                return msg;
+            } catch (JsonSyntaxException e) {
+                System.err.println("Error parsing JSON distribution message: " + e.getMessage());
+                return null;
+            }
+        }
+        System.err.println("Malformed raw data for deserialization (" + length + " bytes)");
+        return null;
     }
-    
+
+    private static boolean hasPrefix(byte[] data, int offset, int length, byte[] prefix) {
+        if (length < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (data[offset + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     public static DistributionMessage deserialize(String rawData) {
         if (rawData == null || !rawData.contains(":")) {
             System.err.println("Malformed raw data for deserialization: " + rawData);
@@ -95,30 +284,9 @@ public class DistributionMessage extends AbstractMessage {
             }
         } else if (MessageUtils.ENCODING_XML.equals(type)) {
             try {
-                // El DTD name se pasa para el EntityResolver en el cliente
-                Document doc = MessageUtils.parseXmlString(data, "distribution_message.dtd"); 
-                Element root = doc.getDocumentElement();
-                
-                String serverId = root.getAttribute("serverId");
-                DistributionMessage msg = new DistributionMessage(serverId, MessageUtils.ENCODING_XML);
-                msg.messageId = root.getAttribute("messageId"); 
-                msg.timestamp = Long.parseLong(root.getAttribute("timestamp"));
-
-
-                org.w3c.dom.NodeList varNodes = root.getElementsByTagName("variable");
-                for (int i = 0; i < varNodes.getLength(); i++) {
-                    Element varElement = (Element) varNodes.item(i);
-                    String name = varElement.getAttribute("name");
-                    // Double.parseDouble debería funcionar bien si el XML usa "."
-                    double value = Double.parseDouble(varElement.getElementsByTagName("value").item(0).getTextContent());
-                    String unit = varElement.getElementsByTagName("unit").item(0).getTextContent();
-                    msg.addVariable(new WeatherVariable(name, value, unit));
-                }
-              
-                return msg;
-            } catch (Exception e) { // Captura más genérica por si parseDouble u otros fallan
+                return XmlCodec.decode(data);
+            } catch (Exception e) { // XMLStreamException o NumberFormatException
                 System.err.println("Error parsing XML distribution message: " + e.getMessage());
-                e.printStackTrace(); // Útil para ver la NumberFormatException completa si ocurre
                 return null;
             }
         }
@@ -140,15 +308,14 @@ public class DistributionMessage extends AbstractMessage {
             Element varsElement = doc.createElement("variables");
             root.appendChild(varsElement);
 
-            for (WeatherVariable var : variables) {
+            for (int i = 0; i < layout.size(); i++) {
                 Element varElement = doc.createElement("variable");
-                varElement.setAttribute("name", var.getName());
+                varElement.setAttribute("name", layout.getName(i));
                 Element valueEl = doc.createElement("value");
-                // --- CAMBIO IMPORTANTE: Usar Locale.US para formatear el double ---
-                valueEl.appendChild(doc.createTextNode(String.format(Locale.US, "%.2f", var.getValue())));
-                // -----------------------------------------------------------------
+                // Siempre con punto decimal, independientemente del Locale
+                valueEl.appendChild(doc.createTextNode(FixedPoint.toString(values[i], 2)));
                 Element unitEl = doc.createElement("unit");
-                unitEl.appendChild(doc.createTextNode(var.getUnit()));
+                unitEl.appendChild(doc.createTextNode(layout.getUnit(i)));
                 varElement.appendChild(valueEl);
                 varElement.appendChild(unitEl);
                 varsElement.appendChild(varElement);
@@ -160,4 +327,42 @@ public class DistributionMessage extends AbstractMessage {
             return "<!-- Error generating XML for attachment -->";
         }
     }
+
+    private final class VariablesView extends AbstractList<WeatherVariable> implements RandomAccess {
+        @Override
+        public WeatherVariable get(int index) {
+            return new BoundVariable(java.util.Objects.checkIndex(index, layout.size()));
+        }
+
+        @Override
+        public int size() {
+            return layout.size();
+        }
+
+        @Override
+        public boolean add(WeatherVariable var) {
+            addVariable(var);
+            return true;
+        }
+    }
+
+    /** Variable de la vista: lee y escribe directamente en el mensaje (si no está congelado). */
+    private final class BoundVariable extends WeatherVariable {
+        private static final long serialVersionUID = 1L;
+        private final int index;
+
+        BoundVariable(int index) {
+            super(null, 0, null);
+            this.index = index;
+        }
+
+        @Override public String getName() { return layout.getName(index); }
+        @Override public void setName(String name) { checkMutable(); layout = layout.with(index, name, getUnit(), getId()); }
+        @Override public double getValue() { return values[index]; }
+        @Override public void setValue(double value) { checkMutable(); values[index] = value; }
+        @Override public String getUnit() { return layout.getUnit(index); }
+        @Override public void setUnit(String unit) { checkMutable(); layout = layout.with(index, getName(), unit, getId()); }
+        @Override public int getId() { return layout.getId(index); }
+        @Override public void setId(int id) { checkMutable(); layout = layout.with(index, getName(), getUnit(), id); }
+    }
 }
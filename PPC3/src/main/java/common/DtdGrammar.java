@@ -0,0 +1,232 @@
+package common;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Gramática de un DTD sencillo, cargada una sola vez, y validador en streaming
+ * para usar junto a un XMLStreamReader. Soporta los modelos que usamos:
+ * secuencias con ?, + y *, (#PCDATA), EMPTY/ANY y atributos CDATA o
+ * enumerados con #REQUIRED/#IMPLIED.
+ */
+final class DtdGrammar {
+
+    private static final Pattern COMMENT = Pattern.compile("<!--.*?-->", Pattern.DOTALL);
+    private static final Pattern ELEMENT = Pattern.compile("<!ELEMENT\\s+(\\S+)\\s+(.*?)>", Pattern.DOTALL);
+    private static final Pattern ATTLIST = Pattern.compile("<!ATTLIST\\s+(\\S+)\\s+(.*?)>", Pattern.DOTALL);
+    private static final Pattern ATTRIBUTE = Pattern.compile(
+            "(\\S+)\\s+(CDATA|ID|IDREF|NMTOKEN|\\([^)]*\\))\\s+(#REQUIRED|#IMPLIED|#FIXED\\s+\"[^\"]*\"|\"[^\"]*\")");
+
+    static final class Particle {
+        final String name;
+        final char occurrence; // ' ', '?', '+', '*'
+
+        Particle(String name, char occurrence) {
+            this.name = name;
+            this.occurrence = occurrence;
+        }
+
+        boolean required() { return occurrence == ' ' || occurrence == '+'; }
+        boolean repeatable() { return occurrence == '+' || occurrence == '*'; }
+    }
+
+    static final class AttributeDecl {
+        final String name;
+        final Set<String> allowedValues; // null para CDATA
+        final boolean required;
+
+        AttributeDecl(String name, Set<String> allowedValues, boolean required) {
+            this.name = name;
+            this.allowedValues = allowedValues;
+            this.required = required;
+        }
+    }
+
+    static final class ElementDecl {
+        final String name;
+        final boolean pcdata;
+        final boolean any;
+        final List<Particle> children;
+        final Map<String, AttributeDecl> attributes = new HashMap<>();
+
+        ElementDecl(String name, boolean pcdata, boolean any, List<Particle> children) {
+            this.name = name;
+            this.pcdata = pcdata;
+            this.any = any;
+            this.children = children;
+        }
+    }
+
+    private final Map<String, ElementDecl> elements = new HashMap<>();
+
+    private DtdGrammar() {
+    }
+
+    static DtdGrammar parse(String dtdText) {
+        DtdGrammar grammar = new DtdGrammar();
+        String text = COMMENT.matcher(dtdText).replaceAll("");
+
+        Matcher m = ELEMENT.matcher(text);
+        while (m.find()) {
+            String name = m.group(1);
+            String model = m.group(2).trim();
+            ElementDecl decl;
+            if ("EMPTY".equals(model)) {
+                decl = new ElementDecl(name, false, false, List.of());
+            } else if ("ANY".equals(model)) {
+                decl = new ElementDecl(name, true, true, List.of());
+            } else if (model.contains("#PCDATA")) {
+                decl = new ElementDecl(name, true, false, List.of());
+            } else {
+                List<Particle> particles = new ArrayList<>();
+                String inner = model.substring(model.indexOf('(') + 1, model.lastIndexOf(')'));
+                for (String token : inner.split(",")) {
+                    String t = token.trim();
+                    char last = t.charAt(t.length() - 1);
+                    if (last == '?' || last == '+' || last == '*') {
+                        particles.add(new Particle(t.substring(0, t.length() - 1).trim(), last));
+                    } else {
+                        particles.add(new Particle(t, ' '));
+                    }
+                }
+                decl = new ElementDecl(name, false, false, particles);
+            }
+            grammar.elements.put(name, decl);
+        }
+
+        m = ATTLIST.matcher(text);
+        while (m.find()) {
+            ElementDecl decl = grammar.elements.get(m.group(1));
+            if (decl == null) {
+                continue;
+            }
+            Matcher a = ATTRIBUTE.matcher(m.group(2));
+            while (a.find()) {
+                String type = a.group(2);
+                Set<String> allowed = null;
+                if (type.startsWith("(")) {
+                    allowed = new HashSet<>();
+                    for (String v : type.substring(1, type.length() - 1).split("\\|")) {
+                        allowed.add(v.trim());
+                    }
+                }
+                decl.attributes.put(a.group(1), new AttributeDecl(a.group(1), allowed, "#REQUIRED".equals(a.group(3))));
+            }
+        }
+        return grammar;
+    }
+
+    Validator newValidator() {
+        return new Validator();
+    }
+
+    /** Estado de validación de un documento; no es reutilizable entre documentos. */
+    final class Validator {
+        private ElementDecl[] stack = new ElementDecl[8];
+        private int[] particleIndex = new int[8];
+        private int[] particleCount = new int[8];
+        private int depth = 0;
+
+        void startElement(XMLStreamReader r) throws XMLStreamException {
+            String name = r.getLocalName();
+            ElementDecl decl = elements.get(name);
+            if (decl == null) {
+                throw new XMLStreamException("Element '" + name + "' is not declared in the DTD", r.getLocation());
+            }
+            if (depth > 0) {
+                acceptChild(name, r);
+            }
+            checkAttributes(decl, r);
+            if (depth == stack.length) {
+                stack = Arrays.copyOf(stack, depth * 2);
+                particleIndex = Arrays.copyOf(particleIndex, depth * 2);
+                particleCount = Arrays.copyOf(particleCount, depth * 2);
+            }
+            stack[depth] = decl;
+            particleIndex[depth] = 0;
+            particleCount[depth] = 0;
+            depth++;
+        }
+
+        void characters(XMLStreamReader r) throws XMLStreamException {
+            if (depth == 0 || r.isWhiteSpace()) {
+                return;
+            }
+            ElementDecl current = stack[depth - 1];
+            if (!current.pcdata) {
+                throw new XMLStreamException("Element '" + current.name + "' does not allow character data", r.getLocation());
+            }
+        }
+
+        void endElement(XMLStreamReader r) throws XMLStreamException {
+            int level = depth - 1;
+            ElementDecl decl = stack[level];
+            List<Particle> particles = decl.children;
+            for (int i = particleIndex[level]; i < particles.size(); i++) {
+                int count = i == particleIndex[level] ? particleCount[level] : 0;
+                if (count == 0 && particles.get(i).required()) {
+                    throw new XMLStreamException("Element '" + decl.name + "' is missing required child '"
+                            + particles.get(i).name + "'", r.getLocation());
+                }
+            }
+            depth--;
+        }
+
+        private void acceptChild(String child, XMLStreamReader r) throws XMLStreamException {
+            int level = depth - 1;
+            ElementDecl parent = stack[level];
+            if (parent.any) {
+                return;
+            }
+            if (parent.pcdata) {
+                throw new XMLStreamException("Element '" + parent.name + "' does not allow child elements", r.getLocation());
+            }
+            List<Particle> particles = parent.children;
+            while (particleIndex[level] < particles.size()) {
+                Particle p = particles.get(particleIndex[level]);
+                if (p.name.equals(child) && (particleCount[level] == 0 || p.repeatable())) {
+                    particleCount[level]++;
+                    return;
+                }
+                if (particleCount[level] == 0 && p.required()) {
+                    break;
+                }
+                particleIndex[level]++;
+                particleCount[level] = 0;
+            }
+            throw new XMLStreamException("Unexpected element '" + child + "' inside '" + parent.name + "'", r.getLocation());
+        }
+
+        private void checkAttributes(ElementDecl decl, XMLStreamReader r) throws XMLStreamException {
+            int present = r.getAttributeCount();
+            for (int i = 0; i < present; i++) {
+                String attrName = r.getAttributeLocalName(i);
+                AttributeDecl attr = decl.attributes.get(attrName);
+                if (attr == null) {
+                    throw new XMLStreamException("Attribute '" + attrName + "' is not declared for element '"
+                            + decl.name + "'", r.getLocation());
+                }
+                if (attr.allowedValues != null && !attr.allowedValues.contains(r.getAttributeValue(i))) {
+                    throw new XMLStreamException("Attribute '" + attrName + "' has invalid value '"
+                            + r.getAttributeValue(i) + "'", r.getLocation());
+                }
+            }
+            for (AttributeDecl attr : decl.attributes.values()) {
+                if (attr.required && r.getAttributeValue(null, attr.name) == null) {
+                    throw new XMLStreamException("Attribute '" + attr.name + "' is required for element '"
+                            + decl.name + "'", r.getLocation());
+                }
+            }
+        }
+    }
+}
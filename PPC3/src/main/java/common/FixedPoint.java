@@ -0,0 +1,177 @@
+package common;
+
+/**
+ * Números en coma fija sin Strings intermedios: escritura sobre un byte[] (huecos
+ * de ancho fijo alineados a la derecha) o al final de un StringBuilder, y lectura
+ * desde un CharSequence.
+ *
+ * El formato es el de {@code String.format(Locale.US, "%.Nf", v)}: punto decimal,
+ * sin separador de miles, signo solo si es negativo. El redondeo se hace sobre el
+ * double escalado, así que en empates exactos del último decimal puede diferir en
+ * una unidad del redondeo decimal exacto de Formatter.
+ */
+public final class FixedPoint {
+    private static final long[] POW10 = {
+            1L, 10L, 100L, 1_000L, 10_000L, 100_000L, 1_000_000L, 10_000_000L, 100_000_000L, 1_000_000_000L };
+    // Potencias de 10 exactas en double (hasta 10^22)
+    private static final double[] POW10_DOUBLE = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+    private FixedPoint() {
+    }
+
+    /**
+     * Añade {@code value} con {@code decimals} decimales al final de {@code sb}.
+     * Valores no finitos o demasiado grandes se delegan en String.format.
+     */
+    public static StringBuilder append(StringBuilder sb, double value, int decimals) {
+        if (decimals < 0 || decimals >= POW10.length) {
+            throw new IllegalArgumentException("decimals: " + decimals);
+        }
+        double scaled = Math.abs(value) * POW10[decimals] + 0.5;
+        if (!Double.isFinite(value) || scaled >= 1e18) {
+            return sb.append(String.format(java.util.Locale.US, "%." + decimals + "f", value));
+        }
+        long units = (long) scaled;
+        if (value < 0 || (value == 0 && 1 / value < 0)) {
+            sb.append('-'); // Como Formatter: -0.001 -> "-0.00"
+        }
+        sb.append(units / POW10[decimals]);
+        if (decimals > 0) {
+            sb.append('.');
+            long fraction = units % POW10[decimals];
+            for (int i = decimals - 1; i > 0 && fraction < POW10[i]; i--) {
+                sb.append('0');
+            }
+            sb.append(fraction);
+        }
+        return sb;
+    }
+
+    /** {@code value} con {@code decimals} decimales, para quien necesita un String (DOM, logs). */
+    public static String toString(double value, int decimals) {
+        return append(new StringBuilder(24), value, decimals).toString();
+    }
+
+    /**
+     * Lee un decimal de {@code text[start, end)}, ignorando espacios alrededor.
+     * Los casos simples (signo, dígitos y punto, hasta 15-16 cifras) se calculan con
+     * una sola división exacta, con el mismo resultado que Double.parseDouble; el
+     * resto (exponentes, NaN, mantisas largas) se delega en Double.parseDouble.
+     *
+     * @throws NumberFormatException si el texto no es un número
+     */
+    public static double parse(CharSequence text, int start, int end) {
+        while (start < end && Character.isWhitespace(text.charAt(start))) {
+            start++;
+        }
+        while (end > start && Character.isWhitespace(text.charAt(end - 1))) {
+            end--;
+        }
+        int pos = start;
+        boolean negative = false;
+        if (pos < end && (text.charAt(pos) == '-' || text.charAt(pos) == '+')) {
+            negative = text.charAt(pos) == '-';
+            pos++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = -1;
+        for (; pos < end; pos++) {
+            char c = text.charAt(pos);
+            if (c >= '0' && c <= '9') {
+                mantissa = mantissa * 10 + (c - '0');
+                digits++;
+                if (fractionDigits >= 0) {
+                    fractionDigits++;
+                }
+                if (mantissa >= MAX_EXACT_MANTISSA) {
+                    break;
+                }
+            } else if (c == '.' && fractionDigits < 0) {
+                fractionDigits = 0;
+            } else {
+                break;
+            }
+        }
+        // Más decimales que potencias exactas en la tabla (p. ej. "0.000...01" con 23 o más)
+        if (pos < end || digits == 0 || mantissa >= MAX_EXACT_MANTISSA || fractionDigits >= POW10_DOUBLE.length) {
+            return Double.parseDouble(text.subSequence(start, end).toString());
+        }
+        double result = fractionDigits > 0 ? mantissa / POW10_DOUBLE[fractionDigits] : mantissa;
+        return negative ? -result : result;
+    }
+
+    /** {@link #parse(CharSequence, int, int)} sobre todo el texto. */
+    public static double parse(CharSequence text) {
+        return parse(text, 0, text.length());
+    }
+
+    /**
+     * Escribe {@code value} con {@code decimals} decimales (redondeo al más cercano)
+     * en {@code buf[offset, offset + width)}. Devuelve false, sin garantías sobre el
+     * contenido del hueco, si el valor no es finito o no cabe.
+     */
+    public static boolean write(byte[] buf, int offset, int width, double value, int decimals, byte pad) {
+        if (!Double.isFinite(value) || decimals < 0 || decimals >= POW10.length) {
+            return false;
+        }
+        double scaled = Math.abs(value) * POW10[decimals] + 0.5;
+        if (scaled >= 1e18) {
+            return false;
+        }
+        long units = (long) scaled;
+        int pos = offset + width;
+        for (int i = 0; i < decimals; i++) {
+            if (pos == offset) {
+                return false;
+            }
+            buf[--pos] = (byte) ('0' + units % 10);
+            units /= 10;
+        }
+        if (decimals > 0) {
+            if (pos == offset) {
+                return false;
+            }
+            buf[--pos] = '.';
+        }
+        do {
+            if (pos == offset) {
+                return false;
+            }
+            buf[--pos] = (byte) ('0' + units % 10);
+            units /= 10;
+        } while (units > 0);
+        if (value < 0) {
+            if (pos == offset) {
+                return false;
+            }
+            buf[--pos] = '-';
+        }
+        while (pos > offset) {
+            buf[--pos] = pad;
+        }
+        return true;
+    }
+
+    /** Escribe un entero no negativo alineado a la derecha; false si no cabe o es negativo. */
+    public static boolean write(byte[] buf, int offset, int width, long value, byte pad) {
+        if (value < 0) {
+            return false;
+        }
+        int pos = offset + width;
+        do {
+            if (pos == offset) {
+                return false;
+            }
+            buf[--pos] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value > 0);
+        while (pos > offset) {
+            buf[--pos] = pad;
+        }
+        return true;
+    }
+}
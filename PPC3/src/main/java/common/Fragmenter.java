@@ -0,0 +1,120 @@
+package common;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Parte un mensaje (una trama, un lote o un mensaje de control) que no cabe en
+ * un datagrama en varios fragmentos:
+ * <pre>
+ *   "FRAG:" varint messageId, varint índice, varint total, trozo del mensaje
+ * </pre>
+ * Por defecto cada fragmento ocupa como mucho {@link #MAX_DATAGRAM} bytes, lo que
+ * cabe en el buffer de recepción más pequeño del sistema (la respuesta de control
+ * en el broker); la difusión usa {@link #ETHERNET_DATAGRAM} para no fragmentar a
+ * nivel IP. El receptor los junta con un {@link Reassembler}.
+ *
+ * No es thread-safe: cada hilo emisor usa su propia instancia.
+ */
+public class Fragmenter {
+    public static final String PREFIX = "FRAG";
+    private static final byte[] PREFIX_BYTES = (PREFIX + ":").getBytes(StandardCharsets.US_ASCII);
+    public static final int MAX_DATAGRAM = 1024;
+    /** MTU de Ethernet (1500) menos las cabeceras IPv4 y UDP. */
+    public static final int ETHERNET_DATAGRAM = 1472;
+    // Prefijo + messageId (hasta 10 bytes) + índice y total (hasta 2 bytes cada uno)
+    private static final int MAX_HEADER = PREFIX_BYTES.length + 10 + 2 + 2;
+    /** Fragmentos por mensaje como máximo (~125 KB con el tamaño por defecto). */
+    public static final int MAX_FRAGMENTS = 128;
+
+    // Ids únicos por proceso; el valor inicial aleatorio evita repetirlos tras un reinicio
+    private static final AtomicLong nextMessageId = new AtomicLong(ThreadLocalRandom.current().nextLong() >>> 16);
+
+    /** Envía un datagrama ya construido. */
+    public interface DatagramSender {
+        void send(byte[] data, int offset, int length) throws IOException;
+    }
+
+    private final int maxDatagram;
+    private final int fragmentPayload;
+    private final ByteSink sink;
+
+    public Fragmenter() {
+        this(MAX_DATAGRAM);
+    }
+
+    /** Fragmentador con datagramas de como mucho {@code maxDatagram} bytes. */
+    public Fragmenter(int maxDatagram) {
+        if (maxDatagram <= MAX_HEADER) {
+            throw new IllegalArgumentException("maxDatagram too small: " + maxDatagram);
+        }
+        this.maxDatagram = maxDatagram;
+        this.fragmentPayload = maxDatagram - MAX_HEADER;
+        this.sink = new ByteSink(maxDatagram);
+    }
+
+    /** Indica si un mensaje de ese tamaño hay que fragmentarlo. */
+    public boolean needsFragmentation(int length) {
+        return length > maxDatagram;
+    }
+
+    /**
+     * Envía el mensaje tal cual si cabe en un datagrama o, si no, fragmentado.
+     * Devuelve el número de datagramas enviados.
+     *
+     * @throws IOException si el mensaje supera {@link #MAX_FRAGMENTS} fragmentos o falla el envío
+     */
+    public int send(byte[] data, int offset, int length, DatagramSender out) throws IOException {
+        if (!needsFragmentation(length)) {
+            out.send(data, offset, length);
+            return 1;
+        }
+        int count = (length + fragmentPayload - 1) / fragmentPayload;
+        if (count > MAX_FRAGMENTS) {
+            throw new IOException("Message of " + length + " bytes exceeds " + MAX_FRAGMENTS + " fragments");
+        }
+        long messageId = nextMessageId.getAndIncrement() & Long.MAX_VALUE;
+        for (int index = 0; index < count; index++) {
+            int start = index * fragmentPayload;
+            int chunk = Math.min(fragmentPayload, length - start);
+            sink.reset();
+            sink.write(PREFIX_BYTES, 0, PREFIX_BYTES.length);
+            sink.writeVarLong(messageId);
+            sink.writeVarLong(index);
+            sink.writeVarLong(count);
+            sink.write(data, offset + start, chunk);
+            out.send(sink.array(), 0, sink.size());
+        }
+        return count;
+    }
+
+    public static boolean hasPrefix(byte[] data, int offset, int length) {
+        if (length < PREFIX_BYTES.length) {
+            return false;
+        }
+        for (int i = 0; i < PREFIX_BYTES.length; i++) {
+            if (data[offset + i] != PREFIX_BYTES[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Cabecera de un fragmento recibido; lanza IndexOutOfBoundsException si está truncada. */
+    static final class Header {
+        final long messageId;
+        final int index;
+        final int count;
+        final int payloadOffset;
+
+        Header(byte[] data, int offset, int length) {
+            BinaryCodec.Reader in = new BinaryCodec.Reader(data, offset + PREFIX_BYTES.length, offset + length);
+            messageId = in.readVarLong();
+            index = (int) in.readVarLong();
+            count = (int) in.readVarLong();
+            payloadOffset = in.skip(0);
+        }
+    }
+}
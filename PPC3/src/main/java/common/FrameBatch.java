@@ -0,0 +1,94 @@
+package common;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Agrupa varias tramas completas ("TYPE:payload") en un solo datagrama:
+ * <pre>
+ *   "BATCH:" (varint longitud, trama)*
+ * </pre>
+ * Las tramas se desempaquetan en el mismo orden en que se añadieron. El lote
+ * completo puede comprimirse con PayloadCompressor ("BATCH+Z:").
+ */
+public final class FrameBatch {
+    public static final String PREFIX = "BATCH";
+    private static final byte[] PREFIX_BYTES = (PREFIX + ":").getBytes(StandardCharsets.US_ASCII);
+
+    /** Recibe cada trama del lote, en orden. */
+    public interface FrameConsumer {
+        void accept(byte[] data, int offset, int length) throws Exception;
+    }
+
+    private final ByteSink sink = new ByteSink(2048);
+    private int count;
+    private long firstFrameMillis;
+
+    public FrameBatch() {
+        reset();
+    }
+
+    public void reset() {
+        sink.reset();
+        sink.write(PREFIX_BYTES, 0, PREFIX_BYTES.length);
+        count = 0;
+    }
+
+    public boolean isEmpty() { return count == 0; }
+    public int getCount() { return count; }
+    public ByteSink getSink() { return sink; }
+    public long getFirstFrameMillis() { return firstFrameMillis; }
+
+    /** Tamaño que tendría un lote con solo esta trama. */
+    public static int sizeAlone(int frameLength) {
+        return PREFIX_BYTES.length + varIntLength(frameLength) + frameLength;
+    }
+
+    /** Indica si la trama cabe en el lote sin superar {@code maxBytes}. */
+    public boolean fits(int frameLength, int maxBytes) {
+        return sink.size() + varIntLength(frameLength) + frameLength <= maxBytes;
+    }
+
+    /** Añade una trama; {@code nowMillis} es el instante de la muestra y fija la antigüedad del lote. */
+    public void add(byte[] frame, int offset, int length, long nowMillis) {
+        if (count == 0) {
+            firstFrameMillis = nowMillis;
+        }
+        sink.writeVarLong(length);
+        sink.write(frame, offset, length);
+        count++;
+    }
+
+    public static boolean hasPrefix(byte[] data, int offset, int length) {
+        if (length < PREFIX_BYTES.length) {
+            return false;
+        }
+        for (int i = 0; i < PREFIX_BYTES.length; i++) {
+            if (data[offset + i] != PREFIX_BYTES[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Recorre las tramas de un lote recibido y devuelve cuántas había. */
+    public static int forEach(byte[] data, int offset, int length, FrameConsumer consumer) throws Exception {
+        BinaryCodec.Reader in = new BinaryCodec.Reader(data, offset + PREFIX_BYTES.length, offset + length);
+        int frames = 0;
+        while (in.remaining() > 0) {
+            int frameLength = (int) in.readVarLong();
+            int start = in.skip(frameLength);
+            consumer.accept(data, start, frameLength);
+            frames++;
+        }
+        return frames;
+    }
+
+    private static int varIntLength(long value) {
+        int n = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            n++;
+        }
+        return n;
+    }
+}
@@ -0,0 +1,429 @@
+package common;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * JSON compacto para los mensajes, con TypeAdapters escritos a mano (sin reflexión).
+ * Los nombres de campo son los mismos que generaba GSON por reflexión, así que
+ * el formato sigue siendo compatible con los mensajes anteriores.
+ */
+public final class JsonCodec {
+
+    static final TypeAdapter<DistributionMessage> DISTRIBUTION_ADAPTER = new DistributionMessageAdapter();
+    static final TypeAdapter<ControlMessage> CONTROL_ADAPTER = new ControlMessageAdapter();
+    static final TypeAdapter<ResponseMessage> RESPONSE_ADAPTER = new ResponseMessageAdapter();
+    static final TypeAdapter<SchemaMessage> SCHEMA_ADAPTER = new SchemaMessageAdapter();
+
+    /** Gson compacto para el cable y la API REST. */
+    static final Gson COMPACT = register(new GsonBuilder()).disableHtmlEscaping().create();
+    /** Gson con indentación, solo para salidas que lee una persona. */
+    static final Gson PRETTY = register(new GsonBuilder()).disableHtmlEscaping().setPrettyPrinting().create();
+
+    private static final ThreadLocal<ReusableJsonWriter> WRITERS = ThreadLocal.withInitial(ReusableJsonWriter::new);
+
+    private JsonCodec() {
+    }
+
+    private static GsonBuilder register(GsonBuilder builder) {
+        return builder.registerTypeAdapter(DistributionMessage.class, DISTRIBUTION_ADAPTER)
+                .registerTypeAdapter(ControlMessage.class, CONTROL_ADAPTER)
+                .registerTypeAdapter(ResponseMessage.class, RESPONSE_ADAPTER)
+                .registerTypeAdapter(SchemaMessage.class, SCHEMA_ADAPTER);
+    }
+
+    /**
+     * Escribe el mensaje en formato compacto directamente sobre el stream (p. ej. un
+     * ByteSink). Cada hilo reutiliza su JsonWriter y su codificador UTF-8.
+     */
+    public static <T> void write(TypeAdapter<T> adapter, T value, OutputStream out) {
+        ReusableJsonWriter writer = WRITERS.get();
+        writer.sink.setTarget(out);
+        try {
+            adapter.write(writer, value);
+            writer.flush();
+        } catch (IOException e) {
+            WRITERS.remove(); // A medio escribir: el siguiente mensaje empieza con uno nuevo
+            throw new RuntimeException("Error writing JSON", e);
+        } catch (RuntimeException e) {
+            WRITERS.remove();
+            throw e;
+        } finally {
+            writer.sink.setTarget(null);
+        }
+    }
+
+    /**
+     * JsonWriter que admite un documento tras otro. Para eso tiene que ser lenient,
+     * pero sigue rechazando NaN e infinitos como el modo estricto.
+     */
+    private static final class ReusableJsonWriter extends JsonWriter {
+        final Utf8SinkWriter sink;
+
+        ReusableJsonWriter() {
+            this(new Utf8SinkWriter());
+        }
+
+        private ReusableJsonWriter(Utf8SinkWriter sink) {
+            super(sink);
+            this.sink = sink;
+            setLenient(true);
+            setSerializeNulls(false);
+        }
+
+        @Override
+        public JsonWriter value(double value) throws IOException {
+            requireFinite(value);
+            return super.value(value);
+        }
+
+        @Override
+        public JsonWriter value(float value) throws IOException {
+            requireFinite(value);
+            return super.value(value);
+        }
+
+        @Override
+        public JsonWriter value(Number value) throws IOException {
+            if (value instanceof Double || value instanceof Float) {
+                requireFinite(value.doubleValue());
+            }
+            return super.value(value);
+        }
+
+        private static void requireFinite(double value) {
+            if (Double.isNaN(value) || Double.isInfinite(value)) {
+                throw new IllegalArgumentException("Numeric values must not be NaN or infinities: " + value);
+            }
+        }
+    }
+
+    /** Lee un mensaje desde los bytes recibidos, sin copiarlos antes a un String. */
+    public static <T> T read(TypeAdapter<T> adapter, byte[] data, int offset, int length) throws JsonSyntaxException {
+        try (JsonReader reader = new JsonReader(
+                new InputStreamReader(new ByteArrayInputStream(data, offset, length), StandardCharsets.UTF_8))) {
+            return adapter.read(reader);
+        } catch (IllegalStateException | IOException | NumberFormatException e) {
+            throw new JsonSyntaxException(e);
+        }
+    }
+
+    private static String nextStringOrNull(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        return in.nextString();
+    }
+
+    private static void writeAbstractFields(JsonWriter out, AbstractMessage msg) throws IOException {
+        out.name("messageId").value(msg.getMessageId());
+        out.name("timestamp").value(msg.getTimestamp());
+        out.name("encodingFormat").value(msg.getEncodingFormat());
+    }
+
+    private static final class DistributionMessageAdapter extends TypeAdapter<DistributionMessage> {
+        @Override
+        public void write(JsonWriter out, DistributionMessage msg) throws IOException {
+            if (msg == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("serverId").value(msg.getServerId());
+            out.name("variables").beginArray();
+            VariableLayout layout = msg.getLayout();
+            for (int i = 0; i < layout.size(); i++) {
+                out.beginObject();
+                if (layout.getId(i) >= 0) {
+                    out.name("id").value(layout.getId(i));
+                }
+                out.name("name").value(layout.getName(i));
+                out.name("value").value(msg.getValue(i));
+                out.name("unit").value(layout.getUnit(i));
+                out.endObject();
+            }
+            out.endArray();
+            out.name("messageType").value(msg.getMessageType());
+            if (!DistributionMessage.FRAME_FULL.equals(msg.getFrameType())) {
+                out.name("frameType").value(msg.getFrameType());
+                out.name("keyframeId").value(msg.getKeyframeId());
+            }
+            if (msg.getSchemaVersion() > 0) {
+                out.name("schemaVersion").value(msg.getSchemaVersion());
+            }
+            if (msg.getSequence() > 0) {
+                out.name("sequence").value(msg.getSequence());
+            }
+            writeAbstractFields(out, msg);
+            out.endObject();
+        }
+
+        @Override
+        public DistributionMessage read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            DistributionMessage msg = DistributionMessage.forDecoding(null, MessageUtils.ENCODING_JSON);
+            String frameType = null;
+            long keyframeId = 0;
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "serverId": msg.setServerId(nextStringOrNull(in)); break;
+                    case "messageId": msg.messageId = nextStringOrNull(in); break;
+                    case "timestamp": msg.timestamp = in.nextLong(); break;
+                    case "encodingFormat": msg.setEncodingFormat(nextStringOrNull(in)); break;
+                    case "frameType": frameType = nextStringOrNull(in); break;
+                    case "keyframeId": keyframeId = in.nextLong(); break;
+                    case "schemaVersion": msg.setSchemaVersion(in.nextInt()); break;
+                    case "sequence": msg.setSequence(in.nextLong()); break;
+                    case "variables":
+                        in.beginArray();
+                        while (in.hasNext()) {
+                            readVariable(in, msg);
+                        }
+                        in.endArray();
+                        break;
+                    default: in.skipValue(); break;
+                }
+            }
+            in.endObject();
+            if (frameType != null) {
+                String messageId = msg.messageId;
+                msg.setFrame(frameType, keyframeId);
+                msg.messageId = messageId;
+            }
+            return msg;
+        }
+
+        private void readVariable(JsonReader in, DistributionMessage msg) throws IOException {
+            String name = null;
+            String unit = null;
+            double value = 0;
+            int id = -1;
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "id": id = in.nextInt(); break;
+                    case "name": name = nextStringOrNull(in); break;
+                    case "value": value = in.nextDouble(); break;
+                    case "unit": unit = nextStringOrNull(in); break;
+                    default: in.skipValue(); break;
+                }
+            }
+            in.endObject();
+            msg.addVariable(name, value, unit, id);
+        }
+    }
+
+    private static final class SchemaMessageAdapter extends TypeAdapter<SchemaMessage> {
+        @Override
+        public void write(JsonWriter out, SchemaMessage msg) throws IOException {
+            if (msg == null) {
+                out.nullValue();
+                return;
+            }
+            StationSchema schema = msg.getSchema();
+            out.beginObject();
+            out.name("serverId").value(msg.getServerId());
+            out.name("schemaVersion").value(schema.getVersion());
+            out.name("variables").beginArray();
+            for (int id = 0; id < schema.size(); id++) {
+                out.beginObject();
+                out.name("id").value(id);
+                out.name("name").value(schema.getName(id));
+                out.name("unit").value(schema.getUnit(id));
+                out.endObject();
+            }
+            out.endArray();
+            out.name("messageType").value(msg.getMessageType());
+            writeAbstractFields(out, msg);
+            out.endObject();
+        }
+
+        @Override
+        public SchemaMessage read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            String serverId = null;
+            int version = 0;
+            List<String> names = new ArrayList<>();
+            List<String> units = new ArrayList<>();
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "serverId": serverId = nextStringOrNull(in); break;
+                    case "schemaVersion": version = in.nextInt(); break;
+                    case "variables":
+                        in.beginArray();
+                        while (in.hasNext()) {
+                            int id = -1;
+                            String name = null;
+                            String unit = null;
+                            in.beginObject();
+                            while (in.hasNext()) {
+                                switch (in.nextName()) {
+                                    case "id": id = in.nextInt(); break;
+                                    case "name": name = nextStringOrNull(in); break;
+                                    case "unit": unit = nextStringOrNull(in); break;
+                                    default: in.skipValue(); break;
+                                }
+                            }
+                            in.endObject();
+                            if (id != names.size()) {
+                                throw new JsonSyntaxException("Schema ids must be consecutive from 0, got " + id);
+                            }
+                            names.add(name);
+                            units.add(unit);
+                        }
+                        in.endArray();
+                        break;
+                    default: in.skipValue(); break;
+                }
+            }
+            in.endObject();
+            return new SchemaMessage(serverId,
+                    new StationSchema(version, names.toArray(new String[0]), units.toArray(new String[0])));
+        }
+    }
+
+    private static final class ControlMessageAdapter extends TypeAdapter<ControlMessage> {
+        @Override
+        public void write(JsonWriter out, ControlMessage msg) throws IOException {
+            if (msg == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("command").value(msg.getCommand());
+            out.name("targetServerId").value(msg.getTargetServerId());
+            out.name("parameters").beginObject();
+            for (Map.Entry<String, Object> entry : msg.getParameters().entrySet()) {
+                out.name(entry.getKey());
+                Object v = entry.getValue();
+                if (v == null) {
+                    out.nullValue();
+                } else if (v instanceof Number) {
+                    out.value((Number) v);
+                } else if (v instanceof Boolean) {
+                    out.value((Boolean) v);
+                } else {
+                    out.value(String.valueOf(v));
+                }
+            }
+            out.endObject();
+            out.name("messageType").value(msg.getMessageType());
+            writeAbstractFields(out, msg);
+            out.endObject();
+        }
+
+        @Override
+        public ControlMessage read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            ControlMessage msg = new ControlMessage(null, null);
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "command": msg.setCommand(nextStringOrNull(in)); break;
+                    case "targetServerId": msg.setTargetServerId(nextStringOrNull(in)); break;
+                    case "messageId": msg.messageId = nextStringOrNull(in); break;
+                    case "timestamp": msg.timestamp = in.nextLong(); break;
+                    case "parameters":
+                        if (in.peek() == JsonToken.NULL) {
+                            in.nextNull();
+                            break;
+                        }
+                        in.beginObject();
+                        while (in.hasNext()) {
+                            String key = in.nextName();
+                            msg.addParameter(key, readParameterValue(in));
+                        }
+                        in.endObject();
+                        break;
+                    default: in.skipValue(); break;
+                }
+            }
+            in.endObject();
+            return msg;
+        }
+
+        /** Mismos tipos que producía GSON para Object: Double, String, Boolean o estructuras genéricas. */
+        private Object readParameterValue(JsonReader in) throws IOException {
+            switch (in.peek()) {
+                case NUMBER: return in.nextDouble();
+                case STRING: return in.nextString();
+                case BOOLEAN: return in.nextBoolean();
+                case NULL: in.nextNull(); return null;
+                default: return JsonParser.parseReader(in);
+            }
+        }
+    }
+
+    private static final class ResponseMessageAdapter extends TypeAdapter<ResponseMessage> {
+        @Override
+        public void write(JsonWriter out, ResponseMessage msg) throws IOException {
+            if (msg == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("originalMessageId").value(msg.getOriginalMessageId());
+            out.name("status").value(msg.getStatus());
+            out.name("details").value(msg.getDetails());
+            out.name("messageType").value(msg.getMessageType());
+            writeAbstractFields(out, msg);
+            out.endObject();
+        }
+
+        @Override
+        public ResponseMessage read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            String originalMessageId = null;
+            String status = null;
+            String details = null;
+            String messageId = null;
+            long timestamp = -1;
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "originalMessageId": originalMessageId = nextStringOrNull(in); break;
+                    case "status": status = nextStringOrNull(in); break;
+                    case "details": details = nextStringOrNull(in); break;
+                    case "messageId": messageId = nextStringOrNull(in); break;
+                    case "timestamp": timestamp = in.nextLong(); break;
+                    default: in.skipValue(); break;
+                }
+            }
+            in.endObject();
+            ResponseMessage msg = new ResponseMessage(originalMessageId, status, details);
+            if (messageId != null) msg.messageId = messageId;
+            if (timestamp >= 0) msg.timestamp = timestamp;
+            return msg;
+        }
+    }
+}
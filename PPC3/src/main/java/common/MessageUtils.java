@@ -1,7 +1,6 @@
 package common;
 
 import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
 import com.google.gson.JsonSyntaxException;
 import org.w3c.dom.Document;
 import org.xml.sax.EntityResolver; 
@@ -17,8 +16,6 @@ import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
-import java.io.BufferedWriter;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream; 
 import java.io.StringReader;
@@ -28,15 +25,25 @@ public class MessageUtils {
 
     public static final String ENCODING_JSON = "JSON";
     public static final String ENCODING_XML = "XML";
+    public static final String ENCODING_BIN = "BIN"; // Binario compacto, ver BinaryCodec
 
-    private static final Gson gson = new GsonBuilder()
-                                        .setPrettyPrinting()
-                                        .create();
+    public static boolean isSupportedEncoding(String encoding) {
+        return ENCODING_JSON.equalsIgnoreCase(encoding) || ENCODING_XML.equalsIgnoreCase(encoding)
+                || ENCODING_BIN.equalsIgnoreCase(encoding);
+    }
+
+    // JSON compacto; los mensajes usan los TypeAdapters registrados en JsonCodec
+    private static final Gson gson = JsonCodec.COMPACT;
 
     public static String toJson(Object obj) {
         return gson.toJson(obj);
     }
 
+    // JSON indentado, solo para lo que lee una persona (adjuntos de correo, etc.)
+    public static String toPrettyJson(Object obj) {
+        return JsonCodec.PRETTY.toJson(obj);
+    }
+
     public static <T> T fromJson(String json, Class<T> classOfT) throws JsonSyntaxException {
         return gson.fromJson(json, classOfT);
     }
@@ -113,14 +120,11 @@ public class MessageUtils {
         return builder.parse(new InputSource(new StringReader(xmlString)));
     }
     
+    /**
+     * Añade {@code content} (seguido de "----") al fichero de log. Es asíncrono: la
+     * línea se encola y la escribe el {@link AsyncLogWriter} en segundo plano.
+     */
     public static void logMessage(String fileName, String content) {
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(fileName, true))) {
-            writer.write(content);
-            writer.newLine();
-            writer.write("----"); 
-            writer.newLine();
-        } catch (IOException e) {
-            System.err.println("Error logging message to " + fileName + ": " + e.getMessage());
-        }
+        AsyncLogWriter.get().log(fileName, content);
     }
 }
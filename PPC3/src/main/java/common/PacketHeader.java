@@ -0,0 +1,153 @@
+package common;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Cabecera de un DistributionMessage leída sin decodificar el mensaje completo:
+ * estación, timestamp e información de trama/esquema. Para JSON y XML se buscan
+ * las claves directamente en los bytes; si algo no encaja, {@link #peek} devuelve
+ * null y el llamante debe decodificar el mensaje entero.
+ */
+public final class PacketHeader {
+    private static final byte[] JSON_PREFIX = (MessageUtils.ENCODING_JSON + ":").getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] XML_PREFIX = (MessageUtils.ENCODING_XML + ":").getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] XML_ROOT = "<distributionMessage".getBytes(StandardCharsets.US_ASCII);
+
+    private final String serverId;
+    private final long timestamp;
+    private final String frameType;
+    private final long keyframeId;
+    private final int schemaVersion;
+    private final long sequence;
+
+    PacketHeader(String serverId, long timestamp, String frameType, long keyframeId, int schemaVersion, long sequence) {
+        this.serverId = serverId;
+        this.timestamp = timestamp;
+        this.frameType = frameType;
+        this.keyframeId = keyframeId;
+        this.schemaVersion = schemaVersion;
+        this.sequence = sequence;
+    }
+
+    public String getServerId() { return serverId; }
+    public long getTimestamp() { return timestamp; }
+    public String getFrameType() { return frameType; }
+    public long getKeyframeId() { return keyframeId; }
+    public int getSchemaVersion() { return schemaVersion; }
+    /** Número de secuencia de la estación, 0 si el emisor no lo asigna. */
+    public long getSequence() { return sequence; }
+    public boolean isDelta() { return DistributionMessage.FRAME_DELTA.equals(frameType); }
+    public boolean isPartial() { return DistributionMessage.FRAME_PARTIAL.equals(frameType); }
+
+    /** Cabecera de un mensaje ya decodificado (cuando {@link #peek} no ha podido leerla). */
+    public static PacketHeader of(DistributionMessage msg) {
+        return new PacketHeader(msg.getServerId(), msg.getTimestamp(), msg.getFrameType(), msg.getKeyframeId(),
+                msg.getSchemaVersion(), msg.getSequence());
+    }
+
+    public static PacketHeader peek(byte[] data, int offset, int length) {
+        try {
+            if (BinaryCodec.hasPrefix(data, offset, length)) {
+                return BinaryCodec.peekHeader(data, offset, length);
+            }
+            if (startsWith(data, offset, length, JSON_PREFIX)) {
+                return peekJson(data, offset + JSON_PREFIX.length, offset + length);
+            }
+            if (startsWith(data, offset, length, XML_PREFIX)) {
+                return peekXml(data, offset + XML_PREFIX.length, offset + length);
+            }
+        } catch (RuntimeException e) {
+            // Cabecera ilegible: el llamante decodificará el mensaje completo
+        }
+        return null;
+    }
+
+    private static PacketHeader peekJson(byte[] data, int start, int end) {
+        String serverId = stringAfter(data, start, end, "\"serverId\":\"", '"');
+        long timestamp = numberAfter(data, start, end, "\"timestamp\":");
+        if (serverId == null || timestamp < 0) {
+            return null;
+        }
+        String frameType = stringAfter(data, start, end, "\"frameType\":\"", '"');
+        long keyframeId = numberAfter(data, start, end, "\"keyframeId\":");
+        long schemaVersion = numberAfter(data, start, end, "\"schemaVersion\":");
+        long sequence = numberAfter(data, start, end, "\"sequence\":");
+        return new PacketHeader(serverId, timestamp, frameType != null ? frameType : DistributionMessage.FRAME_FULL,
+                Math.max(keyframeId, 0), (int) Math.max(schemaVersion, 0), Math.max(sequence, 0));
+    }
+
+    private static PacketHeader peekXml(byte[] data, int start, int end) {
+        int root = indexOf(data, start, end, XML_ROOT);
+        if (root < 0) {
+            return null;
+        }
+        int rootEnd = root;
+        while (rootEnd < end && data[rootEnd] != '>') {
+            rootEnd++;
+        }
+        String serverId = stringAfter(data, root, rootEnd, " serverId=\"", '"');
+        long timestamp = numberAfter(data, root, rootEnd, " timestamp=\"");
+        if (serverId == null || timestamp < 0 || serverId.indexOf('&') >= 0) {
+            return null;
+        }
+        String frameType = stringAfter(data, root, rootEnd, " frameType=\"", '"');
+        long keyframeId = numberAfter(data, root, rootEnd, " keyframeId=\"");
+        long schemaVersion = numberAfter(data, root, rootEnd, " schemaVersion=\"");
+        long sequence = numberAfter(data, root, rootEnd, " sequence=\"");
+        return new PacketHeader(serverId, timestamp, frameType != null ? frameType : DistributionMessage.FRAME_FULL,
+                Math.max(keyframeId, 0), (int) Math.max(schemaVersion, 0), Math.max(sequence, 0));
+    }
+
+    /** Texto entre la clave y el delimitador; null si no está o lleva escapes. */
+    private static String stringAfter(byte[] data, int start, int end, String key, char delimiter) {
+        int pos = indexOf(data, start, end, key.getBytes(StandardCharsets.US_ASCII));
+        if (pos < 0) {
+            return null;
+        }
+        pos += key.length();
+        int valueEnd = pos;
+        while (valueEnd < end && data[valueEnd] != delimiter) {
+            if (data[valueEnd] == '\\') {
+                return null;
+            }
+            valueEnd++;
+        }
+        return valueEnd < end ? new String(data, pos, valueEnd - pos, StandardCharsets.UTF_8) : null;
+    }
+
+    /** Entero decimal sin signo tras la clave (admite espacios delante); -1 si no está. */
+    private static long numberAfter(byte[] data, int start, int end, String key) {
+        int pos = indexOf(data, start, end, key.getBytes(StandardCharsets.US_ASCII));
+        if (pos < 0) {
+            return -1;
+        }
+        pos += key.length();
+        while (pos < end && data[pos] == ' ') {
+            pos++;
+        }
+        long value = 0;
+        int digits = 0;
+        while (pos < end && data[pos] >= '0' && data[pos] <= '9') {
+            value = value * 10 + (data[pos++] - '0');
+            digits++;
+        }
+        return digits > 0 ? value : -1;
+    }
+
+    static int indexOf(byte[] data, int start, int end, byte[] pattern) {
+        outer:
+        for (int i = start; i <= end - pattern.length; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (data[i + j] != pattern[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    private static boolean startsWith(byte[] data, int offset, int length, byte[] prefix) {
+        return length >= prefix.length && indexOf(data, offset, offset + prefix.length, prefix) == offset;
+    }
+}
@@ -0,0 +1,220 @@
+package common;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Paquete FULL precompilado para una configuración de estación (codificación,
+ * variables y esquema). El esqueleto JSON o XML se genera una vez, con el mismo
+ * orden de campos que JsonCodec/XmlCodec, y cada tick solo se sobrescriben los
+ * huecos de ancho fijo: valores, secuencia, timestamp y messageId.
+ *
+ * Los números se alinean a la derecha: en JSON se rellenan con espacios (se
+ * admiten entre tokens) y en los atributos XML con ceros. Si un valor no cabe en
+ * su hueco, {@link #fill} devuelve false y hay que usar el codec normal.
+ *
+ * No es thread-safe: la usa solo el hilo de broadcast.
+ */
+public final class PacketTemplate {
+    // JSON: signo, 10 dígitos enteros, punto y 6 decimales. XML: 2 decimales, como XmlCodec
+    private static final int JSON_VALUE_WIDTH = 18;
+    private static final int JSON_DECIMALS = 6;
+    private static final int XML_VALUE_WIDTH = 14;
+    private static final int XML_DECIMALS = 2;
+    private static final int TIMESTAMP_WIDTH = 15;
+    private static final int SEQUENCE_WIDTH = 12;
+    private static final int MESSAGE_ID_WIDTH = 36; // UUID textual
+    private static final byte[] HEX = "0123456789abcdef".getBytes(java.nio.charset.StandardCharsets.US_ASCII);
+
+    private final String encoding;
+    private final ByteSink sink = new ByteSink(512);
+    private final int[] valueSlots;
+    private final int valueWidth;
+    private final int decimals;
+    private final byte numberPad;
+    private int sequenceSlot;
+    private int timestampSlot;
+    private int messageIdSlot;
+
+    private PacketTemplate(String encoding, int variableCount) {
+        this.encoding = encoding;
+        this.valueSlots = new int[variableCount];
+        boolean json = MessageUtils.ENCODING_JSON.equals(encoding);
+        this.valueWidth = json ? JSON_VALUE_WIDTH : XML_VALUE_WIDTH;
+        this.decimals = json ? JSON_DECIMALS : XML_DECIMALS;
+        this.numberPad = json ? (byte) ' ' : (byte) '0';
+    }
+
+    /**
+     * Compila la plantilla de un paquete FULL. {@code schemaVersion > 0} genera
+     * variables (id, valor) como en el modo esquema. Devuelve null para codificaciones
+     * sin plantilla (BIN).
+     */
+    public static PacketTemplate compile(String serverId, String encoding, List<WeatherVariable> variables,
+            int schemaVersion) {
+        PacketTemplate t;
+        if (MessageUtils.ENCODING_JSON.equals(encoding)) {
+            t = new PacketTemplate(encoding, variables.size());
+            t.compileJson(serverId, variables, schemaVersion);
+        } else if (MessageUtils.ENCODING_XML.equals(encoding)) {
+            t = new PacketTemplate(encoding, variables.size());
+            t.compileXml(serverId, variables, schemaVersion);
+        } else {
+            return null;
+        }
+        return t;
+    }
+
+    public String getEncoding() { return encoding; }
+    public int getVariableCount() { return valueSlots.length; }
+
+    /** El paquete listo para enviar (válido hasta el siguiente {@link #fill}). */
+    public ByteSink getSink() { return sink; }
+
+    /** Escribe los datos del tick en los huecos. Devuelve false si alguno no cabe. */
+    public boolean fill(double[] values, long sequence, long timestamp) {
+        if (values.length != valueSlots.length) {
+            return false;
+        }
+        byte[] buf = sink.array();
+        for (int i = 0; i < values.length; i++) {
+            if (!FixedPoint.write(buf, valueSlots[i], valueWidth, values[i], decimals, (byte) ' ')) {
+                return false;
+            }
+        }
+        if (!FixedPoint.write(buf, sequenceSlot, SEQUENCE_WIDTH, sequence, numberPad)
+                || !FixedPoint.write(buf, timestampSlot, TIMESTAMP_WIDTH, timestamp, numberPad)) {
+            return false;
+        }
+        writeRandomUuid(buf, messageIdSlot);
+        return true;
+    }
+
+    private void compileJson(String serverId, List<WeatherVariable> variables, int schemaVersion) {
+        sink.writeAscii(MessageUtils.ENCODING_JSON + ":{\"serverId\":");
+        writeJsonString(serverId);
+        sink.writeAscii(",\"variables\":[");
+        for (int i = 0; i < variables.size(); i++) {
+            WeatherVariable var = variables.get(i);
+            sink.writeAscii(i == 0 ? "{" : ",{");
+            if (schemaVersion > 0) {
+                sink.writeAscii("\"id\":" + i + ",\"value\":");
+                valueSlots[i] = slot(valueWidth);
+            } else {
+                sink.writeAscii("\"name\":");
+                writeJsonString(var.getName());
+                sink.writeAscii(",\"value\":");
+                valueSlots[i] = slot(valueWidth);
+                if (var.getUnit() != null) {
+                    sink.writeAscii(",\"unit\":");
+                    writeJsonString(var.getUnit());
+                }
+            }
+            sink.writeAscii("}");
+        }
+        sink.writeAscii("],\"messageType\":\"DISTRIBUTION\"");
+        if (schemaVersion > 0) {
+            sink.writeAscii(",\"schemaVersion\":" + schemaVersion);
+        }
+        sink.writeAscii(",\"sequence\":");
+        sequenceSlot = slot(SEQUENCE_WIDTH);
+        sink.writeAscii(",\"messageId\":\"");
+        messageIdSlot = slot(MESSAGE_ID_WIDTH);
+        sink.writeAscii("\",\"timestamp\":");
+        timestampSlot = slot(TIMESTAMP_WIDTH);
+        sink.writeAscii(",\"encodingFormat\":\"" + MessageUtils.ENCODING_JSON + "\"}");
+    }
+
+    private void compileXml(String serverId, List<WeatherVariable> variables, int schemaVersion) {
+        sink.writeAscii(MessageUtils.ENCODING_XML + ":<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+                + "<!DOCTYPE distributionMessage SYSTEM \"distribution_message.dtd\">"
+                + "<distributionMessage messageId=\"");
+        messageIdSlot = slot(MESSAGE_ID_WIDTH);
+        sink.writeAscii("\" timestamp=\"");
+        timestampSlot = slot(TIMESTAMP_WIDTH);
+        sink.writeAscii("\" serverId=\"");
+        writeXmlText(serverId);
+        sink.writeAscii("\" encodingFormat=\"" + MessageUtils.ENCODING_XML + "\" messageType=\"DISTRIBUTION\"");
+        if (schemaVersion > 0) {
+            sink.writeAscii(" schemaVersion=\"" + schemaVersion + "\"");
+        }
+        sink.writeAscii(" sequence=\"");
+        sequenceSlot = slot(SEQUENCE_WIDTH);
+        sink.writeAscii("\"><variables>");
+        for (int i = 0; i < variables.size(); i++) {
+            WeatherVariable var = variables.get(i);
+            if (schemaVersion > 0) {
+                sink.writeAscii("<variable id=\"" + i + "\"><value>");
+                valueSlots[i] = slot(valueWidth);
+                sink.writeAscii("</value></variable>");
+            } else {
+                sink.writeAscii("<variable name=\"");
+                writeXmlText(var.getName());
+                sink.writeAscii("\"><value>");
+                valueSlots[i] = slot(valueWidth);
+                sink.writeAscii("</value>");
+                if (var.getUnit() != null) {
+                    sink.writeAscii("<unit>");
+                    writeXmlText(var.getUnit());
+                    sink.writeAscii("</unit>");
+                }
+                sink.writeAscii("</variable>");
+            }
+        }
+        sink.writeAscii("</variables></distributionMessage>");
+    }
+
+    /** Reserva un hueco de {@code width} bytes y devuelve su posición. */
+    private int slot(int width) {
+        int offset = sink.size();
+        for (int i = 0; i < width; i++) {
+            sink.write(' ');
+        }
+        return offset;
+    }
+
+    private void writeJsonString(String s) {
+        byte[] quoted = JsonCodec.COMPACT.toJson(s).getBytes(java.nio.charset.StandardCharsets.UTF_8);
+        sink.write(quoted, 0, quoted.length);
+    }
+
+    private void writeXmlText(String s) {
+        StringBuilder sb = new StringBuilder(s.length() + 8);
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '&': sb.append("&amp;"); break;
+                case '<': sb.append("&lt;"); break;
+                case '>': sb.append("&gt;"); break;
+                case '"': sb.append("&quot;"); break;
+                default: sb.append(c); break;
+            }
+        }
+        byte[] bytes = sb.toString().getBytes(java.nio.charset.StandardCharsets.UTF_8);
+        sink.write(bytes, 0, bytes.length);
+    }
+
+    /** UUID versión 4 (aleatorio) escrito en texto sin crear objetos. */
+    private static void writeRandomUuid(byte[] buf, int offset) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long hi = (random.nextLong() & ~0xF000L) | 0x4000L;
+        long lo = (random.nextLong() & 0x3FFFFFFFFFFFFFFFL) | 0x8000000000000000L;
+        int pos = writeHex(buf, offset, hi >>> 32, 8);
+        buf[pos++] = '-';
+        pos = writeHex(buf, pos, hi >>> 16, 4);
+        buf[pos++] = '-';
+        pos = writeHex(buf, pos, hi, 4);
+        buf[pos++] = '-';
+        pos = writeHex(buf, pos, lo >>> 48, 4);
+        buf[pos++] = '-';
+        writeHex(buf, pos, lo, 12);
+    }
+
+    private static int writeHex(byte[] buf, int offset, long value, int digits) {
+        for (int i = digits - 1; i >= 0; i--) {
+            buf[offset + i] = HEX[(int) (value & 0xF)];
+            value >>>= 4;
+        }
+        return offset + digits;
+    }
+}
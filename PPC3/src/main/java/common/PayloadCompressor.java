@@ -0,0 +1,113 @@
+package common;
+
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compresión opcional de datagramas con Deflate y un diccionario predefinido
+ * entrenado con payloads típicos de DistributionMessage. Vale para cualquier
+ * codificación: "JSON:{...}" se envía como "JSON+Z:" seguido del cuerpo comprimido.
+ *
+ * Cada instancia reutiliza su Deflater/Inflater y sus buffers, así que no es
+ * thread-safe: se usa una por hilo de envío o de recepción.
+ */
+public class PayloadCompressor {
+    public static final String FLAG = "+Z";
+    private static final int MAX_PREFIX = 16;
+    /**
+     * Tamaño máximo de una trama descomprimida: lo más grande que un servidor puede
+     * difundir sin comprimir (el máximo de fragmentos al tamaño de difusión). Un
+     * payload que descomprime a más se rechaza, así que una "bomba" Deflate
+     * recibida por broadcast no puede hacer crecer el buffer sin límite.
+     */
+    public static final int MAX_INFLATED = Fragmenter.MAX_FRAGMENTS * Fragmenter.ETHERNET_DATAGRAM;
+
+    // Lo más frecuente va al final: Deflate codifica mejor las distancias cortas
+    private static final byte[] DICTIONARY = (
+            "SCHEMA BIN KEY DELTA FULL keyframeId schemaVersion frameType "
+            + "wind_speed km/h m/s rain mm visibility km dew_point uv_index "
+            + "<?xml version=\"1.0\" encoding=\"UTF-8\"?><!DOCTYPE distributionMessage SYSTEM \"distribution_message.dtd\">"
+            + "<distributionMessage messageId=\"\" timestamp=\"\" serverId=\"\" encodingFormat=\"XML\" messageType=\"DISTRIBUTION\">"
+            + "<variables><variable name=\"temperature\"><value></value><unit>C</unit></variable>"
+            + "<variable name=\"humidity\"><value></value><unit>%</unit></variable>"
+            + "<variable name=\"pressure\"><value></value><unit>hPa</unit></variable></variables></distributionMessage>"
+            + "{\"serverId\":\"S1\",\"variables\":[{\"name\":\"temperature\",\"value\":,\"unit\":\"C\"},"
+            + "{\"name\":\"humidity\",\"value\":,\"unit\":\"%\"},{\"name\":\"pressure\",\"value\":,\"unit\":\"hPa\"}],"
+            + "\"messageType\":\"DISTRIBUTION\",\"messageId\":\"\",\"timestamp\":17,\"encodingFormat\":\"JSON\"}"
+            ).getBytes(StandardCharsets.UTF_8);
+
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+    private final Inflater inflater = new Inflater(true);
+    private final byte[] chunk = new byte[2048];
+    private final ByteSink inflated = new ByteSink(8192);
+
+    /** Posición del ':' del prefijo de tipo, o -1 si no hay prefijo. */
+    private static int prefixEnd(byte[] data, int offset, int length) {
+        int limit = Math.min(length, MAX_PREFIX);
+        for (int i = 0; i < limit; i++) {
+            if (data[offset + i] == ':') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public static boolean isCompressed(byte[] data, int offset, int length) {
+        int colon = prefixEnd(data, offset, length);
+        return colon >= 2 && data[offset + colon - 2] == '+' && data[offset + colon - 1] == 'Z';
+    }
+
+    /**
+     * Añade a {@code out} la versión comprimida de la trama {@code TYPE:payload}.
+     * Si la trama no tiene prefijo de tipo se copia tal cual.
+     */
+    public void compress(byte[] frame, int offset, int length, ByteSink out) {
+        int colon = prefixEnd(frame, offset, length);
+        if (colon < 0) {
+            out.write(frame, offset, length);
+            return;
+        }
+        out.write(frame, offset, colon);
+        out.writeAscii(FLAG + ":");
+        deflater.reset();
+        deflater.setDictionary(DICTIONARY);
+        deflater.setInput(frame, offset + colon + 1, length - colon - 1);
+        deflater.finish();
+        while (!deflater.finished()) {
+            int n = deflater.deflate(chunk);
+            out.write(chunk, 0, n);
+        }
+    }
+
+    /**
+     * Descomprime una trama {@code TYPE+Z:...} y devuelve {@code TYPE:payload} en un
+     * buffer interno, válido hasta la siguiente llamada.
+     *
+     * @throws DataFormatException si el payload está corrupto o descomprime a más de {@link #MAX_INFLATED} bytes
+     */
+    public ByteSink decompress(byte[] data, int offset, int length) throws DataFormatException {
+        int colon = prefixEnd(data, offset, length);
+        if (colon < 2) {
+            throw new DataFormatException("Missing compressed type prefix");
+        }
+        inflated.reset();
+        inflated.write(data, offset, colon - FLAG.length());
+        inflated.write(':');
+        inflater.reset();
+        inflater.setDictionary(DICTIONARY);
+        inflater.setInput(data, offset + colon + 1, length - colon - 1);
+        while (!inflater.finished()) {
+            int n = inflater.inflate(chunk);
+            if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                throw new DataFormatException("Truncated compressed payload");
+            }
+            if (inflated.size() + n > MAX_INFLATED) {
+                throw new DataFormatException("Decompressed payload exceeds " + MAX_INFLATED + " bytes");
+            }
+            inflated.write(chunk, 0, n);
+        }
+        return inflated;
+    }
+}
@@ -0,0 +1,174 @@
+package common;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Junta los fragmentos "FRAG:" de {@link Fragmenter}. Los mensajes a medias se
+ * identifican por origen (dirección y puerto) y messageId, y se descartan si no
+ * se completan en {@code timeoutMs} desde el primer fragmento.
+ *
+ * La memoria está acotada: como mucho {@code maxPending} mensajes a medias y
+ * {@code maxBytes} bytes entre todos. Al superar un límite se descarta el mensaje
+ * pendiente más antiguo.
+ *
+ * No es thread-safe: la usa solo el hilo receptor del socket (los contadores se
+ * pueden leer desde otro hilo).
+ */
+public class Reassembler {
+    private final int maxPending;
+    private final int maxBytes;
+    private final long timeoutMs;
+
+    // En orden de llegada del primer fragmento: los más antiguos primero
+    private final LinkedHashMap<Key, Pending> pending = new LinkedHashMap<>();
+    private volatile int pendingBytes;
+
+    // Solo los escribe el hilo receptor
+    private volatile long completed;
+    private volatile long expired;
+    private volatile long evicted;
+    private volatile long malformed;
+
+    public Reassembler(int maxPending, int maxBytes, long timeoutMs) {
+        this.maxPending = maxPending;
+        this.maxBytes = maxBytes;
+        this.timeoutMs = timeoutMs;
+    }
+
+    private static final class Key {
+        final Object source;
+        final long messageId;
+
+        Key(Object source, long messageId) {
+            this.source = source;
+            this.messageId = messageId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && ((Key) o).messageId == messageId && Objects.equals(((Key) o).source, source);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(source) * 31 + Long.hashCode(messageId);
+        }
+    }
+
+    private static final class Pending {
+        final byte[][] parts;
+        final long firstMillis;
+        int received;
+        int bytes;
+
+        Pending(int count, long firstMillis) {
+            this.parts = new byte[count][];
+            this.firstMillis = firstMillis;
+        }
+    }
+
+    /**
+     * Procesa un fragmento recibido de {@code source} (p. ej. el SocketAddress del
+     * datagrama). Devuelve el mensaje completo cuando llega el último fragmento, o
+     * null mientras falten o si el fragmento no es válido.
+     */
+    public byte[] accept(Object source, byte[] data, int offset, int length, long nowMillis) {
+        expire(nowMillis);
+        Fragmenter.Header header;
+        try {
+            header = new Fragmenter.Header(data, offset, length);
+        } catch (IndexOutOfBoundsException e) {
+            malformed++;
+            return null;
+        }
+        int chunk = offset + length - header.payloadOffset;
+        if (header.count <= 0 || header.count > Fragmenter.MAX_FRAGMENTS || header.index < 0
+                || header.index >= header.count || chunk > maxBytes) {
+            malformed++;
+            return null;
+        }
+
+        Key key = new Key(source, header.messageId);
+        Pending p = pending.get(key);
+        if (p != null && p.parts.length != header.count) {
+            malformed++; // Mismo id con otro total: se descarta lo que había
+            remove(key, p);
+            p = null;
+        }
+        if (p == null) {
+            p = new Pending(header.count, nowMillis);
+            pending.put(key, p);
+        }
+        if (p.parts[header.index] != null) {
+            return null; // Fragmento duplicado
+        }
+        byte[] part = new byte[chunk];
+        System.arraycopy(data, header.payloadOffset, part, 0, chunk);
+        p.parts[header.index] = part;
+        p.received++;
+        p.bytes += chunk;
+        pendingBytes += chunk;
+
+        if (p.received == p.parts.length) {
+            remove(key, p);
+            completed++;
+            byte[] message = new byte[p.bytes];
+            int pos = 0;
+            for (byte[] piece : p.parts) {
+                System.arraycopy(piece, 0, message, pos, piece.length);
+                pos += piece.length;
+            }
+            return message;
+        }
+        evictOverLimits(key);
+        return null;
+    }
+
+    /** Descarta los mensajes a medias cuyo primer fragmento llegó hace más de timeoutMs. */
+    public void expire(long nowMillis) {
+        Iterator<Map.Entry<Key, Pending>> it = pending.entrySet().iterator();
+        while (it.hasNext()) {
+            Pending p = it.next().getValue();
+            if (nowMillis - p.firstMillis < timeoutMs) {
+                break; // El resto llegó después
+            }
+            it.remove();
+            pendingBytes -= p.bytes;
+            expired++;
+        }
+    }
+
+    private void evictOverLimits(Key current) {
+        Iterator<Map.Entry<Key, Pending>> it = pending.entrySet().iterator();
+        while ((pending.size() > maxPending || pendingBytes > maxBytes) && it.hasNext()) {
+            Map.Entry<Key, Pending> oldest = it.next();
+            if (oldest.getKey().equals(current) && pending.size() > 1) {
+                continue; // Se sacrifica antes un mensaje más antiguo que el que está llegando
+            }
+            it.remove();
+            pendingBytes -= oldest.getValue().bytes;
+            evicted++;
+        }
+    }
+
+    private void remove(Key key, Pending p) {
+        pending.remove(key);
+        pendingBytes -= p.bytes;
+    }
+
+    public int getPendingCount() { return pending.size(); }
+    public int getPendingBytes() { return pendingBytes; }
+    public long getCompleted() { return completed; }
+    public long getExpired() { return expired; }
+    public long getEvicted() { return evicted; }
+    public long getMalformed() { return malformed; }
+
+    @Override
+    public String toString() {
+        return "completed=" + completed + " pending=" + pending.size() + " (" + pendingBytes + " bytes) expired="
+                + expired + " evicted=" + evicted + " malformed=" + malformed;
+    }
+}
@@ -33,6 +33,25 @@ public class ResponseMessage extends AbstractMessage {
         return MessageUtils.toJson(this); // GSON serializará el objeto 'this'
     }
 
+    /** Escribe el JSON compacto directamente sobre el sink. */
+    public void writeTo(ByteSink sink) {
+        JsonCodec.write(JsonCodec.RESPONSE_ADAPTER, this, sink);
+    }
+
+    /** Decodifica desde el buffer del datagrama sin crear un String intermedio. */
+    public static ResponseMessage deserialize(byte[] data, int offset, int length) {
+        try {
+            ResponseMessage msg = JsonCodec.read(JsonCodec.RESPONSE_ADAPTER, data, offset, length);
+            if (msg != null) {
+                msg.setEncodingFormat(MessageUtils.ENCODING_JSON);
+            }
+            return msg;
+        } catch (JsonSyntaxException e) {
+            System.err.println("Error parsing JSON response message: " + e.getMessage());
+            return null;
+        }
+    }
+
     public static ResponseMessage deserialize(String jsonData) {
          try {
             ResponseMessage msg = MessageUtils.fromJson(jsonData, ResponseMessage.class);
@@ -0,0 +1,57 @@
+package common;
+
+import java.nio.charset.StandardCharsets;
+
+import com.google.gson.JsonSyntaxException;
+
+/**
+ * Anuncio del esquema de una estación: asocia ids pequeños a nombre y unidad, de
+ * modo que los DistributionMessage en modo esquema solo llevan pares (id, valor).
+ * Se difunde siempre como JSON compacto con el prefijo "SCHEMA:".
+ */
+public final class SchemaMessage extends AbstractMessage {
+    private static final long serialVersionUID = 1L;
+    public static final String PREFIX = "SCHEMA";
+    private static final byte[] PREFIX_BYTES = (PREFIX + ":").getBytes(StandardCharsets.US_ASCII);
+
+    private final String serverId;
+    private final StationSchema schema;
+    private String messageType = "SCHEMA";
+
+    public SchemaMessage(String serverId, StationSchema schema) {
+        super();
+        this.serverId = serverId;
+        this.schema = schema;
+        this.setEncodingFormat(MessageUtils.ENCODING_JSON);
+    }
+
+    public String getServerId() { return serverId; }
+    public StationSchema getSchema() { return schema; }
+    public String getMessageType() { return messageType; }
+
+    public void writeTo(ByteSink sink) {
+        sink.write(PREFIX_BYTES, 0, PREFIX_BYTES.length);
+        JsonCodec.write(JsonCodec.SCHEMA_ADAPTER, this, sink);
+    }
+
+    public static boolean hasPrefix(byte[] data, int offset, int length) {
+        if (length < PREFIX_BYTES.length) {
+            return false;
+        }
+        for (int i = 0; i < PREFIX_BYTES.length; i++) {
+            if (data[offset + i] != PREFIX_BYTES[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public static SchemaMessage deserialize(byte[] data, int offset, int length) {
+        try {
+            return JsonCodec.read(JsonCodec.SCHEMA_ADAPTER, data, offset + PREFIX_BYTES.length, length - PREFIX_BYTES.length);
+        } catch (JsonSyntaxException e) {
+            System.err.println("Error parsing JSON schema message: " + e.getMessage());
+            return null;
+        }
+    }
+}
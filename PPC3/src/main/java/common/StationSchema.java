@@ -0,0 +1,48 @@
+package common;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * Diccionario de variables de una estación: cada id (posición) tiene un nombre y
+ * una unidad. Inmutable; cualquier cambio genera una versión nueva.
+ */
+public final class StationSchema implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private final int version;
+    private final String[] names;
+    private final String[] units;
+
+    public StationSchema(int version, String[] names, String[] units) {
+        if (names.length != units.length) {
+            throw new IllegalArgumentException("Names and units must have the same length");
+        }
+        this.version = version;
+        this.names = names.clone();
+        this.units = units.clone();
+    }
+
+    public static StationSchema fromVariables(int version, List<WeatherVariable> variables) {
+        String[] names = new String[variables.size()];
+        String[] units = new String[variables.size()];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = variables.get(i).getName();
+            units[i] = variables.get(i).getUnit();
+        }
+        return new StationSchema(version, names, units);
+    }
+
+    public int getVersion() { return version; }
+    public int size() { return names.length; }
+    public String getName(int id) { return names[id]; }
+    public String getUnit(int id) { return units[id]; }
+
+    public int indexOf(String name) {
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
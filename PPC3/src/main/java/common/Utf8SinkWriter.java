@@ -0,0 +1,106 @@
+package common;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+
+/**
+ * Writer que codifica a UTF-8 sobre un OutputStream que se cambia en cada uso.
+ * Sustituye al OutputStreamWriter (con su codificador y su buffer de 8 KB) que se
+ * creaba por mensaje: lo guarda un hilo y se reutiliza. Los surrogates sueltos se
+ * escriben como '?', igual que OutputStreamWriter.
+ */
+final class Utf8SinkWriter extends Writer {
+    private final byte[] buffer = new byte[1024];
+    private int count;
+    private char pendingHighSurrogate;
+    private OutputStream target;
+
+    /** Destino de lo que se escriba a continuación; null al terminar para no retenerlo. */
+    void setTarget(OutputStream target) {
+        this.target = target;
+        this.count = 0;
+        this.pendingHighSurrogate = 0;
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        writeChar((char) c);
+    }
+
+    @Override
+    public void write(char[] chars, int offset, int length) throws IOException {
+        for (int i = offset; i < offset + length; i++) {
+            writeChar(chars[i]);
+        }
+    }
+
+    @Override
+    public void write(String s, int offset, int length) throws IOException {
+        for (int i = offset; i < offset + length; i++) {
+            writeChar(s.charAt(i));
+        }
+    }
+
+    private void writeChar(char c) throws IOException {
+        if (count + 4 > buffer.length) {
+            drain();
+        }
+        if (pendingHighSurrogate != 0) {
+            char high = pendingHighSurrogate;
+            pendingHighSurrogate = 0;
+            if (Character.isLowSurrogate(c)) {
+                int cp = Character.toCodePoint(high, c);
+                buffer[count++] = (byte) (0xF0 | (cp >> 18));
+                buffer[count++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                buffer[count++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                buffer[count++] = (byte) (0x80 | (cp & 0x3F));
+                return;
+            }
+            buffer[count++] = '?';
+            if (count + 4 > buffer.length) {
+                drain();
+            }
+        }
+        if (c < 0x80) {
+            buffer[count++] = (byte) c;
+        } else if (c < 0x800) {
+            buffer[count++] = (byte) (0xC0 | (c >> 6));
+            buffer[count++] = (byte) (0x80 | (c & 0x3F));
+        } else if (Character.isHighSurrogate(c)) {
+            pendingHighSurrogate = c;
+        } else if (Character.isLowSurrogate(c)) {
+            buffer[count++] = '?';
+        } else {
+            buffer[count++] = (byte) (0xE0 | (c >> 12));
+            buffer[count++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+            buffer[count++] = (byte) (0x80 | (c & 0x3F));
+        }
+    }
+
+    private void drain() throws IOException {
+        if (count > 0) {
+            target.write(buffer, 0, count);
+            count = 0;
+        }
+    }
+
+    /** Vuelca lo pendiente al destino; un surrogate alto sin pareja sale como '?'. */
+    @Override
+    public void flush() throws IOException {
+        if (pendingHighSurrogate != 0) {
+            pendingHighSurrogate = 0;
+            if (count + 1 > buffer.length) {
+                drain();
+            }
+            buffer[count++] = '?';
+        }
+        drain();
+        target.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+    }
+}
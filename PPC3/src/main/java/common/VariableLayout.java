@@ -0,0 +1,190 @@
+package common;
+
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Nombres, unidades e ids de las variables de un DistributionMessage, compartidos
+ * entre todos los mensajes con la misma forma (normalmente, todos los de una
+ * estación). Los valores van aparte, en un double[] del mensaje.
+ *
+ * Las instancias se internan en un árbol: cada layout guarda su última variable y
+ * un puntero al layout sin ella, y {@link #append} devuelve el hijo ya existente
+ * si lo hay. Decodificar un mensaje con la forma de siempre no crea ningún layout
+ * nuevo y las cadenas recién leídas no se retienen.
+ */
+public final class VariableLayout implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    // Límites del árbol para que nombres arbitrarios no lo hagan crecer sin control;
+    // por encima se crean layouts sin internar (funcionan igual, pero no se comparten)
+    private static final int MAX_CHILDREN = 64;
+    private static final int MAX_INTERNED = 100_000;
+    private static final AtomicInteger internedCount = new AtomicInteger();
+    private static final VariableLayout[] NO_CHILDREN = new VariableLayout[0];
+    private static final int INDEX_THRESHOLD = 8;
+
+    // Después de las constantes anteriores: el constructor usa NO_CHILDREN
+    public static final VariableLayout EMPTY = new VariableLayout(null, null, null, -1, true);
+
+    private final VariableLayout parent;
+    private final int size;
+    private final String name; // Última variable del layout
+    private final String unit;
+    private final int id;
+    private final boolean interned;
+
+    private transient volatile VariableLayout lastChild;
+    private transient volatile VariableLayout[] children = NO_CHILDREN;
+    // Vista plana, calculada al primer acceso por posición
+    private transient volatile Flat flat;
+
+    private static final class Flat {
+        final String[] names;
+        final String[] units;
+        final int[] ids;
+        final Map<String, Integer> index; // Solo para layouts grandes
+
+        Flat(VariableLayout layout) {
+            int n = layout.size;
+            names = new String[n];
+            units = new String[n];
+            ids = new int[n];
+            for (VariableLayout l = layout; l.size > 0; l = l.parent) {
+                names[l.size - 1] = l.name;
+                units[l.size - 1] = l.unit;
+                ids[l.size - 1] = l.id;
+            }
+            if (n > INDEX_THRESHOLD) {
+                index = new HashMap<>(n * 2);
+                for (int i = n - 1; i >= 0; i--) {
+                    if (names[i] != null) {
+                        index.put(names[i], i); // Ante nombres repetidos gana el primero
+                    }
+                }
+            } else {
+                index = null;
+            }
+        }
+    }
+
+    private VariableLayout(VariableLayout parent, String name, String unit, int id, boolean interned) {
+        this.parent = parent;
+        this.size = parent == null ? 0 : parent.size + 1;
+        this.name = name;
+        this.unit = unit;
+        this.id = id;
+        this.interned = interned;
+    }
+
+    /** Layout con una variable más al final; devuelve la instancia compartida si ya existe. */
+    public VariableLayout append(String name, String unit, int id) {
+        VariableLayout last = lastChild;
+        if (last != null && last.matches(name, unit, id)) {
+            return last;
+        }
+        for (VariableLayout child : children) {
+            if (child.matches(name, unit, id)) {
+                lastChild = child;
+                return child;
+            }
+        }
+        if (!interned) {
+            return new VariableLayout(this, name, unit, id, false);
+        }
+        synchronized (this) {
+            VariableLayout[] current = children;
+            for (VariableLayout child : current) {
+                if (child.matches(name, unit, id)) {
+                    lastChild = child;
+                    return child;
+                }
+            }
+            if (current.length >= MAX_CHILDREN || internedCount.get() >= MAX_INTERNED) {
+                return new VariableLayout(this, name, unit, id, false);
+            }
+            VariableLayout child = new VariableLayout(this, name, unit, id, true);
+            VariableLayout[] grown = java.util.Arrays.copyOf(current, current.length + 1);
+            grown[current.length] = child;
+            children = grown;
+            lastChild = child;
+            internedCount.incrementAndGet();
+            return child;
+        }
+    }
+
+    /** Mismo layout con la variable {@code index} cambiada. */
+    public VariableLayout with(int index, String name, String unit, int id) {
+        Objects.checkIndex(index, size);
+        Flat f = flat();
+        VariableLayout result = EMPTY;
+        for (int i = 0; i < size; i++) {
+            result = i == index ? result.append(name, unit, id) : result.append(f.names[i], f.units[i], f.ids[i]);
+        }
+        return result;
+    }
+
+    private boolean matches(String name, String unit, int id) {
+        return this.id == id && Objects.equals(this.name, name) && Objects.equals(this.unit, unit);
+    }
+
+    private Flat flat() {
+        Flat f = flat;
+        if (f == null) {
+            f = new Flat(this);
+            flat = f;
+        }
+        return f;
+    }
+
+    public int size() { return size; }
+    public String getName(int index) { return flat().names[Objects.checkIndex(index, size)]; }
+    public String getUnit(int index) { return flat().units[Objects.checkIndex(index, size)]; }
+    public int getId(int index) { return flat().ids[Objects.checkIndex(index, size)]; }
+
+    /** Posición de la primera variable con ese nombre, o -1. */
+    public int indexOf(String name) {
+        Flat f = flat();
+        if (f.index != null) {
+            Integer i = f.index.get(name);
+            return i != null ? i : -1;
+        }
+        for (int i = 0; i < size; i++) {
+            if (Objects.equals(f.names[i], name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // Al serializar se guardan solo los arrays y al leer se vuelve a internar
+    private Object writeReplace() throws ObjectStreamException {
+        Flat f = flat();
+        return new SerializedForm(f.names, f.units, f.ids);
+    }
+
+    private static final class SerializedForm implements Serializable {
+        private static final long serialVersionUID = 1L;
+        private final String[] names;
+        private final String[] units;
+        private final int[] ids;
+
+        SerializedForm(String[] names, String[] units, int[] ids) {
+            this.names = names;
+            this.units = units;
+            this.ids = ids;
+        }
+
+        private Object readResolve() throws ObjectStreamException {
+            VariableLayout layout = EMPTY;
+            for (int i = 0; i < names.length; i++) {
+                layout = layout.append(names[i], units[i], ids[i]);
+            }
+            return layout;
+        }
+    }
+}
@@ -7,6 +7,7 @@ public class WeatherVariable implements Serializable {
     private String name;
     private double value;
     private String unit;
+    private int id = -1; // Id en el esquema de la estación (-1: se identifica por nombre)
 
     public WeatherVariable(String name, double value, String unit) {
         this.name = name;
@@ -14,6 +15,12 @@ public class WeatherVariable implements Serializable {
         this.unit = unit;
     }
 
+    /** Variable en modo esquema: solo id y valor; nombre y unidad se resuelven con el StationSchema. */
+    public WeatherVariable(int id, double value) {
+        this(null, value, null);
+        this.id = id;
+    }
+
     // Getters and Setters
     public String getName() { return name; }
     public void setName(String name) { this.name = name; }
@@ -21,9 +28,12 @@ public class WeatherVariable implements Serializable {
     public void setValue(double value) { this.value = value; }
     public String getUnit() { return unit; }
     public void setUnit(String unit) { this.unit = unit; }
+    public int getId() { return id; }
+    public void setId(int id) { this.id = id; }
 
     @Override
     public String toString() {
-        return name + ": " + String.format("%.2f", value) + " " + unit;
+        StringBuilder sb = new StringBuilder(32).append(getName()).append(": ");
+        return FixedPoint.append(sb, getValue(), 2).append(' ').append(getUnit()).toString();
     }
 }
\ No newline at end of file
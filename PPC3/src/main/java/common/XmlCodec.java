@@ -0,0 +1,293 @@
+package common;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * Codificador/decodificador XML en streaming (StAX) para DistributionMessage.
+ * Las factorías y la gramática de distribution_message.dtd se crean una sola vez.
+ *
+ * La validación se configura con la propiedad de sistema
+ * {@code ppc.xml.validation} (FULL, OFF o SAMPLED:N) o con {@link #setValidation}.
+ */
+public final class XmlCodec {
+
+    public enum Validation { FULL, SAMPLED, OFF }
+
+    public static final String DTD_NAME = "distribution_message.dtd";
+    private static final String DOCTYPE = "<!DOCTYPE distributionMessage SYSTEM \"" + DTD_NAME + "\">";
+
+    private static final XMLOutputFactory OUTPUT_FACTORY = XMLOutputFactory.newInstance();
+    private static final XMLInputFactory INPUT_FACTORY = createInputFactory();
+    private static final DtdGrammar GRAMMAR = loadGrammar();
+
+    private static volatile Validation validation = Validation.FULL;
+    private static volatile int sampleEvery = 100;
+    private static final AtomicLong decodedCount = new AtomicLong();
+
+    static {
+        String prop = System.getProperty("ppc.xml.validation");
+        if (prop != null) {
+            try {
+                String[] parts = prop.trim().toUpperCase().split(":");
+                setValidation(Validation.valueOf(parts[0]), parts.length > 1 ? Integer.parseInt(parts[1]) : sampleEvery);
+            } catch (IllegalArgumentException e) {
+                System.err.println("Invalid ppc.xml.validation value '" + prop + "', using FULL.");
+            }
+        }
+    }
+
+    private XmlCodec() {
+    }
+
+    private static XMLInputFactory createInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        // El DTD no se procesa en el parser: se valida con la gramática cacheada
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, false);
+        return factory;
+    }
+
+    private static DtdGrammar loadGrammar() {
+        try (InputStream in = XmlCodec.class.getClassLoader().getResourceAsStream(DTD_NAME)) {
+            if (in == null) {
+                System.err.println("Warning (XmlCodec): " + DTD_NAME + " not found in classpath, XML validation disabled.");
+                return null;
+            }
+            return DtdGrammar.parse(new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            System.err.println("Warning (XmlCodec): could not read " + DTD_NAME + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /** Cambia el modo de validación. {@code every} solo se usa en modo SAMPLED (1 de cada N). */
+    public static void setValidation(Validation mode, int every) {
+        if (every <= 0) {
+            throw new IllegalArgumentException("Sample rate must be positive: " + every);
+        }
+        sampleEvery = every;
+        validation = mode;
+    }
+
+    public static Validation getValidation() { return validation; }
+    public static int getSampleEvery() { return sampleEvery; }
+
+    // --- Codificación ---
+
+    public static String encodeToString(DistributionMessage msg) {
+        StringWriter sw = new StringWriter(256 + 96 * msg.getVariableCount());
+        try {
+            XMLStreamWriter w = OUTPUT_FACTORY.createXMLStreamWriter(sw);
+            write(msg, w, "UTF-8");
+        } catch (XMLStreamException e) {
+            throw new RuntimeException("Error creating XML for DistributionMessage", e);
+        }
+        return sw.toString();
+    }
+
+    public static void encode(DistributionMessage msg, OutputStream out) {
+        try {
+            XMLStreamWriter w = OUTPUT_FACTORY.createXMLStreamWriter(out, "UTF-8");
+            write(msg, w, "UTF-8");
+        } catch (XMLStreamException e) {
+            throw new RuntimeException("Error creating XML for DistributionMessage", e);
+        }
+    }
+
+    private static void write(DistributionMessage msg, XMLStreamWriter w, String encoding) throws XMLStreamException {
+        w.writeStartDocument(encoding, "1.0");
+        w.writeDTD(DOCTYPE);
+        w.writeStartElement("distributionMessage");
+        if (msg.getMessageId() != null) {
+            w.writeAttribute("messageId", msg.getMessageId());
+        }
+        w.writeAttribute("timestamp", Long.toString(msg.getTimestamp()));
+        w.writeAttribute("serverId", msg.getServerId());
+        w.writeAttribute("encodingFormat", msg.getEncodingFormat());
+        w.writeAttribute("messageType", msg.getMessageType());
+        if (!DistributionMessage.FRAME_FULL.equals(msg.getFrameType())) {
+            w.writeAttribute("frameType", msg.getFrameType());
+            w.writeAttribute("keyframeId", Long.toString(msg.getKeyframeId()));
+        }
+        if (msg.getSchemaVersion() > 0) {
+            w.writeAttribute("schemaVersion", Integer.toString(msg.getSchemaVersion()));
+        }
+        if (msg.getSequence() > 0) {
+            w.writeAttribute("sequence", Long.toString(msg.getSequence()));
+        }
+        w.writeStartElement("variables");
+        VariableLayout layout = msg.getLayout();
+        StringBuilder number = new StringBuilder(24);
+        char[] chars = new char[24];
+        for (int i = 0; i < layout.size(); i++) {
+            w.writeStartElement("variable");
+            if (layout.getName(i) != null) {
+                w.writeAttribute("name", layout.getName(i));
+            }
+            if (layout.getId(i) >= 0) {
+                w.writeAttribute("id", Integer.toString(layout.getId(i)));
+            }
+            w.writeStartElement("value");
+            number.setLength(0);
+            FixedPoint.append(number, msg.getValue(i), 2);
+            if (number.length() > chars.length) {
+                chars = new char[number.length()];
+            }
+            number.getChars(0, number.length(), chars, 0);
+            w.writeCharacters(chars, 0, number.length());
+            w.writeEndElement();
+            if (layout.getUnit(i) != null) {
+                w.writeStartElement("unit");
+                w.writeCharacters(layout.getUnit(i));
+                w.writeEndElement();
+            }
+            w.writeEndElement();
+        }
+        w.writeEndElement();
+        w.writeEndElement();
+        w.writeEndDocument();
+        w.flush();
+        w.close();
+    }
+
+    // --- Decodificación ---
+
+    public static DistributionMessage decode(String xml) throws XMLStreamException {
+        return decode(new StringReader(xml));
+    }
+
+    public static DistributionMessage decode(byte[] data, int offset, int length) throws XMLStreamException {
+        XMLStreamReader r = INPUT_FACTORY.createXMLStreamReader(new ByteArrayInputStream(data, offset, length));
+        return read(r);
+    }
+
+    private static DistributionMessage decode(Reader reader) throws XMLStreamException {
+        return read(INPUT_FACTORY.createXMLStreamReader(reader));
+    }
+
+    private static boolean shouldValidate() {
+        if (GRAMMAR == null) {
+            return false;
+        }
+        switch (validation) {
+            case FULL:
+                return true;
+            case SAMPLED:
+                return decodedCount.getAndIncrement() % sampleEvery == 0;
+            default:
+                return false;
+        }
+    }
+
+    private static DistributionMessage read(XMLStreamReader r) throws XMLStreamException {
+        DtdGrammar.Validator validator = shouldValidate() ? GRAMMAR.newValidator() : null;
+        DistributionMessage msg = null;
+        StringBuilder text = new StringBuilder(16);
+        boolean capturing = false;
+        String name = null;
+        String unit = null;
+        int id = -1;
+        double value = 0;
+        boolean hasValue = false;
+        try {
+            while (r.hasNext()) {
+                switch (r.next()) {
+                    case XMLStreamConstants.START_ELEMENT:
+                        if (validator != null) validator.startElement(r);
+                        switch (r.getLocalName()) {
+                            case "distributionMessage":
+                                msg = DistributionMessage.forDecoding(r.getAttributeValue(null, "serverId"), MessageUtils.ENCODING_XML);
+                                msg.messageId = r.getAttributeValue(null, "messageId");
+                                msg.timestamp = Long.parseLong(r.getAttributeValue(null, "timestamp"));
+                                String frameType = r.getAttributeValue(null, "frameType");
+                                if (frameType != null) {
+                                    String keyframeId = r.getAttributeValue(null, "keyframeId");
+                                    msg.setFrame(frameType, keyframeId != null ? Long.parseLong(keyframeId) : 0);
+                                }
+                                String schemaVersion = r.getAttributeValue(null, "schemaVersion");
+                                if (schemaVersion != null) {
+                                    msg.setSchemaVersion(Integer.parseInt(schemaVersion));
+                                }
+                                String sequence = r.getAttributeValue(null, "sequence");
+                                if (sequence != null) {
+                                    msg.setSequence(Long.parseLong(sequence));
+                                }
+                                break;
+                            case "variable":
+                                name = r.getAttributeValue(null, "name");
+                                String idAttr = r.getAttributeValue(null, "id");
+                                id = idAttr != null ? Integer.parseInt(idAttr) : -1;
+                                unit = null;
+                                hasValue = false; // Sin validar, una variable sin <value> no hereda el de la anterior
+                                break;
+                            case "value":
+                            case "unit":
+                                text.setLength(0);
+                                capturing = true;
+                                break;
+                            default:
+                                break;
+                        }
+                        break;
+                    case XMLStreamConstants.CHARACTERS:
+                    case XMLStreamConstants.CDATA:
+                    case XMLStreamConstants.SPACE:
+                        if (validator != null) validator.characters(r);
+                        if (capturing) {
+                            text.append(r.getTextCharacters(), r.getTextStart(), r.getTextLength());
+                        }
+                        break;
+                    case XMLStreamConstants.END_ELEMENT:
+                        if (validator != null) validator.endElement(r);
+                        switch (r.getLocalName()) {
+                            case "value":
+                                value = FixedPoint.parse(text);
+                                hasValue = true;
+                                capturing = false;
+                                break;
+                            case "unit":
+                                unit = text.toString();
+                                capturing = false;
+                                break;
+                            case "variable":
+                                if (msg == null) {
+                                    throw new XMLStreamException("Variable outside distributionMessage", r.getLocation());
+                                }
+                                if (!hasValue) {
+                                    throw new XMLStreamException("Variable " + name + " without value", r.getLocation());
+                                }
+                                msg.addVariable(name, value, unit, id);
+                                break;
+                            default:
+                                break;
+                        }
+                        break;
+                    default:
+                        break;
+                }
+            }
+        } finally {
+            r.close();
+        }
+        if (msg == null) {
+            throw new XMLStreamException("Missing distributionMessage root element");
+        }
+        return msg;
+    }
+}
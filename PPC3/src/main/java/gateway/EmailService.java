@@ -2,6 +2,7 @@ package gateway;
 
 import client.Client;
 import common.DistributionMessage;
+import common.FixedPoint;
 import common.MessageUtils;
 import common.WeatherVariable;
 
@@ -17,7 +18,6 @@ import java.nio.charset.StandardCharsets; // Para UTF-8
 import java.util.Properties;
 import java.util.Date;
 import java.util.List;
-import java.util.Locale; // Para formateo de números
 import java.util.ArrayList;
 import java.util.Map;
 import java.util.Set;
@@ -237,26 +237,17 @@ public class EmailService {
                 sb.append("Last Update: ").append(new Date(msg.getTimestamp())).append("\n");
                 sb.append("Encoding used by server: ").append(msg.getEncodingFormat()).append("\n");
                 for (WeatherVariable var : msg.getVariables()) {
-                    // Usar Locale.US para formatear el double con punto decimal
-                    sb.append(String.format(Locale.US,"  - %s: %.2f %s\n", var.getName(), var.getValue(), var.getUnit()));
+                    // Siempre con punto decimal (FixedPoint no depende del Locale)
+                    sb.append("  - ").append(var.getName()).append(": ");
+                    FixedPoint.append(sb, var.getValue(), 2).append(' ').append(var.getUnit()).append('\n');
                 }
                 sb.append("\n");
 
                 try {
-                    String fullSerialization = msg.serialize();
-                    String jsonPayload = null;
                     String xmlPayload = null;
 
-                    // Preparar JSON
-                    if (MessageUtils.ENCODING_JSON.equals(msg.getEncodingFormat())) {
-                        if (fullSerialization != null && fullSerialization.startsWith(MessageUtils.ENCODING_JSON + ":")) {
-                             jsonPayload = fullSerialization.substring((MessageUtils.ENCODING_JSON + ":").length());
-                        } else {
-                             jsonPayload = MessageUtils.toJson(msg);
-                        }
-                    } else { // Si el formato original no es JSON, generar JSON desde el objeto
-                        jsonPayload = MessageUtils.toJson(msg);
-                    }
+                    // Preparar JSON (indentado: el adjunto lo lee una persona)
+                    String jsonPayload = MessageUtils.toPrettyJson(msg);
                     
                     MimeBodyPart jsonAttachment = new MimeBodyPart();
                     DataSource jsonDataSource = new ByteArrayDataSource(jsonPayload.getBytes(StandardCharsets.UTF_8), "application/json");
@@ -266,6 +257,7 @@ public class EmailService {
 
                     // Preparar XML
                     if (MessageUtils.ENCODING_XML.equals(msg.getEncodingFormat())) {
+                         String fullSerialization = msg.serialize();
                          if (fullSerialization != null && fullSerialization.startsWith(MessageUtils.ENCODING_XML + ":")) {
                              xmlPayload = fullSerialization.substring((MessageUtils.ENCODING_XML + ":").length());
                          } else {
@@ -55,6 +55,7 @@ public class IndexHtmlHandler implements HttpHandler {
         htmlBuilder.append("            <p>Access weather data and control services via REST endpoints (returns JSON).</p>\n");
         htmlBuilder.append("            <ul>\n");
         htmlBuilder.append("                <li><a href=\"/apirest/muestra_valores\">Get All Weather Values (JSON)</a></li>\n");
+        htmlBuilder.append("                <li><a href=\"/apirest/estadisticas\">Broadcast Reception Stats per Station (JSON)</a></li>\n");
         htmlBuilder.append("                <li>Example: <code>/apirest/cambia_parametro?serverId=S1&param=frequency&value=2000</code> (GET - for test, ideally POST/PUT)</li>\n");
         // Add more examples or a link to API documentation if available
         htmlBuilder.append("            </ul>\n");
@@ -2,6 +2,7 @@ package gateway;
 
 import client.Client;
 import common.DistributionMessage;
+import common.FixedPoint;
 import common.WeatherVariable;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
@@ -61,7 +62,7 @@ public class MeteorologyHtmlHandler implements HttpHandler {
                 for (WeatherVariable var : msg.getVariables()) {
                     html.append("            <tr>\n");
                     html.append("                <td>").append(var.getName()).append("</td>\n");
-                    html.append("                <td>").append(String.format("%.2f", var.getValue())).append("</td>\n");
+                    FixedPoint.append(html.append("                <td>"), var.getValue(), 2).append("</td>\n");
                     html.append("                <td>").append(var.getUnit()).append("</td>\n");
                     html.append("            </tr>\n");
                 }
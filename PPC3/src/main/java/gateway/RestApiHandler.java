@@ -33,6 +33,12 @@ public class RestApiHandler implements HttpHandler {
             } else {
                 sendJsonResponse(exchange, 405, MessageUtils.toJson(new ErrorResponse("Method Not Allowed")));
             }
+        } else if ("/apirest/estadisticas".equals(path)) {
+            if ("GET".equalsIgnoreCase(method)) {
+                sendJsonResponse(exchange, 200, MessageUtils.toJson(clientBroker.getLinkStats()));
+            } else {
+                sendJsonResponse(exchange, 405, MessageUtils.toJson(new ErrorResponse("Method Not Allowed")));
+            }
         } else if (path.startsWith("/apirest/cambia_parametro")) {
              if ("GET".equalsIgnoreCase(method)) { // As per example[cite: 51], though POST/PUT is better [cite: 62]
                 handleCambiaParametro(exchange);
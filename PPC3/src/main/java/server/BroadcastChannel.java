@@ -0,0 +1,165 @@
+package server;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Canal de difusión: un único DatagramChannel con SO_BROADCAST y ByteBuffers
+ * directos reutilizables, en lugar de abrir un DatagramSocket en cada tick. Lo usa
+ * una estación o, en un StationHost, todas las estaciones del proceso; cada una
+ * indica su destino ya resuelto ({@link Target}): broadcast o grupo multicast.
+ *
+ * Los datos se copian al buffer directo antes de enviarlos (con un buffer de heap
+ * el JDK haría esa copia a un buffer temporal propio). Lleva contadores de envíos,
+ * fallos y latencia de {@code send}.
+ *
+ * Se puede usar desde varios hilos. Si una interrupción cierra el canal (p. ej.
+ * al reprogramar el broadcast con shutdownNow) se vuelve a abrir en el siguiente
+ * envío.
+ */
+class BroadcastChannel implements AutoCloseable {
+    // Máximo payload de un datagrama UDP sobre IPv4
+    private static final int MAX_DATAGRAM = 65507;
+
+    private final ConcurrentLinkedQueue<ByteBuffer> bufferPool = new ConcurrentLinkedQueue<>();
+    private volatile DatagramChannel channel;
+    private volatile boolean closed;
+    // TTL configurado en el canal; los envíos multicast con otro TTL lo cambian bajo el lock
+    private int channelTtl = 1;
+
+    private final LongAdder packetsSent = new LongAdder();
+    private final LongAdder bytesSent = new LongAdder();
+    private final LongAdder sendFailures = new LongAdder();
+    private final LongAdder reopens = new LongAdder();
+    private final LongAdder sendNanosTotal = new LongAdder();
+    private final AtomicLong sendNanosMax = new AtomicLong();
+    private volatile String lastError;
+
+    /** Destino de una estación: dirección de broadcast o grupo multicast, y su TTL. */
+    static final class Target {
+        final InetSocketAddress address;
+        final int ttl;
+
+        /** @throws IllegalArgumentException si el TTL no está en 0..255 */
+        Target(String host, int port, int ttl) throws IOException {
+            if (ttl < 0 || ttl > 255) {
+                throw new IllegalArgumentException("TTL must be between 0 and 255: " + ttl);
+            }
+            this.address = new InetSocketAddress(InetAddress.getByName(host), port);
+            this.ttl = ttl;
+        }
+
+        boolean isMulticast() {
+            return address.getAddress().isMulticastAddress();
+        }
+
+        @Override
+        public String toString() {
+            return address.getAddress().getHostAddress() + ":" + address.getPort()
+                    + (isMulticast() ? " (multicast, ttl=" + ttl + ")" : "");
+        }
+    }
+
+    BroadcastChannel() throws IOException {
+        this.channel = open();
+    }
+
+    private DatagramChannel open() throws IOException {
+        DatagramChannel ch = DatagramChannel.open(StandardProtocolFamily.INET);
+        ch.setOption(StandardSocketOptions.SO_BROADCAST, true);
+        ch.setOption(StandardSocketOptions.IP_MULTICAST_TTL, 1);
+        return ch;
+    }
+
+    /** Envía un datagrama a {@code target}. */
+    void send(byte[] data, int offset, int length, Target target) throws IOException {
+        if (length > MAX_DATAGRAM) {
+            sendFailures.increment();
+            throw new IOException("Datagram of " + length + " bytes exceeds " + MAX_DATAGRAM);
+        }
+        ByteBuffer buffer = bufferPool.poll();
+        if (buffer == null) {
+            buffer = ByteBuffer.allocateDirect(MAX_DATAGRAM);
+        }
+        try {
+            buffer.clear();
+            buffer.put(data, offset, length).flip();
+            long start = System.nanoTime();
+            if (target.isMulticast()) {
+                sendMulticast(buffer, target);
+            } else {
+                channel().send(buffer, target.address);
+            }
+            long elapsed = System.nanoTime() - start;
+            packetsSent.increment();
+            bytesSent.add(length);
+            sendNanosTotal.add(elapsed);
+            sendNanosMax.accumulateAndGet(elapsed, Math::max);
+        } catch (IOException e) {
+            sendFailures.increment();
+            lastError = e.getClass().getSimpleName() + (e.getMessage() != null ? ": " + e.getMessage() : "");
+            throw e;
+        } finally {
+            bufferPool.offer(buffer);
+        }
+    }
+
+    // El TTL es una opción del canal: los envíos multicast se serializan para que
+    // cada datagrama salga con el TTL de su estación
+    private synchronized void sendMulticast(ByteBuffer buffer, Target target) throws IOException {
+        DatagramChannel ch = channel();
+        if (channelTtl != target.ttl) {
+            ch.setOption(StandardSocketOptions.IP_MULTICAST_TTL, target.ttl);
+            channelTtl = target.ttl;
+        }
+        ch.send(buffer, target.address);
+    }
+
+    private DatagramChannel channel() throws IOException {
+        DatagramChannel ch = channel;
+        if (ch.isOpen()) {
+            return ch;
+        }
+        synchronized (this) {
+            if (closed) {
+                throw new ClosedChannelException();
+            }
+            if (!channel.isOpen()) {
+                // Cerrado por una interrupción: se reabre para los siguientes envíos
+                channel = open();
+                channelTtl = 1;
+                reopens.increment();
+            }
+            return channel;
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // Ya cerrado
+        }
+    }
+
+    /** Resumen de los contadores para GET_BROADCAST_STATS. */
+    String stats() {
+        long packets = packetsSent.sum();
+        long avgMicros = packets > 0 ? sendNanosTotal.sum() / packets / 1000 : 0;
+        return "packets=" + packets + ", bytes=" + bytesSent.sum()
+                + ", failures=" + sendFailures.sum() + ", reopens=" + reopens.sum()
+                + ", sendLatencyAvg=" + avgMicros + "us, sendLatencyMax=" + sendNanosMax.get() / 1000 + "us"
+                + (lastError != null ? ", lastError=" + lastError : "");
+    }
+}
@@ -0,0 +1,303 @@
+package server;
+
+import common.ByteSink;
+import common.ControlMessage;
+import common.FixedPoint;
+import common.Fragmenter;
+import common.MessageUtils;
+import common.Reassembler;
+import common.ResponseMessage;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Puerto de control UDP: recibe los ControlMessage (reensamblando los que llegan
+ * fragmentados), los pasa al {@link Handler} y envía su respuesta. Lo usa un
+ * Server independiente para su propio puerto y un StationHost para el puerto
+ * compartido por todas sus estaciones.
+ *
+ * El hilo que llama a {@link #run()} solo lee datagramas de un DatagramChannel no
+ * bloqueante con un Selector y los encola por cliente (dirección y puerto de
+ * origen). El reensamblado, el parseo, el log y la ejecución del comando ocurren
+ * en un pool pequeño de workers: los mensajes de un mismo cliente se procesan en
+ * el orden de llegada, y los de clientes distintos en paralelo, de modo que un
+ * comando lento no retrasa la respuesta a los demás.
+ *
+ * El tamaño del pool se puede cambiar con -Dserver.controlWorkers (4 por defecto).
+ *
+ * Antes de copiar el datagrama se aplica el {@link ControlRateLimiter}: lo que
+ * exceda el límite de su origen o el global se descarta sin parsear ni registrar.
+ *
+ * Los reintentos de un mismo mensaje (mismo messageId desde el mismo host) no se
+ * vuelven a ejecutar: reciben la respuesta guardada en la {@link ResponseCache}.
+ */
+class ControlListener implements Runnable {
+    private static final int MAX_DATAGRAM = 65507;
+    /** Mensajes encolados por cliente como máximo; los que no caben se descartan. */
+    static final int MAX_QUEUED_PER_CLIENT = 64;
+
+    /** Procesa un mensaje; devuelve la respuesta o null para ignorarlo sin responder. */
+    interface Handler {
+        ResponseMessage handle(ControlMessage msg);
+    }
+
+    private final String name; // Prefijo de los mensajes por consola
+    private final int port;
+    private final String logFile;
+    private final Handler handler;
+    private final Reassembler reassembler = new Reassembler(16, 256 * 1024, 5000); // Protegido por sí mismo
+    private final Map<SocketAddress, ClientLane> lanes = new HashMap<>(); // Protegido por sí mismo
+    private final ExecutorService workers;
+    private final ControlRateLimiter rateLimiter = ControlRateLimiter.fromProperties();
+    private final ResponseCache responseCache = ResponseCache.fromProperties(); // null si está desactivada
+    private volatile DatagramChannel channel;
+    private volatile Selector selector;
+    private volatile boolean closing;
+
+    private final LongAdder received = new LongAdder();
+    private final LongAdder processed = new LongAdder();
+    private final LongAdder droppedQueueFull = new LongAdder();
+    private final LongAdder responseFailures = new LongAdder();
+    private volatile long maxHandleNanos;
+
+    /** Cola de un cliente; como mucho un worker la está vaciando a la vez. */
+    private final class ClientLane implements Runnable {
+        private final SocketAddress client;
+        private final ArrayDeque<byte[]> queue = new ArrayDeque<>(); // Protegida por lanes
+
+        ClientLane(SocketAddress client) {
+            this.client = client;
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                byte[] datagram;
+                synchronized (lanes) {
+                    datagram = queue.poll();
+                    if (datagram == null) {
+                        lanes.remove(client); // El siguiente mensaje de este cliente crea otra cola
+                        return;
+                    }
+                }
+                try {
+                    process(client, datagram);
+                } catch (RuntimeException e) {
+                    System.err.println(name + " Error processing control message: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    ControlListener(String name, int port, String logFile, Handler handler) {
+        this.name = name;
+        this.port = port;
+        this.logFile = logFile;
+        this.handler = handler;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(Math.max(1, Integer.getInteger("server.controlWorkers", 4)), r -> {
+            Thread t = new Thread(r, name + "-Control-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @Override
+    public void run() {
+        try (DatagramChannel ch = DatagramChannel.open();
+             Selector sel = Selector.open()) {
+            ch.bind(new InetSocketAddress(port));
+            ch.configureBlocking(false);
+            ch.register(sel, SelectionKey.OP_READ);
+            channel = ch;
+            selector = sel;
+            ByteBuffer buffer = ByteBuffer.allocateDirect(MAX_DATAGRAM);
+            System.out.println(name + " listening for control messages on port " + port);
+            while (!closing) {
+                sel.select();
+                sel.selectedKeys().clear();
+                // Se vacía el socket entero antes de volver a esperar
+                SocketAddress client;
+                while (!closing && (client = ch.receive(buffer.clear())) != null) {
+                    received.increment();
+                    if (client instanceof InetSocketAddress
+                            && !rateLimiter.tryAcquire(((InetSocketAddress) client).getAddress(), System.nanoTime())) {
+                        continue;
+                    }
+                    buffer.flip();
+                    byte[] datagram = new byte[buffer.remaining()];
+                    buffer.get(datagram);
+                    enqueue(client, datagram);
+                }
+            }
+        } catch (IOException e) {
+            if (!closing) {
+                System.err.println(name + " Control Message listener error: " + e.getMessage());
+                e.printStackTrace(); // Imprime el stack trace para más detalles
+            }
+        } finally {
+            workers.shutdown();
+            System.out.println(name + " Control message listener stopped.");
+        }
+    }
+
+    private void enqueue(SocketAddress client, byte[] datagram) {
+        ClientLane lane;
+        boolean start = false;
+        synchronized (lanes) {
+            lane = lanes.get(client);
+            if (lane == null) {
+                lane = new ClientLane(client);
+                lanes.put(client, lane);
+                start = true;
+            }
+            if (lane.queue.size() >= MAX_QUEUED_PER_CLIENT) {
+                droppedQueueFull.increment();
+                return;
+            }
+            lane.queue.add(datagram);
+        }
+        if (start) {
+            try {
+                workers.execute(lane);
+            } catch (RejectedExecutionException e) {
+                synchronized (lanes) {
+                    lanes.remove(client); // Listener cerrándose
+                }
+            }
+        }
+    }
+
+    /** Reensambla, parsea y ejecuta un datagrama; se llama desde un worker. */
+    private void process(SocketAddress client, byte[] data) {
+        int offset = 0;
+        int length = data.length;
+        if (Fragmenter.hasPrefix(data, offset, length)) {
+            synchronized (reassembler) {
+                data = reassembler.accept(client, data, offset, length, System.currentTimeMillis());
+            }
+            if (data == null) {
+                return; // Faltan fragmentos
+            }
+            length = data.length;
+        }
+
+        String receivedData = new String(data, offset, length, StandardCharsets.UTF_8);
+        MessageUtils.logMessage(logFile, "From " + client + " - " + receivedData);
+        System.out.println(name + " received control: " + receivedData + " from " + client);
+
+        ControlMessage controlMsg;
+        try {
+            controlMsg = ControlMessage.deserialize(data, offset, length);
+        } catch (Exception e) {
+            System.err.println(name + " Error parsing control message: " + e.getMessage());
+            sendResponse(client, new ResponseMessage("N/A", "ERROR_PARSING", "Failed to parse control message"));
+            return;
+        }
+        if (controlMsg == null) {
+            System.out.println(name + ": Received null control message object after deserialization.");
+            return;
+        }
+        ResponseCache.Lookup cached = null;
+        if (responseCache != null && controlMsg.getMessageId() != null && client instanceof InetSocketAddress) {
+            cached = responseCache.begin(((InetSocketAddress) client).getAddress(), controlMsg.getMessageId());
+            if (cached.duplicate) {
+                ResponseMessage response = cached.future.join(); // Espera si el original sigue en curso
+                System.out.println(name + " duplicate control message " + controlMsg.getMessageId() + ", resending cached response");
+                if (response != null) {
+                    sendResponse(client, response);
+                }
+                return;
+            }
+        }
+        long start = System.nanoTime();
+        ResponseMessage response = null;
+        try {
+            response = handler.handle(controlMsg);
+        } finally {
+            if (cached != null) {
+                cached.future.complete(response); // null también si el comando falló: el reintento no lo repite
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        if (elapsed > maxHandleNanos) {
+            maxHandleNanos = elapsed; // Aproximado: sin sincronizar entre workers
+        }
+        processed.increment();
+        if (response != null) {
+            sendResponse(client, response);
+        }
+    }
+
+    ControlRateLimiter rateLimiter() {
+        return rateLimiter;
+    }
+
+    /** Datagramas leídos del puerto, antes del límite de tasa. */
+    long received() {
+        return received.sum();
+    }
+
+    /** Caché de respuestas, o null si está desactivada. */
+    ResponseCache responseCache() {
+        return responseCache;
+    }
+
+    /** Cierra el puerto tras {@code delayMs}, para dar tiempo a enviar la última respuesta. */
+    void closeLater(long delayMs) {
+        closing = true;
+        new Timer(true).schedule(new TimerTask() {
+            @Override
+            public void run() {
+                Selector sel = selector;
+                if (sel != null) sel.wakeup(); // El bucle ve closing y cierra el canal
+            }
+        }, delayMs);
+    }
+
+    // DatagramChannel.send es thread-safe; cada respuesta usa su propio buffer y fragmentador
+    private void sendResponse(SocketAddress client, ResponseMessage response) {
+        DatagramChannel ch = channel;
+        ByteSink sink = new ByteSink();
+        response.writeTo(sink);
+        try {
+            new Fragmenter().send(sink.array(), 0, sink.size(), (data, offset, length) -> {
+                if (ch.send(ByteBuffer.wrap(data, offset, length), client) == 0) {
+                    throw new IOException("socket send buffer full");
+                }
+            });
+            System.out.println(name + " sent response to " + client + " -> " + sink.toString(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            responseFailures.increment();
+            System.err.println(name + " Error sending response: " + e.getMessage());
+        }
+    }
+
+    String stats() {
+        int active;
+        synchronized (lanes) {
+            active = lanes.size();
+        }
+        return "received=" + received.sum() + ", processed=" + processed.sum() + ", droppedQueueFull="
+                + droppedQueueFull.sum() + ", responseFailures=" + responseFailures.sum() + ", activeClients=" + active
+                + ", maxHandleMs=" + FixedPoint.toString(maxHandleNanos / 1e6, 1)
+                + "; rate limit: " + rateLimiter.stats() + "; response cache: " + (responseCache != null ? responseCache.stats() : "disabled");
+    }
+}
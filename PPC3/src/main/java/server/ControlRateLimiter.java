@@ -0,0 +1,213 @@
+package server;
+
+import common.FixedPoint;
+import common.Fragmenter;
+
+import java.net.InetAddress;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Limita los datagramas que entran por el puerto de control con cubos de tokens:
+ * uno por IP de origen y uno global. Se comprueba en el hilo receptor antes de
+ * copiar, parsear o registrar nada, así que un host que inunda el puerto solo
+ * cuesta la lectura del socket y no llena las colas, el log ni la consola.
+ *
+ * Cada cubo se rellena a {@code rate} tokens por segundo hasta {@code burst}; cada
+ * datagrama (cada fragmento) gasta uno. Un rate 0 desactiva ese límite. Los
+ * límites se cambian en caliente y los cubos existentes se adaptan al siguiente
+ * datagrama.
+ *
+ * Como se cuentan fragmentos, el burst nunca baja de {@link #MIN_BURST}: un comando
+ * legítimo fragmentado al máximo tiene que poder entrar entero, porque si se
+ * descarta un solo fragmento no se reensambla nunca.
+ *
+ * Valores iniciales: -Dserver.controlRate (20/s), -Dserver.controlBurst (256),
+ * -Dserver.controlGlobalRate (200/s), -Dserver.controlGlobalBurst (1024).
+ */
+final class ControlRateLimiter {
+    /** Orígenes con cubo propio como máximo; por encima se olvidan los que están llenos. */
+    static final int MAX_TRACKED_SOURCES = 4096;
+    /** Fragmentos de un mensaje de tamaño máximo. */
+    static final int MIN_BURST = Fragmenter.MAX_FRAGMENTS;
+    private static final long WARN_INTERVAL_NANOS = 10_000_000_000L;
+
+    /** Configuración inmutable; se sustituye entera al cambiarla. */
+    static final class Limits {
+        final double perSourceRate;
+        final double perSourceBurst;
+        final double globalRate;
+        final double globalBurst;
+
+        Limits(double perSourceRate, double perSourceBurst, double globalRate, double globalBurst) {
+            if (!(perSourceRate >= 0) || !(globalRate >= 0) || Double.isInfinite(perSourceRate) || Double.isInfinite(globalRate)) {
+                throw new IllegalArgumentException("Rates must be finite and >= 0");
+            }
+            if ((perSourceRate > 0 && !(perSourceBurst >= MIN_BURST)) || (globalRate > 0 && !(globalBurst >= MIN_BURST))
+                    || Double.isInfinite(perSourceBurst) || Double.isInfinite(globalBurst)) {
+                throw new IllegalArgumentException("Burst must be finite and >= " + MIN_BURST
+                        + " (fragments of a maximum-size message) when the rate is limited");
+            }
+            this.perSourceRate = perSourceRate;
+            this.perSourceBurst = perSourceBurst;
+            this.globalRate = globalRate;
+            this.globalBurst = globalBurst;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder("perSource=");
+            append(sb, perSourceRate, perSourceBurst).append(", global=");
+            return append(sb, globalRate, globalBurst).toString();
+        }
+
+        private static StringBuilder append(StringBuilder sb, double rate, double burst) {
+            if (rate == 0) {
+                return sb.append("unlimited");
+            }
+            FixedPoint.append(sb, rate, 1).append("/s burst ");
+            return FixedPoint.append(sb, burst, 0);
+        }
+    }
+
+    private static final class Bucket {
+        double tokens;
+        long lastNanos;
+
+        Bucket(double tokens, long lastNanos) {
+            this.tokens = tokens;
+            this.lastNanos = lastNanos;
+        }
+
+        // Rellena hasta ahora; indica si queda un token, sin gastarlo
+        boolean refill(double rate, double burst, long now) {
+            tokens = Math.min(burst, tokens + (now - lastNanos) * rate / 1e9);
+            lastNanos = now;
+            return tokens >= 1;
+        }
+    }
+
+    private volatile Limits limits;
+    // Solo los usa el hilo receptor del ControlListener
+    private final Map<InetAddress, Bucket> sources = new HashMap<>();
+    private final Bucket global = new Bucket(0, System.nanoTime());
+    private long lastWarnNanos = System.nanoTime() - WARN_INTERVAL_NANOS;
+    private long droppedSinceWarn;
+
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder droppedPerSource = new LongAdder();
+    private final LongAdder droppedGlobal = new LongAdder();
+    private volatile int trackedSources;
+
+    ControlRateLimiter(Limits limits) {
+        this.limits = limits;
+        this.global.tokens = limits.globalBurst;
+    }
+
+    static ControlRateLimiter fromProperties() {
+        return new ControlRateLimiter(new Limits(doubleProperty("server.controlRate", 20), burstProperty("server.controlBurst", 256),
+                doubleProperty("server.controlGlobalRate", 200), burstProperty("server.controlGlobalBurst", 1024)));
+    }
+
+    private static double burstProperty(String name, double defaultValue) {
+        double value = doubleProperty(name, defaultValue);
+        if (value < MIN_BURST) {
+            System.err.println(name + " " + value + " is below " + MIN_BURST + " fragments, using " + MIN_BURST);
+            return MIN_BURST;
+        }
+        return value;
+    }
+
+    private static double doubleProperty(String name, double defaultValue) {
+        String value = System.getProperty(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid " + name + " '" + value + "', using " + defaultValue);
+            return defaultValue;
+        }
+    }
+
+    Limits getLimits() {
+        return limits;
+    }
+
+    void setLimits(Limits limits) {
+        this.limits = limits;
+    }
+
+    /**
+     * Si se admite un datagrama de {@code source}; solo desde el hilo receptor. Solo
+     * se gastan tokens si lo admiten los dos cubos: un datagrama descartado por el
+     * límite global no consume el cubo de su origen (una inundación desde otras
+     * direcciones no deja sin cubo a los hosts que se portan bien).
+     */
+    boolean tryAcquire(InetAddress source, long now) {
+        Limits l = limits;
+        Bucket bucket = null;
+        if (l.perSourceRate > 0) {
+            bucket = sources.get(source);
+            if (bucket == null) {
+                if (sources.size() >= MAX_TRACKED_SOURCES) {
+                    forgetIdleSources(l, now);
+                }
+                bucket = new Bucket(l.perSourceBurst, now);
+                sources.put(source, bucket);
+                trackedSources = sources.size();
+            }
+            if (!bucket.refill(l.perSourceRate, l.perSourceBurst, now)) {
+                droppedPerSource.increment();
+                warn(now);
+                return false;
+            }
+        }
+        if (l.globalRate > 0) {
+            if (!global.refill(l.globalRate, l.globalBurst, now)) {
+                droppedGlobal.increment();
+                warn(now);
+                return false;
+            }
+            global.tokens -= 1;
+        }
+        if (bucket != null) {
+            bucket.tokens -= 1;
+        }
+        accepted.increment();
+        return true;
+    }
+
+    // Un cubo que ya se habría rellenado del todo equivale a no tenerlo
+    private void forgetIdleSources(Limits l, long now) {
+        Iterator<Bucket> it = sources.values().iterator();
+        while (it.hasNext()) {
+            Bucket b = it.next();
+            if (b.tokens + (now - b.lastNanos) * l.perSourceRate / 1e9 >= l.perSourceBurst) {
+                it.remove();
+            }
+        }
+        if (sources.size() >= MAX_TRACKED_SOURCES) {
+            sources.clear(); // Inundación desde muchas direcciones: se empieza de cero
+        }
+        trackedSources = sources.size();
+    }
+
+    // Como mucho un aviso cada 10 s para no convertir la inundación en otra de mensajes
+    private void warn(long now) {
+        droppedSinceWarn++;
+        if (now - lastWarnNanos >= WARN_INTERVAL_NANOS) {
+            System.err.println("Control port rate limit: dropped " + droppedSinceWarn + " datagrams (" + limits + ")");
+            lastWarnNanos = now;
+            droppedSinceWarn = 0;
+        }
+    }
+
+    String stats() {
+        return limits + ", accepted=" + accepted.sum() + ", droppedPerSource=" + droppedPerSource.sum()
+                + ", droppedGlobal=" + droppedGlobal.sum() + ", trackedSources=" + trackedSources;
+    }
+}
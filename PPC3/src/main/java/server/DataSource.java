@@ -0,0 +1,20 @@
+package server;
+
+/**
+ * Origen de los valores que difunde una estación. La estación resuelve cada
+ * variable una sola vez (al arrancar o al cambiar de fuente o de variables) y en
+ * cada tick solo llama a {@link ValueFeed#sample}.
+ */
+public interface DataSource {
+
+    /** Valores de una variable. Solo lo usa el hilo de broadcast de la estación. */
+    interface ValueFeed {
+        double sample(long nowMillis);
+    }
+
+    /** Feed de la variable, o null si esta fuente no tiene datos para ella. */
+    ValueFeed resolve(String variableName);
+
+    /** Descripción para logs y respuestas de control. */
+    String describe();
+}
@@ -0,0 +1,182 @@
+package server;
+
+import common.BroadcastJournal;
+import common.Fragmenter;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Vuelve a difundir un intervalo de un {@link BroadcastJournal} (del servidor o del
+ * broker) hacia un broker en marcha, respetando los tiempos originales a la
+ * velocidad indicada:
+ * <pre>
+ *   java server.JournalReplay &lt;journalDir&gt; [--from T] [--to T] [--speed X|max]
+ *                             [--server ID] [--target host:port]
+ *   java server.JournalReplay &lt;journalDir&gt; --info
+ * </pre>
+ * T es un instante en milisegundos, ISO-8601 (2026-10-17T08:40:00Z) o fecha y hora
+ * local (2026-10-17T10:40:00). Por defecto se envía todo a 255.255.255.255:5000 a
+ * velocidad real.
+ *
+ * Los paquetes se envían tal cual se grabaron, con su número de secuencia: un broker
+ * que ya recibe en directo la misma estación los descarta por antiguos, así que la
+ * reproducción es útil hacia un broker que no la esté recibiendo.
+ */
+public class JournalReplay {
+    /** Velocidad mínima: por debajo la espera calculada en nanosegundos desborda. */
+    static final double MIN_SPEED = 0.001;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            printUsage();
+            return;
+        }
+        Path dir = Paths.get(args[0]);
+        long from = Long.MIN_VALUE;
+        long to = Long.MAX_VALUE;
+        double speed = 1; // 0: sin esperas ("max")
+        Integer serverHash = null;
+        String target = "255.255.255.255:5000";
+        boolean info = false;
+        BroadcastChannel.Target destination;
+        try {
+            for (int i = 1; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--info": info = true; break;
+                    case "--from": from = parseTime(args[++i]); break;
+                    case "--to": to = parseTime(args[++i]); break;
+                    case "--speed": speed = parseSpeed(args[++i]); break;
+                    case "--server": serverHash = BroadcastJournal.serverIdHash(args[++i]); break;
+                    case "--target": target = args[++i]; break;
+                    default: throw new IllegalArgumentException("Unknown option " + args[i]);
+                }
+            }
+            destination = parseTarget(target);
+        } catch (ArrayIndexOutOfBoundsException e) {
+            System.err.println("Invalid arguments: missing value for " + args[args.length - 1]);
+            printUsage();
+            return;
+        } catch (IllegalArgumentException | DateTimeParseException | IOException e) {
+            System.err.println("Invalid arguments: " + e.getMessage());
+            printUsage();
+            return;
+        }
+        if (info) {
+            printInfo(dir);
+        } else {
+            replay(dir, from, to, speed, serverHash, destination);
+        }
+    }
+
+    private static void printUsage() {
+        System.err.println("Usage: java server.JournalReplay <journalDir> [--from T] [--to T] [--speed X|max] [--server ID] [--target host:port]");
+        System.err.println("       java server.JournalReplay <journalDir> --info");
+    }
+
+    // Factor de velocidad (al menos MIN_SPEED), o "max" (devuelve 0: se envía sin esperar)
+    private static double parseSpeed(String text) {
+        if ("max".equalsIgnoreCase(text)) {
+            return 0;
+        }
+        double speed = Double.parseDouble(text);
+        if (!(speed >= MIN_SPEED) || Double.isInfinite(speed)) {
+            throw new IllegalArgumentException("Speed must be a finite number >= " + MIN_SPEED + " or 'max': " + text);
+        }
+        return speed;
+    }
+
+    private static BroadcastChannel.Target parseTarget(String text) throws IOException {
+        int colon = text.lastIndexOf(':');
+        if (colon <= 0 || colon == text.length() - 1) {
+            throw new IllegalArgumentException("Target must be host:port: " + text);
+        }
+        int port = Integer.parseInt(text.substring(colon + 1));
+        if (port < 1 || port > 65535) {
+            throw new IllegalArgumentException("Port out of range: " + port);
+        }
+        return new BroadcastChannel.Target(text.substring(0, colon), port, 1);
+    }
+
+    private static void replay(Path dir, long from, long to, double speed, Integer serverHash,
+            BroadcastChannel.Target destination) throws IOException {
+        Fragmenter fragmenter = new Fragmenter(Fragmenter.ETHERNET_DATAGRAM);
+        long[] counters = new long[3]; // registros, bytes, fallos
+        long startNanos = System.nanoTime();
+        try (BroadcastChannel channel = new BroadcastChannel()) {
+            Fragmenter.DatagramSender sender = (data, offset, length) -> channel.send(data, offset, length, destination);
+            long[] first = { -1 };
+            byte[][] buffer = { new byte[64 * 1024] };
+            BroadcastJournal.read(dir, from, to, (timestamp, hash, payload) -> {
+                if (serverHash != null && hash != serverHash) {
+                    return true;
+                }
+                if (first[0] < 0) {
+                    first[0] = timestamp;
+                } else if (speed > 0) {
+                    // Se espera hasta el instante original escalado; sin deriva acumulada
+                    long due = startNanos + (long) ((timestamp - first[0]) * 1_000_000L / speed);
+                    long wait;
+                    while ((wait = due - System.nanoTime()) > 0) {
+                        LockSupport.parkNanos(wait);
+                    }
+                }
+                int length = payload.remaining();
+                if (buffer[0].length < length) {
+                    buffer[0] = new byte[length];
+                }
+                payload.get(buffer[0], 0, length);
+                try {
+                    fragmenter.send(buffer[0], 0, length, sender);
+                    counters[0]++;
+                    counters[1] += length;
+                } catch (IOException e) {
+                    counters[2]++;
+                }
+                return true;
+            });
+            System.out.println("Replayed " + counters[0] + " records (" + counters[1] + " bytes) to " + destination + " in "
+                    + (System.nanoTime() - startNanos) / 1_000_000 + " ms, " + counters[2] + " failed; " + channel.stats());
+        }
+    }
+
+    private static void printInfo(Path dir) throws IOException {
+        List<Path> segments = BroadcastJournal.segments(dir);
+        if (segments.isEmpty()) {
+            System.out.println("No journal segments in " + dir);
+            return;
+        }
+        for (Path seg : segments) {
+            long[] info = { 0, 0, 0, 0 }; // registros, bytes, primero, último
+            BroadcastJournal.readSegment(seg, Long.MIN_VALUE, Long.MAX_VALUE, (timestamp, hash, payload) -> {
+                if (info[0] == 0) {
+                    info[2] = timestamp;
+                }
+                info[0]++;
+                info[1] += payload.remaining();
+                info[3] = timestamp;
+                return true;
+            });
+            System.out.println(seg.getFileName() + ": " + info[0] + " records, " + info[1] + " bytes"
+                    + (info[0] > 0 ? ", " + Instant.ofEpochMilli(info[2]) + " .. " + Instant.ofEpochMilli(info[3]) : ""));
+        }
+    }
+
+    private static long parseTime(String text) {
+        if (text.chars().allMatch(Character::isDigit)) {
+            return Long.parseLong(text);
+        }
+        try {
+            return Instant.parse(text).toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return LocalDateTime.parse(text).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package server;
+
+import common.FixedPoint;
+
+/**
+ * Política de publicación de una variable: el valor se cuantiza a múltiplos de
+ * {@code quantum} y solo se publica si se aleja más de {@code deadband} del último
+ * publicado, o si han pasado {@code heartbeatSeconds} desde entonces (para que un
+ * broker que arranca tarde acabe teniendo todas las variables).
+ *
+ * Con deadband 0 se publica en cuanto el valor cuantizado cambia; quantum 0 no
+ * cuantiza y heartbeatSeconds 0 desactiva el latido.
+ */
+final class PublishPolicy {
+    static final int DEFAULT_HEARTBEAT_SECONDS = 30;
+
+    final double deadband;
+    final int heartbeatSeconds;
+    final double quantum;
+    final long heartbeatNanos;
+
+    PublishPolicy(double deadband, int heartbeatSeconds, double quantum) {
+        if (!(deadband >= 0) || !(quantum >= 0) || Double.isInfinite(deadband) || Double.isInfinite(quantum)) {
+            throw new IllegalArgumentException("Deadband and quantum must be finite and >= 0");
+        }
+        if (heartbeatSeconds < 0) {
+            throw new IllegalArgumentException("Heartbeat must be >= 0 seconds: " + heartbeatSeconds);
+        }
+        this.deadband = deadband;
+        this.heartbeatSeconds = heartbeatSeconds;
+        this.quantum = quantum;
+        this.heartbeatNanos = heartbeatSeconds > 0 ? heartbeatSeconds * 1_000_000_000L : Long.MAX_VALUE;
+    }
+
+    double quantize(double value) {
+        return quantum > 0 ? Math.rint(value / quantum) * quantum : value;
+    }
+
+    /** Si hay que publicar {@code value} (ya cuantizado) dado lo último publicado. */
+    boolean shouldPublish(double value, double lastPublished, long nanosSinceLastPublished) {
+        return Math.abs(value - lastPublished) > deadband || nanosSinceLastPublished >= heartbeatNanos
+                || Double.isNaN(value) != Double.isNaN(lastPublished);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("deadband ");
+        FixedPoint.append(sb, deadband, 3).append(", heartbeat ").append(heartbeatSeconds).append("s, quantum ");
+        return FixedPoint.append(sb, quantum, 3).toString();
+    }
+}
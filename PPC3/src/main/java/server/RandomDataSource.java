@@ -0,0 +1,34 @@
+package server;
+
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Valores aleatorios con un rango según el nombre de la variable (temperatura,
+ * humedad, presión u otro). El nombre se mira una vez al resolver, no en cada tick.
+ */
+public class RandomDataSource implements DataSource {
+    private final Random random;
+
+    public RandomDataSource(Random random) {
+        this.random = random;
+    }
+
+    @Override
+    public ValueFeed resolve(String variableName) {
+        String name = variableName.toLowerCase(Locale.ROOT);
+        if (name.contains("temperature")) return range(10, 20);
+        if (name.contains("humidity")) return range(30, 60);
+        if (name.contains("pressure")) return range(980, 50);
+        return range(0, 100);
+    }
+
+    private ValueFeed range(double min, double width) {
+        return now -> min + random.nextDouble() * width;
+    }
+
+    @Override
+    public String describe() {
+        return "RANDOM";
+    }
+}
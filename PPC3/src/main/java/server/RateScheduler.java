@@ -0,0 +1,138 @@
+package server;
+
+import common.FixedPoint;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hilo dedicado que ejecuta una tarea a ritmo fijo con resolución de nanosegundos.
+ * El periodo se cambia en caliente con {@link #setPeriodNanos}: el siguiente
+ * vencimiento se calcula desde el último disparo, sin parar el hilo ni perder el
+ * tick en curso. Los vencimientos son absolutos (último + periodo), así que el
+ * ritmo no deriva aunque cada ejecución tarde algo.
+ *
+ * Si la tarea tarda más que el periodo se cuenta un {@code overrun}; si el hilo
+ * despierta con uno o más periodos de retraso, esos ticks no se recuperan en
+ * ráfaga: se saltan y se cuentan como {@code missed}.
+ *
+ * Con {@code spinWait} el hilo duerme hasta {@link #SPIN_MARGIN_NANOS} antes del
+ * vencimiento y el resto lo espera activamente, para periodos por debajo del
+ * milisegundo (a costa de ocupar un núcleo en esos márgenes).
+ */
+final class RateScheduler {
+    /** Parte final de la espera que se hace en activo con spinWait (parkNanos no es más preciso). */
+    static final long SPIN_MARGIN_NANOS = 100_000;
+    static final long MIN_PERIOD_NANOS = 10_000;
+
+    private final Runnable action;
+    private final Thread thread;
+    private volatile long periodNanos;
+    private volatile boolean spinWait;
+    private volatile boolean running = true;
+
+    private final LongAdder ticks = new LongAdder();
+    private final LongAdder overruns = new LongAdder();
+    private final LongAdder missed = new LongAdder();
+    private volatile long maxLatenessNanos; // Solo lo escribe el hilo del planificador
+    private volatile long maxRunNanos;
+
+    RateScheduler(String name, Runnable action, long periodNanos) {
+        this.action = action;
+        this.periodNanos = checkPeriod(periodNanos);
+        this.thread = new Thread(this::loop, name);
+    }
+
+    private static long checkPeriod(long periodNanos) {
+        if (periodNanos < MIN_PERIOD_NANOS) {
+            throw new IllegalArgumentException("Period must be at least " + MIN_PERIOD_NANOS / 1000 + "us: " + periodNanos + "ns");
+        }
+        return periodNanos;
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    /** Para el hilo; la ejecución en curso, si la hay, termina normalmente. */
+    void stop() {
+        running = false;
+        LockSupport.unpark(thread);
+    }
+
+    /** Cambia el periodo; se aplica al siguiente vencimiento. */
+    void setPeriodNanos(long periodNanos) {
+        this.periodNanos = checkPeriod(periodNanos);
+        LockSupport.unpark(thread); // Recalcula la espera en curso con el nuevo periodo
+    }
+
+    long getPeriodNanos() {
+        return periodNanos;
+    }
+
+    void setSpinWait(boolean spinWait) {
+        this.spinWait = spinWait;
+        LockSupport.unpark(thread);
+    }
+
+    boolean isSpinWait() {
+        return spinWait;
+    }
+
+    private void loop() {
+        long lastDeadline = System.nanoTime() - periodNanos; // El primer tick es inmediato
+        while (running) {
+            long period = periodNanos;
+            long deadline = lastDeadline + period;
+            long now = System.nanoTime();
+            long wait = deadline - now;
+            if (wait > 0) {
+                if (!spinWait) {
+                    LockSupport.parkNanos(wait);
+                    continue; // Puede despertar antes (unpark o espurio): se recalcula
+                }
+                if (wait > SPIN_MARGIN_NANOS) {
+                    LockSupport.parkNanos(wait - SPIN_MARGIN_NANOS);
+                    continue;
+                }
+                while (System.nanoTime() - deadline < 0 && running && periodNanos == period) {
+                    Thread.onSpinWait();
+                }
+                continue;
+            }
+            long lateness = -wait;
+            if (lateness >= period) {
+                long skipped = lateness / period;
+                missed.add(skipped);
+                deadline += skipped * period;
+                lateness -= skipped * period;
+            }
+            if (lateness > maxLatenessNanos) {
+                maxLatenessNanos = lateness;
+            }
+            lastDeadline = deadline;
+
+            long start = System.nanoTime();
+            try {
+                action.run();
+            } catch (RuntimeException e) {
+                System.err.println(thread.getName() + " task failed: " + e.getMessage());
+            }
+            long elapsed = System.nanoTime() - start;
+            ticks.increment();
+            if (elapsed > period) {
+                overruns.increment();
+            }
+            if (elapsed > maxRunNanos) {
+                maxRunNanos = elapsed;
+            }
+        }
+    }
+
+    String stats() {
+        return "period=" + FixedPoint.toString(periodNanos / 1e3, 1) + "us" + (spinWait ? " (spin-wait)" : "")
+                + ", ticks=" + ticks.sum() + ", overruns=" + overruns.sum() + ", missed=" + missed.sum()
+                + ", maxLateness=" + FixedPoint.toString(maxLatenessNanos / 1e3, 1) + "us"
+                + ", maxRun=" + FixedPoint.toString(maxRunNanos / 1e3, 1) + "us";
+    }
+}
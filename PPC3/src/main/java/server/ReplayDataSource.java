@@ -0,0 +1,362 @@
+package server;
+
+import common.FixedPoint;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Reproduce datos grabados desde un fichero proyectado en memoria (mmap), a
+ * velocidad real o acelerada (1x a 1000x) y, opcionalmente, en bucle.
+ *
+ * Formatos:
+ * <ul>
+ *   <li>CSV: cabecera {@code timestamp,var1,var2,...} y una fila por muestra con el
+ *       timestamp en milisegundos (creciente) y los valores. Al abrir solo se indexa
+ *       el inicio de cada fila; los valores se leen del fichero al reproducirlos.</li>
+ *   <li>Binario ({@code .bin}): "PPCR", int versión (1), int columnas, y por columna
+ *       el nombre (short longitud + UTF-8); después filas de long timestamp + un
+ *       double por columna, big-endian. Se genera desde un CSV con {@link #main}.</li>
+ * </ul>
+ * Cada variable de la estación se asocia por nombre (sin distinguir mayúsculas) a
+ * una columna; si no la hay, la estación usa su fuente aleatoria para esa variable.
+ * Los huecos o valores no numéricos repiten el último valor válido.
+ */
+public class ReplayDataSource implements DataSource {
+    public static final int MAX_SPEED = 1000;
+    private static final byte[] MAGIC = { 'P', 'P', 'C', 'R' };
+    private static final int BINARY_VERSION = 1;
+
+    private final String file;
+    private final Rows rows;
+    private final double speed;
+    private final boolean loop;
+    private final long startWallMillis;
+    private final long firstTimestamp;
+    private final long duration;
+
+    /** Filas del fichero: timestamp y valor por columna. */
+    private interface Rows {
+        String[] columns();
+        int count();
+        long timestamp(int row);
+        double value(int row, int column); // NaN si no hay valor
+    }
+
+    private ReplayDataSource(String file, Rows rows, double speed, boolean loop) {
+        this.file = file;
+        this.rows = rows;
+        this.speed = speed;
+        this.loop = loop;
+        this.startWallMillis = System.currentTimeMillis();
+        this.firstTimestamp = rows.timestamp(0);
+        this.duration = rows.timestamp(rows.count() - 1) - firstTimestamp;
+    }
+
+    /**
+     * Abre el fichero (CSV, o binario si acaba en ".bin").
+     *
+     * @throws IllegalArgumentException si la velocidad no está entre 1 y {@link #MAX_SPEED}
+     * @throws IOException si el fichero no se puede leer o no tiene filas
+     */
+    public static ReplayDataSource open(String file, double speed, boolean loop) throws IOException {
+        if (!(speed >= 1 && speed <= MAX_SPEED)) {
+            throw new IllegalArgumentException("Replay speed must be between 1 and " + MAX_SPEED + ": " + speed);
+        }
+        MappedByteBuffer buf = map(Paths.get(file));
+        Rows rows = file.toLowerCase().endsWith(".bin") ? new BinaryRows(buf) : new CsvRows(buf);
+        if (rows.count() == 0) {
+            throw new IOException("No data rows in " + file);
+        }
+        return new ReplayDataSource(file, rows, speed, loop);
+    }
+
+    private static MappedByteBuffer map(Path path) throws IOException {
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (ch.size() > Integer.MAX_VALUE) {
+                throw new IOException("Replay files larger than 2 GB are not supported: " + path);
+            }
+            return ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size()); // Sigue válido tras cerrar el canal
+        }
+    }
+
+    @Override
+    public ValueFeed resolve(String variableName) {
+        String[] columns = rows.columns();
+        for (int c = 0; c < columns.length; c++) {
+            if (columns[c].equalsIgnoreCase(variableName)) {
+                return new ReplayFeed(c);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String describe() {
+        return "REPLAY " + file + " (" + rows.count() + " rows, " + (long) speed + "x" + (loop ? ", loop" : "") + ")";
+    }
+
+    /** Instante del fichero que toca reproducir ahora. */
+    private long replayTime(long nowMillis) {
+        long elapsed = (long) (Math.max(0, nowMillis - startWallMillis) * speed);
+        if (loop) {
+            return firstTimestamp + elapsed % (duration + 1);
+        }
+        return firstTimestamp + Math.min(elapsed, duration);
+    }
+
+    private final class ReplayFeed implements ValueFeed {
+        private final int column;
+        private int cursor;
+        private double last;
+
+        ReplayFeed(int column) {
+            this.column = column;
+        }
+
+        @Override
+        public double sample(long nowMillis) {
+            cursor = seek(cursor, replayTime(nowMillis));
+            double value = rows.value(cursor, column);
+            if (!Double.isNaN(value)) {
+                last = value;
+            }
+            return last;
+        }
+    }
+
+    /** Última fila con timestamp <= t; normalmente es la misma o la siguiente a la anterior. */
+    private int seek(int cursor, long t) {
+        int count = rows.count();
+        if (rows.timestamp(cursor) <= t) {
+            if (cursor + 1 == count || rows.timestamp(cursor + 1) > t) {
+                return cursor;
+            }
+            if (cursor + 2 == count || rows.timestamp(cursor + 2) > t) {
+                return cursor + 1;
+            }
+        }
+        int lo = 0;
+        int hi = count - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (rows.timestamp(mid) <= t) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return lo;
+    }
+
+    /** CSV indexado por filas; los valores se parsean directamente del buffer. */
+    private static final class CsvRows implements Rows {
+        private final ByteBuffer buf;
+        private final AsciiView view;
+        private final String[] columns;
+        private int[] rowStart = new int[1024];
+        private long[] timestamps = new long[1024];
+        private int count;
+
+        CsvRows(ByteBuffer buf) throws IOException {
+            this.buf = buf;
+            this.view = new AsciiView(buf);
+            int limit = buf.limit();
+            int headerEnd = lineEnd(0);
+            String header = new String(bytes(0, headerEnd), StandardCharsets.UTF_8).trim();
+            String[] names = header.split(",");
+            if (names.length < 2) {
+                throw new IOException("CSV header must be 'timestamp,var1,...'");
+            }
+            columns = new String[names.length - 1];
+            for (int i = 1; i < names.length; i++) {
+                columns[i - 1] = names[i].trim();
+            }
+            int pos = nextLine(headerEnd);
+            long previous = Long.MIN_VALUE;
+            while (pos < limit) {
+                int end = lineEnd(pos);
+                if (end > pos) {
+                    int comma = pos;
+                    while (comma < end && buf.get(comma) != ',') {
+                        comma++;
+                    }
+                    long ts;
+                    try {
+                        ts = (long) FixedPoint.parse(view, pos, comma);
+                    } catch (NumberFormatException e) {
+                        throw new IOException("Invalid timestamp at byte " + pos);
+                    }
+                    if (ts < previous) {
+                        throw new IOException("Timestamps must not decrease (byte " + pos + ")");
+                    }
+                    previous = ts;
+                    add(pos, ts);
+                }
+                pos = nextLine(end);
+            }
+        }
+
+        private void add(int start, long ts) {
+            if (count == rowStart.length) {
+                rowStart = Arrays.copyOf(rowStart, count * 2);
+                timestamps = Arrays.copyOf(timestamps, count * 2);
+            }
+            rowStart[count] = start;
+            timestamps[count] = ts;
+            count++;
+        }
+
+        private int lineEnd(int pos) {
+            int limit = buf.limit();
+            while (pos < limit && buf.get(pos) != '\n' && buf.get(pos) != '\r') {
+                pos++;
+            }
+            return pos;
+        }
+
+        private int nextLine(int end) {
+            int limit = buf.limit();
+            while (end < limit && (buf.get(end) == '\n' || buf.get(end) == '\r')) {
+                end++;
+            }
+            return end;
+        }
+
+        private byte[] bytes(int from, int to) {
+            byte[] out = new byte[to - from];
+            buf.get(from, out);
+            return out;
+        }
+
+        @Override public String[] columns() { return columns; }
+        @Override public int count() { return count; }
+        @Override public long timestamp(int row) { return timestamps[row]; }
+
+        @Override
+        public double value(int row, int column) {
+            int end = lineEnd(rowStart[row]);
+            int pos = rowStart[row];
+            for (int skip = 0; skip <= column; skip++) { // La primera columna es el timestamp
+                while (pos < end && buf.get(pos) != ',') {
+                    pos++;
+                }
+                if (pos == end) {
+                    return Double.NaN; // Fila con menos columnas
+                }
+                pos++;
+            }
+            int fieldEnd = pos;
+            while (fieldEnd < end && buf.get(fieldEnd) != ',') {
+                fieldEnd++;
+            }
+            try {
+                return FixedPoint.parse(view, pos, fieldEnd);
+            } catch (NumberFormatException e) {
+                return Double.NaN;
+            }
+        }
+    }
+
+    /** Filas de tamaño fijo: acceso directo por índice. */
+    private static final class BinaryRows implements Rows {
+        private final ByteBuffer buf;
+        private final String[] columns;
+        private final int dataStart;
+        private final int rowSize;
+        private final int count;
+
+        BinaryRows(ByteBuffer buf) throws IOException {
+            this.buf = buf;
+            try {
+                for (int i = 0; i < MAGIC.length; i++) {
+                    if (buf.get(i) != MAGIC[i]) {
+                        throw new IOException("Not a replay file (bad magic)");
+                    }
+                }
+                int pos = MAGIC.length;
+                int version = buf.getInt(pos);
+                if (version != BINARY_VERSION) {
+                    throw new IOException("Unsupported replay file version " + version);
+                }
+                int n = buf.getInt(pos + 4);
+                pos += 8;
+                columns = new String[n];
+                for (int c = 0; c < n; c++) {
+                    int len = buf.getShort(pos) & 0xFFFF;
+                    byte[] name = new byte[len];
+                    buf.get(pos + 2, name);
+                    columns[c] = new String(name, StandardCharsets.UTF_8);
+                    pos += 2 + len;
+                }
+                dataStart = pos;
+                rowSize = 8 + 8 * n;
+                count = (buf.limit() - dataStart) / rowSize;
+            } catch (IndexOutOfBoundsException e) {
+                throw new IOException("Truncated replay file header");
+            }
+        }
+
+        @Override public String[] columns() { return columns; }
+        @Override public int count() { return count; }
+        @Override public long timestamp(int row) { return buf.getLong(dataStart + row * rowSize); }
+        @Override public double value(int row, int column) { return buf.getDouble(dataStart + row * rowSize + 8 + 8 * column); }
+    }
+
+    /** CharSequence sobre bytes ASCII del buffer, para parsear sin copiar. */
+    private static final class AsciiView implements CharSequence {
+        private final ByteBuffer buf;
+
+        AsciiView(ByteBuffer buf) {
+            this.buf = buf;
+        }
+
+        @Override public int length() { return buf.limit(); }
+        @Override public char charAt(int index) { return (char) (buf.get(index) & 0xFF); }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            byte[] out = new byte[end - start];
+            buf.get(start, out);
+            return new String(out, StandardCharsets.ISO_8859_1);
+        }
+    }
+
+    /** Convierte un CSV al formato binario: {@code java server.ReplayDataSource <in.csv> <out.bin>}. */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: java server.ReplayDataSource <input.csv> <output.bin>");
+            return;
+        }
+        CsvRows csv = new CsvRows(map(Paths.get(args[0])));
+        try (OutputStream file = Files.newOutputStream(Paths.get(args[1]));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file))) {
+            out.write(MAGIC);
+            out.writeInt(BINARY_VERSION);
+            out.writeInt(csv.columns().length);
+            for (String column : csv.columns()) {
+                byte[] name = column.getBytes(StandardCharsets.UTF_8);
+                out.writeShort(name.length);
+                out.write(name);
+            }
+            for (int row = 0; row < csv.count(); row++) {
+                out.writeLong(csv.timestamp(row));
+                for (int c = 0; c < csv.columns().length; c++) {
+                    out.writeDouble(csv.value(row, c));
+                }
+            }
+        }
+        System.out.println("Wrote " + csv.count() + " rows to " + args[1]);
+    }
+}
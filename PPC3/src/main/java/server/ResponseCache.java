@@ -0,0 +1,133 @@
+package server;
+
+import common.ResponseMessage;
+
+import java.net.InetAddress;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Respuestas recientes del puerto de control, por messageId y host de origen. Si
+ * se pierde la respuesta (o tarda) el broker reenvía el mismo ControlMessage, y el
+ * duplicado recibe la respuesta guardada sin volver a ejecutar el comando (un
+ * SET_FREQUENCY repetido, por ejemplo, reconstruiría el planificador otra vez).
+ *
+ * La clave usa solo la IP de origen, no el puerto: el broker abre un socket nuevo
+ * (puerto efímero distinto) en cada envío. Un duplicado que llega mientras el
+ * original aún se ejecuta espera a su resultado.
+ *
+ * Acotada a {@code capacity} entradas (se descartan las más antiguas) y con
+ * caducidad de {@code ttlMillis}.
+ */
+final class ResponseCache {
+    static final int DEFAULT_CAPACITY = 1024;
+    static final long DEFAULT_TTL_MILLIS = 60_000;
+
+    /** Resultado de {@link #begin}: o bien hay que ejecutar, o bien ya hay respuesta (quizá en curso). */
+    static final class Lookup {
+        final CompletableFuture<ResponseMessage> future;
+        final boolean duplicate;
+
+        Lookup(CompletableFuture<ResponseMessage> future, boolean duplicate) {
+            this.future = future;
+            this.duplicate = duplicate;
+        }
+    }
+
+    private static final class Entry {
+        final CompletableFuture<ResponseMessage> future = new CompletableFuture<>();
+        final long createdMillis;
+
+        Entry(long createdMillis) {
+            this.createdMillis = createdMillis;
+        }
+    }
+
+    private final int capacity;
+    private final long ttlMillis;
+    // En orden de inserción: las caducadas están al principio
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(); // Protegido por sí mismo
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder waited = new LongAdder();
+    private final LongAdder evicted = new LongAdder();
+    private final LongAdder expired = new LongAdder();
+
+    ResponseCache(int capacity, long ttlMillis) {
+        if (capacity < 1 || ttlMillis < 1) {
+            throw new IllegalArgumentException("Response cache capacity and TTL must be >= 1");
+        }
+        this.capacity = capacity;
+        this.ttlMillis = ttlMillis;
+    }
+
+    /** Con -Dserver.responseCacheSize (0 la desactiva: devuelve null) y -Dserver.responseCacheSeconds. */
+    static ResponseCache fromProperties() {
+        int size = Integer.getInteger("server.responseCacheSize", DEFAULT_CAPACITY);
+        long ttl = Long.getLong("server.responseCacheSeconds", DEFAULT_TTL_MILLIS / 1000) * 1000;
+        return size > 0 && ttl > 0 ? new ResponseCache(size, ttl) : null;
+    }
+
+    /**
+     * Registra el mensaje {@code messageId} de {@code source}. Si es nuevo devuelve un
+     * Lookup no duplicado cuyo future completa quien ejecuta el comando; si no, el
+     * future de la primera ejecución.
+     */
+    Lookup begin(InetAddress source, String messageId) {
+        String key = source.getHostAddress() + '|' + messageId;
+        long now = System.currentTimeMillis();
+        synchronized (entries) {
+            purgeExpired(now);
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                hits.increment();
+                if (!entry.future.isDone()) {
+                    waited.increment();
+                }
+                return new Lookup(entry.future, true);
+            }
+            misses.increment();
+            entry = new Entry(now);
+            entries.put(key, entry);
+            if (entries.size() > capacity) {
+                Iterator<Entry> it = entries.values().iterator();
+                it.next();
+                it.remove();
+                evicted.increment();
+            }
+            return new Lookup(entry.future, false);
+        }
+    }
+
+    private void purgeExpired(long now) {
+        Iterator<Entry> it = entries.values().iterator();
+        while (it.hasNext()) {
+            Entry e = it.next();
+            if (now - e.createdMillis < ttlMillis) {
+                break;
+            }
+            if (!e.future.isDone()) {
+                continue; // Sigue ejecutándose: se quita cuando caduque ya terminada
+            }
+            it.remove();
+            expired.increment();
+        }
+    }
+
+    /** Duplicados atendidos desde la caché (terminados o aún en curso). */
+    long hits() {
+        return hits.sum();
+    }
+
+    String stats() {
+        int size;
+        synchronized (entries) {
+            size = entries.size();
+        }
+        return "size=" + size + "/" + capacity + ", ttl=" + ttlMillis / 1000 + "s, hits=" + hits.sum() + ", misses="
+                + misses.sum() + ", waited=" + waited.sum() + ", evicted=" + evicted.sum() + ", expired=" + expired.sum();
+    }
+}
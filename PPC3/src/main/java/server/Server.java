@@ -4,9 +4,7 @@ import common.*;
 import java.io.IOException;
 import java.net.*;
 import java.util.*;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class Server {
     private final String serverId;
@@ -21,7 +19,98 @@ public class Server {
 
     private final List<WeatherVariable> managedVariables = new ArrayList<>();
     private final Random random = new Random();
-    private ScheduledExecutorService broadcastScheduler;
+    // Origen de los valores; cada variable se resuelve a su feed una vez, al cambiar de fuente
+    private volatile DataSource dataSource = new RandomDataSource(random);
+    private DataSource dataSourceOfFeeds; // Estado del hilo de broadcast
+    private DataSource.ValueFeed[] feeds;
+    private RateScheduler rateScheduler; // Solo sin StationHost; con él, la TimerWheel del host
+    private BroadcastChannel broadcastChannel; // Abierto en start() (o el del StationHost) y reutilizado en cada envío
+    private volatile BroadcastChannel.Target broadcastTarget;
+    private StationHost host; // null si la estación va en su propio proceso
+    private ControlListener controlListener; // Solo sin StationHost
+    // Los comandos llegan desde varios workers del ControlListener: se ejecutan de uno en uno por estación
+    private final Object commandLock = new Object();
+    private StationSchema schemaToAnnounce; // Protegido por commandLock; se difunde al soltarlo
+    // Solo leen campos volátiles y contadores: no esperan a que termine un comando lento
+    private static final Set<String> READ_ONLY_COMMANDS = Set.of("GET_BROADCAST_STATS", "GET_PUBLISH_POLICY",
+            "GET_SCHEDULER_STATS", "GET_LOG_STATS", "GET_CONTROL_STATS");
+    private final ByteSink broadcastSink = new ByteSink(); // Solo lo usa el hilo de broadcast
+
+    // Periodo de muestreo propio por variable, en ns (por nombre en minúsculas; sin entrada sigue
+    // la frecuencia de difusión). El planificador va al periodo más corto, tickPeriodNanos; en cada
+    // tick se muestrean las variables que vencen, el resto repite su último valor, y si no vence
+    // nada no se envía trama
+    private final Map<String, Long> variablePeriods = new ConcurrentHashMap<>();
+    private volatile int periodsVersion = 0;
+    private volatile long tickPeriodNanos = broadcastFrequencyMs * 1_000_000L;
+    private long[] periodsOfVariables; // Estado del hilo de broadcast
+    private int periodsOfVariablesVersion = -1;
+    private long[] nextSampleNanos;
+    private double[] heldValues;
+    private long nextBroadcastNanos;
+
+    // Política de publicación por variable (banda muerta, latido y cuantización; por nombre
+    // en minúsculas). Las variables sin política se publican en cada tick. Si en un tick solo
+    // se publican algunas, se envía una trama PARTIAL con ellas (sin modo delta) y si no se
+    // publica ninguna no se envía nada
+    private final Map<String, PublishPolicy> publishPolicies = new ConcurrentHashMap<>();
+    private volatile int policiesVersion = 0;
+    private PublishPolicy[] policiesOfVariables; // Estado del hilo de broadcast
+    private int policiesOfVariablesVersion = -1;
+    private boolean[] publishMask;
+    private boolean[] publishedOnce;
+    private double[] lastPublished;
+    private long[] lastPublishedNanos;
+    // Contadores; solo los escribe el hilo de broadcast
+    private volatile long variablesPublished;
+    private volatile long variablesSuppressed;
+    private volatile long partialFrames;
+    private volatile long silentTicks;
+
+    // Modo delta (0 = desactivado): una trama KEY cada N ticks y tramas DELTA entre medias
+    private volatile int keyframeInterval = 0;
+    private volatile boolean keyframeRequested = false;
+    private long currentKeyframeId = 0; // Estado del hilo de broadcast
+    private int ticksSinceKeyframe = 0;
+    private double[] keyframeValues;
+
+    // Secuencia de cada DistributionMessage difundido, para que el broker detecte pérdidas y desorden
+    private long nextSequence = 1; // Estado del hilo de broadcast
+
+    // Compresión Deflate con diccionario (prefijo "TYPE+Z:"); compresor y buffer solo del hilo de broadcast
+    private volatile boolean compressionEnabled = false;
+    private final PayloadCompressor compressor = new PayloadCompressor();
+    private final ByteSink compressedSink = new ByteSink();
+
+    // Diario binario de lo difundido (-Dserver.journal=<dir>); en un StationHost es el del host
+    private BroadcastJournal journal;
+
+    // Agrupación de muestras (0 = desactivada): varias tramas por datagrama hasta batchMaxBytes
+    // o hasta que la más antigua lleve batchMaxLatencyMs esperando (se comprueba en cada tick;
+    // con 0 solo se envía al llenarse)
+    static final int DEFAULT_BATCH_LATENCY_MS = 200;
+    private volatile int batchMaxBytes = 0;
+    private volatile int batchMaxLatencyMs = DEFAULT_BATCH_LATENCY_MS;
+    private final FrameBatch batch = new FrameBatch(); // Solo lo usa el hilo de broadcast
+
+    // Modo esquema: los datos viajan como pares (id, valor) según el StationSchema anunciado
+    private volatile boolean schemaMode = false;
+    private volatile StationSchema currentSchema;
+
+    // Plantilla del paquete FULL (JSON/XML) para la configuración actual: cada tick solo
+    // se escriben los valores. configVersion cambia con SET_ENCODING, SET_UNIT y SET_SCHEMA_MODE
+    private volatile int configVersion = 0;
+    private PacketTemplate packetTemplate; // Estado del hilo de broadcast
+    private int packetTemplateConfig = -1;
+
+    // Mensajes que no caben en un datagrama viajan en fragmentos "FRAG:"
+    // La difusión se trocea al tamaño de la MTU; el broker la recibe en un buffer de 8 KB
+    private final Fragmenter broadcastFragmenter = new Fragmenter(Fragmenter.ETHERNET_DATAGRAM); // Solo lo usa el hilo de broadcast
+    private final Fragmenter.DatagramSender datagramSender = this::sendDatagram;
+    // Buffers del hilo de broadcast. El conjunto de variables no cambia tras el constructor
+    // (SET_UNIT modifica las mismas WeatherVariable), así que se reservan una sola vez
+    private final double[] tickValues;
+    private final StringBuilder logLine = new StringBuilder(256);
     private final String logFileSent;
     private final String logFileReceived;
 
@@ -29,6 +118,8 @@ public class Server {
         this.serverId = serverId;
         this.controlPort = controlPort; // Asignar el puerto de control
         this.managedVariables.addAll(initialVariables);
+        this.tickValues = new double[managedVariables.size()];
+        this.currentSchema = StationSchema.fromVariables(1, managedVariables);
         this.logFileSent = "server_" + serverId + "_sent_broadcast.log";
         this.logFileReceived = "server_" + serverId + "_received_control.log";
     }
@@ -76,91 +167,568 @@ public class Server {
         System.out.println("Server " + serverId + " starting...");
         System.out.println("Managing variables: " + managedVariables);
 
-        new Thread(this::listenForControlMessages).start(); // Usa this.controlPort
+        try {
+            broadcastChannel = new BroadcastChannel();
+            broadcastTarget = initialTarget();
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println(serverId + " Could not open broadcast channel: " + e.getMessage());
+            return;
+        }
+        DataSource replay = replayFromProperties();
+        if (replay != null) {
+            setDataSource(replay);
+        }
+        journal = BroadcastJournal.fromProperty("server.journal");
+        controlListener = new ControlListener(serverId, controlPort, logFileReceived, this::handleOwnControlMessage);
+        new Thread(controlListener).start(); // Usa this.controlPort
 
-        broadcastScheduler = Executors.newSingleThreadScheduledExecutor();
+        announceSchema(currentSchema);
         scheduleBroadcast();
 
         System.out.println("Server " + serverId + " started. Broadcasting on port " + BROADCAST_PORT +
                            ", Listening for control on port " + this.controlPort); // Usar el puerto de instancia
     }
 
-    private void scheduleBroadcast() { // Sin cambios
-        if (broadcastScheduler.isShutdown() || broadcastScheduler.isTerminated()) {
-             broadcastScheduler = Executors.newSingleThreadScheduledExecutor();
+    /**
+     * Arranca la estación dentro de un StationHost: comparte su canal de envío,
+     * su rueda de temporización y su puerto de control.
+     */
+    void startHosted(StationHost host, BroadcastChannel channel) throws IOException {
+        this.host = host;
+        this.broadcastChannel = channel;
+        this.journal = host.getJournal();
+        this.broadcastTarget = initialTarget();
+        announceSchema(currentSchema);
+        scheduleBroadcast();
+    }
+
+    /** Configuración inicial de una estación creada por el StationHost. */
+    void configure(String encoding, int frequencyMs) {
+        if (MessageUtils.isSupportedEncoding(encoding)) {
+            this.currentEncoding = encoding.toUpperCase();
+        }
+        if (frequencyMs > 0) {
+            this.broadcastFrequencyMs = frequencyMs;
+            updateTickPeriod();
+        }
+    }
+
+    /** Cambia el origen de los valores; se aplica en el siguiente tick. */
+    void setDataSource(DataSource source) {
+        this.dataSource = source;
+        System.out.println(serverId + " data source: " + source.describe());
+    }
+
+    /**
+     * Fuente de reproducción configurada al arrancar, p. ej.
+     * -Dserver.dataSource=datos.csv -Dserver.replaySpeed=100 -Dserver.replayLoop=true;
+     * null si no hay o no se puede abrir.
+     */
+    static DataSource replayFromProperties() {
+        String file = System.getProperty("server.dataSource");
+        if (file == null || file.isBlank()) {
+            return null;
+        }
+        try {
+            return ReplayDataSource.open(file.trim(), Integer.getInteger("server.replaySpeed", 1),
+                    Boolean.parseBoolean(System.getProperty("server.replayLoop", "true")));
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Could not open replay data source " + file + ": " + e.getMessage() + ". Using random values.");
+            return null;
+        }
+    }
+
+    /** Usa {@code channel} sin arrancar el planificador ni el puerto de control; para pruebas que llaman a tick(). */
+    void attachChannel(BroadcastChannel channel, BroadcastChannel.Target target) {
+        this.broadcastChannel = channel;
+        this.broadcastTarget = target;
+    }
+
+    String getServerId() { return serverId; }
+    long getTickPeriodNanos() { return tickPeriodNanos; }
+
+    // Broadcast por defecto o grupo multicast, p. ej. -Dserver.multicastGroup=239.255.10.1 -Dserver.multicastTtl=1
+    private BroadcastChannel.Target initialTarget() throws IOException {
+        String group = System.getProperty("server.multicastGroup");
+        if (group != null && !group.isBlank()) {
+            System.out.println(serverId + " publishing to multicast group " + group.trim());
+            return new BroadcastChannel.Target(group.trim(), BROADCAST_PORT, Integer.getInteger("server.multicastTtl", 1));
         }
-        broadcastScheduler.scheduleAtFixedRate(() -> {
-            if (running && isSendingData) {
-                broadcastData();
+        return new BroadcastChannel.Target(BROADCAST_ADDRESS, BROADCAST_PORT, 1);
+    }
+
+    private void scheduleBroadcast() {
+        if (host != null) {
+            host.schedule(this); // Reemplaza la programación anterior, si la había
+            return;
+        }
+        if (rateScheduler == null) {
+            rateScheduler = new RateScheduler(serverId + "-Broadcast", this::tick, tickPeriodNanos);
+            rateScheduler.start();
+        } else {
+            rateScheduler.setPeriodNanos(tickPeriodNanos); // Sin parar el hilo: se aplica al siguiente vencimiento
+        }
+    }
+
+    /** Periodo del planificador: el más corto entre la difusión y los periodos propios de las variables. */
+    private void updateTickPeriod() {
+        long period = broadcastFrequencyMs * 1_000_000L;
+        for (long variablePeriod : variablePeriods.values()) {
+            period = Math.min(period, variablePeriod);
+        }
+        tickPeriodNanos = period;
+    }
+
+    /**
+     * Un tick de difusión. Sincronizado: al reprogramar (SET_FREQUENCY) el tick en
+     * curso puede no haber terminado cuando empieza el primero de la nueva programación.
+     */
+    void tick() {
+        tick(System.nanoTime(), System.currentTimeMillis());
+    }
+
+    /** Tick con el reloj dado: los plazos de muestreo, banda muerta y lote se miden con él. */
+    synchronized void tick(long nowNanos, long nowMillis) {
+        if (running && isSendingData) {
+            // Antes que nada: los ticks sin muestra (banda muerta, periodos propios) no llegan al lote
+            if (batchExpired(nowMillis)) {
+                flushPendingBatch();
+            }
+            broadcastData(nowNanos, nowMillis);
+        } else if (!batch.isEmpty()) {
+            flushPendingBatch(); // No dejar muestras retenidas al pausar
+        }
+    }
+
+    // La muestra más antigua del lote lleva batchMaxLatencyMs esperando
+    private boolean batchExpired(long nowMillis) {
+        int maxLatency = batchMaxLatencyMs;
+        return !batch.isEmpty() && maxLatency > 0 && nowMillis - batch.getFirstFrameMillis() >= maxLatency;
+    }
+
+    private void sendDatagram(byte[] data, int offset, int length) throws IOException {
+        broadcastChannel.send(data, offset, length, broadcastTarget);
+    }
+
+    private void broadcastData(long nowNanos, long nowMillis) {
+        try {
+            List<WeatherVariable> templates = managedVariables;
+            DataSource.ValueFeed[] feeds = resolveFeeds(templates); // Solo se recalculan al cambiar de fuente
+            double[] values = tickValues;
+            if (!sampleDue(templates, feeds, values, nowNanos, nowMillis)) {
+                return; // Tick de una variable más rápida que aún no vence
+            }
+            int publishing = applyPublishPolicies(templates, values, nowNanos);
+            if (publishing == 0) {
+                silentTicks++;
+                return; // Ninguna variable sale de su banda muerta
             }
-        }, 0, broadcastFrequencyMs, TimeUnit.MILLISECONDS);
-    }
-
-    private void broadcastData() { // Sin cambios, excepto logging
-        try (DatagramSocket socket = new DatagramSocket()) {
-            InetAddress broadcastAddr = InetAddress.getByName(BROADCAST_ADDRESS);
-            DistributionMessage distMsg = new DistributionMessage(serverId, currentEncoding);
-            // ... (generación de variables igual que antes)
-            for (WeatherVariable templateVar : managedVariables) {
-                double value = 0;
-                if (templateVar.getName().toLowerCase().contains("temperature")) value = 10 + random.nextDouble() * 20;
-                else if (templateVar.getName().toLowerCase().contains("humidity")) value = 30 + random.nextDouble() * 60;
-                else if (templateVar.getName().toLowerCase().contains("pressure")) value = 980 + random.nextDouble() * 50;
-                else value = random.nextDouble() * 100;
-                distMsg.addVariable(new WeatherVariable(templateVar.getName(), value, templateVar.getUnit()));
+            boolean partial = publishing < values.length && keyframeInterval <= 0;
+            // Sin modo delta la forma del paquete no cambia entre ticks: se rellena la plantilla
+            ByteSink frame = keyframeInterval <= 0 && !partial ? fillTemplate(values, nowMillis) : null;
+            DistributionMessage distMsg = null;
+            if (frame == null) {
+                distMsg = partial ? buildPartialFrame(templates, values) : buildFrame(templates, values);
+                broadcastSink.reset();
+                distMsg.writeTo(broadcastSink);
+                frame = broadcastSink;
             }
 
-            String serializedMessage = distMsg.serialize();
-            byte[] buffer = serializedMessage.getBytes();
-            DatagramPacket packet = new DatagramPacket(buffer, buffer.length, broadcastAddr, BROADCAST_PORT);
-            socket.send(packet);
-            MessageUtils.logMessage(logFileSent, serializedMessage);
+            int budget = batchMaxBytes;
+            if (budget > 0 && FrameBatch.sizeAlone(frame.size()) <= budget) {
+                if (!batch.isEmpty() && !batch.fits(frame.size(), budget)) {
+                    sendBatch();
+                }
+                batch.add(frame.array(), 0, frame.size(), nowMillis);
+                // Se envía si vence el plazo o si otra muestra de este tamaño ya no cabría
+                if (batchExpired(nowMillis) || !batch.fits(frame.size(), budget)) {
+                    sendBatch();
+                }
+            } else {
+                if (!batch.isEmpty()) {
+                    sendBatch();
+                }
+                sendFrame(frame);
+            }
+            if (distMsg != null && MessageUtils.ENCODING_BIN.equals(distMsg.getEncodingFormat())) {
+                // El payload binario no es legible; se registra un resumen
+                MessageUtils.logMessage(logFileSent, describeBinaryFrame(distMsg, frame.size()));
+            } else {
+                MessageUtils.logMessage(logFileSent, frame.toString(java.nio.charset.StandardCharsets.UTF_8));
+            }
         } catch (Exception e) {
             System.err.println(serverId + " Error broadcasting data: " + e.getMessage());
         }
     }
 
-    private void listenForControlMessages() {
-        try (DatagramSocket socket = new DatagramSocket(this.controlPort)) { // Usa el puerto de control de la instancia
-            byte[] buffer = new byte[2048];
-            System.out.println(serverId + " listening for control messages on port " + this.controlPort);
-            while (running) {
-                // ... (resto igual que antes)
-                DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
-                socket.receive(packet);
-
-                String receivedData = new String(packet.getData(), 0, packet.getLength());
-                MessageUtils.logMessage(logFileReceived, "From " + packet.getAddress() + ":" + packet.getPort() + " - " + receivedData);
-                System.out.println(serverId + " received control: " + receivedData + " from " + packet.getAddress().getHostAddress() + ":" + packet.getPort());
+    // Resumen "BIN: n bytes, [nombre: valor unidad, ...]" montado en el StringBuilder del hilo de broadcast
+    private String describeBinaryFrame(DistributionMessage distMsg, int size) {
+        StringBuilder sb = logLine;
+        sb.setLength(0);
+        sb.append(MessageUtils.ENCODING_BIN).append(": ").append(size).append(" bytes, [");
+        VariableLayout layout = distMsg.getLayout();
+        for (int i = 0; i < layout.size(); i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            String name = layout.getName(i);
+            if (name != null) {
+                sb.append(name);
+            } else {
+                sb.append('#').append(layout.getId(i)); // Modo esquema: solo el id
+            }
+            FixedPoint.append(sb.append(": "), distMsg.getValue(i), 2);
+            if (layout.getUnit(i) != null) {
+                sb.append(' ').append(layout.getUnit(i));
+            }
+        }
+        return sb.append(']').toString();
+    }
 
-                ControlMessage controlMsg = null;
-                try {
-                     controlMsg = ControlMessage.deserialize(receivedData);
-                } catch (Exception e) {
-                    System.err.println(serverId + " Error parsing control message: " + e.getMessage());
-                    sendResponse(socket, packet.getAddress(), packet.getPort(), "N/A", "ERROR_PARSING", "Failed to parse control message");
-                    continue;
+    /**
+     * Muestrea las variables que vencen en este tick y repite el último valor del resto.
+     * Devuelve false si no vence nada: ni la difusión ni ninguna variable con periodo propio.
+     */
+    private boolean sampleDue(List<WeatherVariable> templates, DataSource.ValueFeed[] feeds, double[] values,
+            long nowNanos, long nowMillis) {
+        int n = values.length;
+        if (periodsOfVariables == null || periodsOfVariables.length != n || periodsOfVariablesVersion != periodsVersion) {
+            periodsOfVariablesVersion = periodsVersion;
+            periodsOfVariables = new long[n];
+            for (int i = 0; i < n; i++) {
+                periodsOfVariables[i] = variablePeriods.getOrDefault(templates.get(i).getName().toLowerCase(Locale.ROOT), 0L);
+            }
+            if (heldValues == null || heldValues.length != n) {
+                heldValues = new double[n];
+                nextBroadcastNanos = nowNanos;
+            }
+            nextSampleNanos = new long[n];
+            Arrays.fill(nextSampleNanos, nowNanos); // Todas se muestrean en este tick
+        }
+        // Medio tick de margen: el planificador y estos plazos no arrancan en el mismo instante
+        long slack = tickPeriodNanos / 2;
+        boolean broadcastDue = nowNanos - nextBroadcastNanos >= -slack;
+        if (broadcastDue) {
+            nextBroadcastNanos = nextDeadline(nextBroadcastNanos, broadcastFrequencyMs * 1_000_000L, nowNanos);
+        }
+        boolean anyDue = broadcastDue;
+        for (int i = 0; i < n; i++) {
+            long period = periodsOfVariables[i];
+            boolean due = period == 0 ? broadcastDue : nowNanos - nextSampleNanos[i] >= -slack;
+            if (due) {
+                heldValues[i] = feeds[i].sample(nowMillis);
+                if (period != 0) {
+                    nextSampleNanos[i] = nextDeadline(nextSampleNanos[i], period, nowNanos);
                 }
+                anyDue = true;
+            }
+            values[i] = heldValues[i];
+        }
+        return anyDue;
+    }
 
-                if (controlMsg != null && (serverId.equals(controlMsg.getTargetServerId()) || "ALL".equalsIgnoreCase(controlMsg.getTargetServerId()))) {
-                     processControlMessage(controlMsg, packet.getAddress(), packet.getPort(), socket);
-                } else if (controlMsg != null) {
-                    System.out.println(serverId + ": Ignored control message for target " + controlMsg.getTargetServerId());
-                } else {
-                    System.out.println(serverId + ": Received null control message object after deserialization.");
+    /**
+     * Cuantiza los valores de las variables con política de publicación y marca en
+     * publishMask las que se publican en este tick; las demás se quedan con su último
+     * valor publicado (así en modo delta no salen en la DELTA). Devuelve cuántas se publican.
+     */
+    private int applyPublishPolicies(List<WeatherVariable> templates, double[] values, long nowNanos) {
+        int n = values.length;
+        if (policiesOfVariables == null || policiesOfVariables.length != n || policiesOfVariablesVersion != policiesVersion) {
+            policiesOfVariablesVersion = policiesVersion;
+            policiesOfVariables = new PublishPolicy[n];
+            for (int i = 0; i < n; i++) {
+                policiesOfVariables[i] = publishPolicies.get(templates.get(i).getName().toLowerCase(Locale.ROOT));
+            }
+            // Con una política nueva cada variable vuelve a publicarse una vez
+            publishMask = new boolean[n];
+            publishedOnce = new boolean[n];
+            lastPublished = new double[n];
+            lastPublishedNanos = new long[n];
+        }
+        int publishing = 0;
+        for (int i = 0; i < n; i++) {
+            PublishPolicy policy = policiesOfVariables[i];
+            boolean publish = true;
+            if (policy != null) {
+                double value = policy.quantize(values[i]);
+                publish = !publishedOnce[i] || policy.shouldPublish(value, lastPublished[i], nowNanos - lastPublishedNanos[i]);
+                if (publish) {
+                    publishedOnce[i] = true;
+                    lastPublished[i] = value;
+                    lastPublishedNanos[i] = nowNanos;
                 }
+                values[i] = lastPublished[i];
             }
-        } catch (Exception e) {
-            if (running) {
-                System.err.println(serverId + " Control Message listener error: " + e.getMessage());
-                e.printStackTrace(); // Imprime el stack trace para más detalles
+            publishMask[i] = publish;
+            if (publish) {
+                publishing++;
+            }
+        }
+        variablesPublished += publishing;
+        variablesSuppressed += n - publishing;
+        return publishing;
+    }
+
+    // Siguiente vencimiento; si ya se ha pasado (ticks perdidos) se salta al próximo futuro
+    private static long nextDeadline(long deadline, long period, long nowNanos) {
+        deadline += period;
+        if (nowNanos - deadline >= 0) {
+            deadline += ((nowNanos - deadline) / period + 1) * period;
+        }
+        return deadline;
+    }
+
+    /** Feeds de las variables; se vuelven a resolver solo si cambia la fuente. */
+    private DataSource.ValueFeed[] resolveFeeds(List<WeatherVariable> templates) {
+        DataSource source = dataSource;
+        if (source != dataSourceOfFeeds || feeds == null || feeds.length != templates.size()) {
+            DataSource fallback = source instanceof RandomDataSource ? source : new RandomDataSource(random);
+            feeds = new DataSource.ValueFeed[templates.size()];
+            for (int i = 0; i < feeds.length; i++) {
+                String name = templates.get(i).getName();
+                feeds[i] = source.resolve(name);
+                if (feeds[i] == null) {
+                    System.out.println(serverId + ": No data for '" + name + "' in " + source.describe() + ", using random values.");
+                    feeds[i] = fallback.resolve(name);
+                }
             }
+            dataSourceOfFeeds = source;
+        }
+        return feeds;
+    }
+
+    /**
+     * Rellena la plantilla del paquete FULL con los valores del tick (la recompila si
+     * la configuración ha cambiado). Devuelve null si no hay plantilla para la
+     * codificación actual o algún valor no cabe: entonces se usa el codec normal.
+     */
+    private ByteSink fillTemplate(double[] values, long nowMillis) {
+        int config = configVersion;
+        if (packetTemplateConfig != config) {
+            packetTemplate = PacketTemplate.compile(serverId, currentEncoding, new ArrayList<>(managedVariables),
+                    schemaMode ? currentSchema.getVersion() : 0);
+            packetTemplateConfig = config;
+        }
+        if (packetTemplate == null || !packetTemplate.fill(values, nextSequence, nowMillis)) {
+            return null;
+        }
+        nextSequence++;
+        return packetTemplate.getSink();
+    }
+
+    /** Envía una trama (o un lote) aplicando la compresión si está activa. */
+    private void sendFrame(ByteSink frame) throws IOException {
+        ByteSink wire = frame;
+        if (compressionEnabled) {
+            compressedSink.reset();
+            compressor.compress(frame.array(), 0, frame.size(), compressedSink);
+            wire = compressedSink;
+        }
+        if (journal != null) {
+            journal.append(serverId, wire.array(), 0, wire.size());
+        }
+        broadcastFragmenter.send(wire.array(), 0, wire.size(), datagramSender);
+    }
+
+    private void sendBatch() throws IOException {
+        try {
+            sendFrame(batch.getSink());
         } finally {
-            System.out.println(serverId + " Control message listener stopped.");
+            batch.reset();
+        }
+    }
+
+    private void flushPendingBatch() {
+        try {
+            sendBatch();
+        } catch (IOException e) {
+            System.err.println(serverId + " Error flushing batch: " + e.getMessage());
         }
     }
-    // processControlMessage y sendResponse sin cambios
-private void processControlMessage(ControlMessage msg, InetAddress clientAddr, int clientPort, DatagramSocket socket) {
+
+    /** Difunde el esquema actual (ids, nombres y unidades) para que los brokers resuelvan los datos en modo esquema. */
+    private void announceSchema(StationSchema schema) {
+        try {
+            ByteSink sink = new ByteSink();
+            new SchemaMessage(serverId, schema).writeTo(sink);
+            // Se llama desde varios hilos: fragmentador propio
+            new Fragmenter(Fragmenter.ETHERNET_DATAGRAM).send(sink.array(), 0, sink.size(), this::sendDatagram);
+            if (journal != null) {
+                journal.append(serverId, sink.array(), 0, sink.size());
+            }
+            MessageUtils.logMessage(logFileSent, sink.toString(java.nio.charset.StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            System.err.println(serverId + " Error announcing schema: " + e.getMessage());
+        }
+    }
+
+    private void addFrameVariable(DistributionMessage distMsg, List<WeatherVariable> templates, int index, double value,
+            boolean withUnit) {
+        if (schemaMode) {
+            distMsg.addVariable(index, value);
+        } else {
+            distMsg.addVariable(templates.get(index).getName(), value, withUnit ? templates.get(index).getUnit() : null);
+        }
+    }
+
+    /**
+     * Construye el mensaje del tick. En modo delta envía una KEY cada keyframeInterval
+     * ticks (o cuando se pide) y, entre medias, solo las variables que difieren de la KEY.
+     */
+    private DistributionMessage buildFrame(List<WeatherVariable> templates, double[] values) {
+        DistributionMessage distMsg = new DistributionMessage(serverId, currentEncoding);
+        distMsg.setSequence(nextSequence++);
+        if (schemaMode) {
+            distMsg.setSchemaVersion(currentSchema.getVersion());
+        }
+        int interval = keyframeInterval;
+        if (interval <= 0) {
+            for (int i = 0; i < values.length; i++) {
+                addFrameVariable(distMsg, templates, i, values[i], true);
+            }
+            return distMsg;
+        }
+
+        boolean sendKeyframe = keyframeRequested || keyframeValues == null || keyframeValues.length != values.length
+                || ticksSinceKeyframe + 1 >= interval;
+        if (sendKeyframe) {
+            keyframeRequested = false;
+            currentKeyframeId++;
+            ticksSinceKeyframe = 0;
+            keyframeValues = values.clone();
+            distMsg.setFrame(DistributionMessage.FRAME_KEY, currentKeyframeId);
+            for (int i = 0; i < values.length; i++) {
+                addFrameVariable(distMsg, templates, i, values[i], true);
+            }
+        } else {
+            ticksSinceKeyframe++;
+            distMsg.setFrame(DistributionMessage.FRAME_DELTA, currentKeyframeId);
+            for (int i = 0; i < values.length; i++) {
+                if (Double.compare(values[i], keyframeValues[i]) != 0) {
+                    addFrameVariable(distMsg, templates, i, values[i], false);
+                }
+            }
+        }
+        return distMsg;
+    }
+
+    /** Trama PARTIAL con las variables marcadas en publishMask, con nombre y unidad. */
+    private DistributionMessage buildPartialFrame(List<WeatherVariable> templates, double[] values) {
+        DistributionMessage distMsg = new DistributionMessage(serverId, currentEncoding);
+        distMsg.setSequence(nextSequence++);
+        if (schemaMode) {
+            distMsg.setSchemaVersion(currentSchema.getVersion());
+        }
+        distMsg.setFrame(DistributionMessage.FRAME_PARTIAL, 0);
+        for (int i = 0; i < values.length; i++) {
+            if (publishMask[i]) {
+                addFrameVariable(distMsg, templates, i, values[i], true);
+            }
+        }
+        partialFrames++;
+        return distMsg;
+    }
+
+    private String describeVariablePeriods() {
+        Map<String, Long> micros = new TreeMap<>();
+        variablePeriods.forEach((name, nanos) -> micros.put(name, nanos / 1000));
+        return micros.toString();
+    }
+
+    private boolean managesVariable(String name) {
+        for (WeatherVariable wv : managedVariables) {
+            if (wv.getName().equalsIgnoreCase(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static double doubleParam(Map<String, Object> params, String name) {
+        Object value = params.get(name);
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        } else if (value instanceof String) {
+            return Double.parseDouble((String) value);
+        }
+        throw new IllegalArgumentException("Invalid " + name + " type: " + (value != null ? value.getClass().getName() : "null"));
+    }
+
+    private static int intParam(Map<String, Object> params, String name) {
+        Object value = params.get(name);
+        if (value instanceof Number) {
+            return ((Number) value).intValue();
+        } else if (value instanceof String) {
+            return Integer.parseInt((String) value);
+        }
+        throw new IllegalArgumentException("Invalid " + name + " type: " + (value != null ? value.getClass().getName() : "null"));
+    }
+
+    /** Mensajes recibidos en el puerto propio (sin StationHost). */
+    private ResponseMessage handleOwnControlMessage(ControlMessage controlMsg) {
+        if (!serverId.equals(controlMsg.getTargetServerId()) && !"ALL".equalsIgnoreCase(controlMsg.getTargetServerId())) {
+            System.out.println(serverId + ": Ignored control message for target " + controlMsg.getTargetServerId());
+            return null;
+        }
+        ResponseMessage response = handleControlMessage(controlMsg);
+        if ("STOP_SERVER_PROCESS".equalsIgnoreCase(controlMsg.getCommand()) && "OK".equals(response.getStatus())) {
+            controlListener.closeLater(500); // Da tiempo a enviar la respuesta antes de cerrar el socket del listener
+        }
+        return response;
+    }
+
+/**
+ * Ejecuta un comando de control sobre esta estación y devuelve la respuesta. Los
+ * comandos que cambian la configuración se ejecutan de uno en uno, aunque lleguen
+ * de clientes distintos; los de otras estaciones del host no esperan. La E/S lenta
+ * queda fuera del lock: la fuente de SET_DATA_SOURCE se abre antes y el esquema se
+ * difunde después. Las consultas GET_* no toman el lock.
+ */
+ResponseMessage handleControlMessage(ControlMessage msg) {
+    String command = msg.getCommand() != null ? msg.getCommand().toUpperCase() : "";
+    if (READ_ONLY_COMMANDS.contains(command)) {
+        return executeControlCommand(msg, null);
+    }
+    DataSource replay = null;
+    if ("SET_DATA_SOURCE".equals(command)) {
+        try {
+            replay = openDataSource(msg.getParameters()); // Mapea e indexa el CSV entero
+        } catch (IOException e) {
+            return new ResponseMessage(msg.getMessageId(), "ERROR",
+                    "Could not open replay source " + msg.getParameters().get("source") + ": " + e);
+        } catch (RuntimeException e) {
+            return new ResponseMessage(msg.getMessageId(), "ERROR",
+                    "Error processing command '" + msg.getCommand() + "': " + e.getMessage());
+        }
+    } else if ("SET_SCHEMA_MODE".equals(command) && Boolean.TRUE.equals(msg.getParameters().get("active"))) {
+        announceSchema(currentSchema); // Antes de activar el modo: los brokers ya lo tienen cuando llega el primer dato
+    }
+    ResponseMessage response;
+    StationSchema announce;
+    synchronized (commandLock) {
+        response = executeControlCommand(msg, replay);
+        announce = schemaToAnnounce;
+        schemaToAnnounce = null;
+    }
+    if (announce != null) {
+        announceSchema(announce);
+    }
+    return response;
+}
+
+/** Fuente de reproducción pedida en SET_DATA_SOURCE, o null para valores aleatorios. */
+private static DataSource openDataSource(Map<String, Object> params) throws IOException {
+    String source = (String) params.get("source");
+    if (source == null || "RANDOM".equalsIgnoreCase(source)) {
+        return null;
+    }
+    int speed = params.containsKey("speed") ? intParam(params, "speed") : 1;
+    boolean loop = !Boolean.FALSE.equals(params.get("loop"));
+    return ReplayDataSource.open(source, speed, loop);
+}
+
+private ResponseMessage executeControlCommand(ControlMessage msg, DataSource replay) {
     String command = msg.getCommand();
     Map<String, Object> params = msg.getParameters();
     String responseDetails = "Command '" + command + "' executed.";
@@ -172,8 +740,9 @@ private void processControlMessage(ControlMessage msg, InetAddress clientAddr, i
         switch (command.toUpperCase()) {
             case "SET_ENCODING":
                 String newEncoding = (String) params.get("encoding");
-                if (MessageUtils.ENCODING_JSON.equalsIgnoreCase(newEncoding) || MessageUtils.ENCODING_XML.equalsIgnoreCase(newEncoding)) {
+                if (MessageUtils.isSupportedEncoding(newEncoding)) {
                     this.currentEncoding = newEncoding.toUpperCase();
+                    configVersion++;
                     responseDetails = "Encoding set to " + this.currentEncoding;
                 } else {
                     status = "ERROR";
@@ -190,15 +759,12 @@ private void processControlMessage(ControlMessage msg, InetAddress clientAddr, i
                 } else {
                     status = "ERROR";
                     responseDetails = "Invalid frequency type: " + (freqObj != null ? freqObj.getClass().getName() : "null");
-                    sendResponse(socket, clientAddr, clientPort, msg.getMessageId(), status, responseDetails);
-                    return; 
+                    break;
                 }
 
                 if (newFreq > 0) {
                     this.broadcastFrequencyMs = newFreq;
-                    if (broadcastScheduler != null && !broadcastScheduler.isShutdown()) {
-                        broadcastScheduler.shutdownNow(); 
-                    }
+                    updateTickPeriod();
                     scheduleBroadcast();
                     responseDetails = "Broadcast frequency set to " + this.broadcastFrequencyMs + "ms";
                 } else {
@@ -207,6 +773,7 @@ private void processControlMessage(ControlMessage msg, InetAddress clientAddr, i
                 }
                 break;
             case "SET_UNIT":
+            case "SET_VARIABLE_UNIT": // Nombre que envía la consola del broker
                 String varName = (String) params.get("variableName");
                 String newUnit = (String) params.get("newUnit");
                 boolean found = false;
@@ -221,8 +788,184 @@ private void processControlMessage(ControlMessage msg, InetAddress clientAddr, i
                 if (!found) {
                     status = "ERROR";
                     responseDetails = "Variable " + varName + " not managed by this server.";
+                } else {
+                    keyframeRequested = true; // La unidad solo viaja en las tramas KEY
+                    currentSchema = StationSchema.fromVariables(currentSchema.getVersion() + 1, managedVariables);
+                    configVersion++;
+                    schemaToAnnounce = currentSchema;
+                }
+                break;
+            case "SET_SCHEMA_MODE":
+                Object schemaActive = params.get("active");
+                if (schemaActive instanceof Boolean) {
+                    this.schemaMode = (Boolean) schemaActive;
+                    configVersion++;
+                    responseDetails = "Schema mode " + (schemaMode ? "enabled (schema version " + currentSchema.getVersion() + ")" : "disabled");
+                } else {
+                    status = "ERROR";
+                    responseDetails = "Invalid type for 'active' parameter: " + (schemaActive != null ? schemaActive.getClass().getName() : "null");
                 }
                 break;
+            case "SET_COMPRESSION":
+                Object compressionActive = params.get("active");
+                if (compressionActive instanceof Boolean) {
+                    this.compressionEnabled = (Boolean) compressionActive;
+                    responseDetails = "Payload compression " + (compressionEnabled ? "enabled" : "disabled");
+                } else {
+                    status = "ERROR";
+                    responseDetails = "Invalid type for 'active' parameter: " + (compressionActive != null ? compressionActive.getClass().getName() : "null");
+                }
+                break;
+            case "SET_BATCHING":
+                int maxBytes = intParam(params, "maxBytes");
+                int maxLatency = params.containsKey("maxLatencyMs") ? intParam(params, "maxLatencyMs") : batchMaxLatencyMs;
+                if (maxBytes < 0 || maxBytes > 65000 || maxLatency < 0) {
+                    status = "ERROR";
+                    responseDetails = "Invalid batching parameters: maxBytes=" + maxBytes + ", maxLatencyMs=" + maxLatency;
+                } else {
+                    this.batchMaxLatencyMs = maxLatency;
+                    this.batchMaxBytes = maxBytes;
+                    responseDetails = maxBytes == 0 ? "Batching disabled"
+                            : "Batching up to " + maxBytes + " bytes"
+                                    + (maxLatency > 0 ? " or " + maxLatency + "ms" : " (flushed only when full)") + " per datagram";
+                }
+                break;
+            case "REQUEST_SCHEMA":
+                schemaToAnnounce = currentSchema;
+                responseDetails = "Schema version " + currentSchema.getVersion() + " announced";
+                break;
+            case "SET_DELTA_MODE":
+                int interval = intParam(params, "keyframeInterval");
+                if (interval < 0) {
+                    status = "ERROR";
+                    responseDetails = "Invalid keyframe interval: " + interval;
+                } else {
+                    this.keyframeInterval = interval;
+                    this.keyframeRequested = true;
+                    responseDetails = interval == 0 ? "Delta mode disabled"
+                            : "Delta mode enabled, keyframe every " + interval + " ticks";
+                }
+                break;
+            case "REQUEST_KEYFRAME":
+                this.keyframeRequested = true;
+                responseDetails = keyframeInterval > 0 ? "Keyframe scheduled for next tick" : "Delta mode disabled, every tick is a full frame";
+                break;
+            case "SET_MULTICAST":
+                String group = (String) params.get("group");
+                int ttl = params.containsKey("ttl") ? intParam(params, "ttl") : 1;
+                if (group == null || "OFF".equalsIgnoreCase(group)) {
+                    broadcastTarget = new BroadcastChannel.Target(BROADCAST_ADDRESS, BROADCAST_PORT, ttl);
+                    responseDetails = "Multicast disabled, broadcasting to " + BROADCAST_ADDRESS;
+                } else if (!InetAddress.getByName(group).isMulticastAddress()) {
+                    status = "ERROR";
+                    responseDetails = "Not a multicast group address: " + group;
+                } else {
+                    broadcastTarget = new BroadcastChannel.Target(group, BROADCAST_PORT, ttl);
+                    schemaToAnnounce = currentSchema; // Los brokers del grupo aún no lo tienen
+                    responseDetails = "Publishing to multicast group " + group + " with TTL " + ttl;
+                }
+                break;
+            case "SET_DATA_SOURCE":
+                setDataSource(replay != null ? replay : new RandomDataSource(random)); // Ya abierta, fuera del lock
+                responseDetails = "Data source set to " + dataSource.describe();
+                break;
+            case "GET_BROADCAST_STATS":
+                responseDetails = "Broadcast stats: target=" + broadcastTarget + ", " + broadcastChannel.stats()
+                        + (host != null ? " (channel shared by " + host.getStationCount() + " stations)" : "")
+                        + ", variablesPublished=" + variablesPublished + ", variablesSuppressed=" + variablesSuppressed
+                        + ", partialFrames=" + partialFrames + ", silentTicks=" + silentTicks
+                        + (journal != null ? ", " + journal.stats() : "");
+                break;
+            case "SET_PUBLISH_POLICY":
+                String policyVar = (String) params.get("variableName");
+                Object deadbandObj = params.get("deadband");
+                if (!managesVariable(policyVar)) {
+                    status = "ERROR";
+                    responseDetails = "Variable " + policyVar + " not managed by this server.";
+                    break;
+                }
+                String policyKey = policyVar.toLowerCase(Locale.ROOT);
+                if (deadbandObj == null || "OFF".equalsIgnoreCase(String.valueOf(deadbandObj))) {
+                    publishPolicies.remove(policyKey);
+                    responseDetails = policyVar + " published every tick";
+                } else {
+                    PublishPolicy policy = new PublishPolicy(doubleParam(params, "deadband"),
+                            params.containsKey("heartbeatSec") ? intParam(params, "heartbeatSec") : PublishPolicy.DEFAULT_HEARTBEAT_SECONDS,
+                            params.containsKey("quantum") ? doubleParam(params, "quantum") : 0);
+                    publishPolicies.put(policyKey, policy);
+                    responseDetails = policyVar + " publish policy: " + policy;
+                }
+                policiesVersion++;
+                break;
+            case "GET_PUBLISH_POLICY":
+                responseDetails = "Publish policies: " + new TreeMap<>(publishPolicies);
+                break;
+            case "SET_VARIABLE_PERIOD":
+                String periodVar = (String) params.get("variableName");
+                int periodMicros = intParam(params, "periodMicros");
+                if (!managesVariable(periodVar)) {
+                    status = "ERROR";
+                    responseDetails = "Variable " + periodVar + " not managed by this server.";
+                } else if (periodMicros != 0 && periodMicros * 1000L < RateScheduler.MIN_PERIOD_NANOS) {
+                    status = "ERROR";
+                    responseDetails = "Invalid period: " + periodMicros + "us (minimum " + RateScheduler.MIN_PERIOD_NANOS / 1000 + "us, 0 = broadcast frequency)";
+                } else {
+                    String key = periodVar.toLowerCase(Locale.ROOT);
+                    if (periodMicros == 0) {
+                        variablePeriods.remove(key);
+                    } else {
+                        variablePeriods.put(key, periodMicros * 1000L);
+                    }
+                    periodsVersion++;
+                    updateTickPeriod();
+                    scheduleBroadcast();
+                    responseDetails = (periodMicros == 0 ? periodVar + " sampled at the broadcast frequency"
+                            : periodVar + " sampled every " + periodMicros + "us")
+                            + (host != null && tickPeriodNanos < StationHost.WHEEL_TICK_MS * 1_000_000L
+                                    ? " (hosted stations tick at most every " + StationHost.WHEEL_TICK_MS + "ms)" : "");
+                }
+                break;
+            case "SET_SPIN_WAIT":
+                Object spinActive = params.get("active");
+                if (host != null) {
+                    status = "ERROR";
+                    responseDetails = "Spin-wait is only available for standalone stations";
+                } else if (spinActive instanceof Boolean) {
+                    rateScheduler.setSpinWait((Boolean) spinActive);
+                    responseDetails = "Spin-wait " + ((Boolean) spinActive ? "enabled" : "disabled");
+                } else {
+                    status = "ERROR";
+                    responseDetails = "Invalid type for 'active' parameter: " + (spinActive != null ? spinActive.getClass().getName() : "null");
+                }
+                break;
+            case "GET_SCHEDULER_STATS":
+                responseDetails = "Scheduler stats: " + (host != null ? "host timer wheel, " + host.schedulerStats() : rateScheduler.stats())
+                        + ", broadcastFrequency=" + broadcastFrequencyMs + "ms, variablePeriodsUs=" + describeVariablePeriods();
+                break;
+            case "SET_LOG_POLICY":
+                // El log es del proceso: en un StationHost afecta a todas sus estaciones
+                AsyncLogWriter.FullPolicy logPolicy = AsyncLogWriter.FullPolicy.valueOf(
+                        String.valueOf(params.get("policy")).toUpperCase(Locale.ROOT));
+                AsyncLogWriter.get().setPolicy(logPolicy, params.containsKey("sampleRate") ? intParam(params, "sampleRate") : 10);
+                responseDetails = "Log writer: " + AsyncLogWriter.get().stats();
+                break;
+            case "GET_LOG_STATS":
+                responseDetails = "Log writer: " + AsyncLogWriter.get().stats();
+                break;
+            case "SET_CONTROL_RATE_LIMIT":
+                // El puerto es del proceso: en un StationHost el límite es común a todas sus estaciones
+                ControlRateLimiter limiter = host != null ? host.controlRateLimiter() : controlListener.rateLimiter();
+                ControlRateLimiter.Limits current = limiter.getLimits();
+                limiter.setLimits(new ControlRateLimiter.Limits(
+                        params.containsKey("perSourceRate") ? doubleParam(params, "perSourceRate") : current.perSourceRate,
+                        params.containsKey("perSourceBurst") ? doubleParam(params, "perSourceBurst") : current.perSourceBurst,
+                        params.containsKey("globalRate") ? doubleParam(params, "globalRate") : current.globalRate,
+                        params.containsKey("globalBurst") ? doubleParam(params, "globalBurst") : current.globalBurst));
+                responseDetails = "Control rate limit: " + limiter.stats();
+                break;
+            case "GET_CONTROL_STATS":
+                responseDetails = "Control stats: " + (host != null ? host.controlStats() : controlListener.stats());
+                break;
             case "TOGGLE_SENDING_DATA":
                  Object activeObj = params.get("active"); 
                  if (activeObj instanceof Boolean) {
@@ -237,7 +980,15 @@ private void processControlMessage(ControlMessage msg, InetAddress clientAddr, i
                 responseDetails = "Server " + serverId + " stopping.";
                 this.running = false;
                 this.isSendingData = false;
-                if (broadcastScheduler != null) broadcastScheduler.shutdownNow();
+                if (host != null) {
+                    host.remove(this); // El resto de estaciones del host siguen
+                } else {
+                    rateScheduler.stop();
+                    broadcastChannel.close();
+                    if (journal != null) {
+                        journal.close();
+                    }
+                }
                 break;
             default:
                 status = "ERROR";
@@ -250,27 +1001,6 @@ private void processControlMessage(ControlMessage msg, InetAddress clientAddr, i
         e.printStackTrace();
     }
 
-    sendResponse(socket, clientAddr, clientPort, msg.getMessageId(), status, responseDetails);
-    if ("STOP_SERVER_PROCESS".equalsIgnoreCase(command) && "OK".equals(status)) {
-        // Da tiempo a enviar la respuesta antes de cerrar el socket del listener
-        new Timer().schedule(new TimerTask() {
-            @Override
-            public void run() {
-                 if (socket != null && !socket.isClosed()) socket.close(); // Cierra el socket del listener
-            }
-        }, 500); // Espera 500ms
-    }
+    return new ResponseMessage(msg.getMessageId(), status, responseDetails);
 }
-private void sendResponse(DatagramSocket socket, InetAddress clientAddr, int clientPort, String originalMsgId, String status, String details) {
-    ResponseMessage response = new ResponseMessage(originalMsgId, status, details);
-    String serializedResponse = response.serialize(); 
-    byte[] buffer = serializedResponse.getBytes();
-    DatagramPacket responsePacket = new DatagramPacket(buffer, buffer.length, clientAddr, clientPort);
-    try {
-        socket.send(responsePacket);
-        System.out.println(serverId + " sent response to " + clientAddr.getHostAddress() + ":" + clientPort + " -> " + serializedResponse);
-    } catch (IOException e) {
-        System.err.println(serverId + " Error sending response: " + e.getMessage());
-    }
 }
-}
\ No newline at end of file
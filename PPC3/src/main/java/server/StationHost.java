@@ -0,0 +1,256 @@
+package server;
+
+import common.BroadcastJournal;
+import common.ControlMessage;
+import common.MessageUtils;
+import common.ResponseMessage;
+import common.WeatherVariable;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Varias estaciones (Server) en un solo proceso, para pruebas con flotas grandes.
+ * Todas comparten:
+ * <ul>
+ *   <li>una {@link TimerWheel} para los ticks, con las fases escalonadas para que
+ *       estaciones con la misma frecuencia no envíen todas a la vez;</li>
+ *   <li>un {@link BroadcastChannel} para enviar;</li>
+ *   <li>un puerto de control, que reparte cada ControlMessage según su
+ *       targetServerId ("ALL" lo aplica a todas y "HOST" consulta el propio host).</li>
+ * </ul>
+ * Cada estación mantiene su serverId, variables, codificación y frecuencia.
+ *
+ * Un comando "ALL" se ejecuta en todas las estaciones a la vez, con
+ * -Dserver.hostCommandWorkers hilos (8 por defecto).
+ */
+public class StationHost {
+    static final long WHEEL_TICK_MS = 5;
+    private static final int WHEEL_SLOTS = 1024;
+    // Fracción áurea: las fases i * PHI (mod 1) quedan repartidas uniformemente en el periodo
+    private static final double PHI = 0.6180339887498949;
+
+    private final int controlPort;
+    private final Map<String, Server> stations = new ConcurrentHashMap<>(); // Por serverId en mayúsculas
+    private final Map<Server, TimerWheel.Task> tasks = new ConcurrentHashMap<>();
+    private final Map<Server, Double> phases = new ConcurrentHashMap<>();
+    private final AtomicInteger registered = new AtomicInteger();
+    private final ExecutorService tickExecutor;
+    // Comandos "ALL": cada estación en paralelo, fuera de los hilos de tick
+    private final ExecutorService commandExecutor;
+    private final TimerWheel wheel;
+    private BroadcastChannel channel;
+    private ControlListener controlListener;
+    private BroadcastJournal journal; // Compartido por todas las estaciones; null sin -Dserver.journal
+
+    public StationHost(int controlPort) {
+        this.controlPort = controlPort;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.tickExecutor = Executors.newFixedThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors()), r -> {
+            Thread t = new Thread(r, "StationTick-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.wheel = new TimerWheel("StationHostWheel", WHEEL_TICK_MS, WHEEL_SLOTS, tickExecutor);
+        AtomicInteger commandCount = new AtomicInteger();
+        this.commandExecutor = Executors.newFixedThreadPool(Math.max(1, Integer.getInteger("server.hostCommandWorkers", 8)), r -> {
+            Thread t = new Thread(r, "StationCommand-" + commandCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.err.println("Usage: java server.StationHost <controlPort> <stationsFile>");
+            System.err.println("       java server.StationHost <controlPort> --generate <count> [frequencyMs] [JSON|XML|BIN]");
+            System.err.println("Stations file: one station per line, '<serverId> <encoding> <frequencyMs> [varName varUnit] ...'");
+            return;
+        }
+        StationHost host = new StationHost(Integer.parseInt(args[0]));
+        List<Server> stations;
+        try {
+            if ("--generate".equals(args[1])) {
+                int count = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+                int frequencyMs = args.length > 3 ? Integer.parseInt(args[3]) : 1000;
+                String encoding = args.length > 4 ? args[4] : MessageUtils.ENCODING_JSON;
+                stations = generateStations(host.controlPort, count, frequencyMs, encoding);
+            } else {
+                stations = loadStations(host.controlPort, args[1]);
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Could not load stations: " + e.getMessage());
+            return;
+        }
+        host.start(stations);
+    }
+
+    /** Estaciones H1..Hn con las variables por defecto. */
+    static List<Server> generateStations(int controlPort, int count, int frequencyMs, String encoding) {
+        List<Server> stations = new ArrayList<>();
+        for (int i = 1; i <= count; i++) {
+            List<WeatherVariable> vars = new ArrayList<>();
+            vars.add(new WeatherVariable("temperature", 0, "C"));
+            vars.add(new WeatherVariable("humidity", 0, "%"));
+            vars.add(new WeatherVariable("pressure", 0, "hPa"));
+            Server station = new Server("H" + i, controlPort, vars);
+            station.configure(encoding, frequencyMs);
+            stations.add(station);
+        }
+        return stations;
+    }
+
+    /** Lee el fichero de estaciones; las líneas vacías y las que empiezan por '#' se ignoran. */
+    static List<Server> loadStations(int controlPort, String file) throws IOException {
+        List<Server> stations = new ArrayList<>();
+        int lineNumber = 0;
+        for (String line : Files.readAllLines(Paths.get(file), StandardCharsets.UTF_8)) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] parts = line.split("\\s+");
+            if (parts.length < 3 || (parts.length - 3) % 2 != 0) {
+                throw new IllegalArgumentException("Line " + lineNumber + ": expected '<serverId> <encoding> <frequencyMs> [varName varUnit] ...'");
+            }
+            if (!MessageUtils.isSupportedEncoding(parts[1])) {
+                throw new IllegalArgumentException("Line " + lineNumber + ": unsupported encoding " + parts[1]);
+            }
+            List<WeatherVariable> vars = new ArrayList<>();
+            for (int i = 3; i < parts.length; i += 2) {
+                vars.add(new WeatherVariable(parts[i], 0, parts[i + 1]));
+            }
+            if (vars.isEmpty()) {
+                vars.add(new WeatherVariable("temperature", 0, "C"));
+                vars.add(new WeatherVariable("humidity", 0, "%"));
+                vars.add(new WeatherVariable("pressure", 0, "hPa"));
+            }
+            Server station = new Server(parts[0], controlPort, vars);
+            station.configure(parts[1], Integer.parseInt(parts[2]));
+            stations.add(station);
+        }
+        return stations;
+    }
+
+    public void start(List<Server> initialStations) {
+        System.out.println("Station host starting with " + initialStations.size() + " stations...");
+        try {
+            channel = new BroadcastChannel();
+        } catch (IOException e) {
+            System.err.println("Station host: Could not open broadcast channel: " + e.getMessage());
+            return;
+        }
+        wheel.start();
+        journal = BroadcastJournal.fromProperty("server.journal");
+        // Una sola proyección del fichero de reproducción para todas las estaciones
+        DataSource replay = Server.replayFromProperties();
+        for (Server station : initialStations) {
+            String key = station.getServerId().toUpperCase(Locale.ROOT);
+            if (stations.putIfAbsent(key, station) != null) {
+                System.err.println("Station host: Duplicate station id " + station.getServerId() + ", ignored.");
+                continue;
+            }
+            try {
+                if (replay != null) {
+                    station.setDataSource(replay);
+                }
+                station.startHosted(this, channel);
+            } catch (IOException | IllegalArgumentException e) {
+                stations.remove(key);
+                System.err.println("Station host: Could not start " + station.getServerId() + ": " + e.getMessage());
+            }
+        }
+        controlListener = new ControlListener("StationHost", controlPort, "host_received_control.log", this::handleControlMessage);
+        new Thread(controlListener, "StationHostControl").start();
+        System.out.println("Station host started: " + stations.size() + " stations, control port " + controlPort);
+    }
+
+    /** (Re)programa los ticks de la estación con su frecuencia actual. */
+    void schedule(Server station) {
+        double phase = phases.computeIfAbsent(station, s -> (registered.getAndIncrement() * PHI) % 1.0);
+        long period = Math.max(1, station.getTickPeriodNanos() / 1_000_000); // La rueda lo redondea a su tick
+        TimerWheel.Task previous = tasks.put(station, wheel.schedule(station::tick, (long) (phase * period), period));
+        if (previous != null) {
+            previous.cancel();
+        }
+    }
+
+    void remove(Server station) {
+        stations.remove(station.getServerId().toUpperCase(Locale.ROOT), station);
+        TimerWheel.Task task = tasks.remove(station);
+        if (task != null) {
+            task.cancel();
+        }
+        phases.remove(station);
+    }
+
+    int getStationCount() {
+        return stations.size();
+    }
+
+    BroadcastJournal getJournal() {
+        return journal;
+    }
+
+    String schedulerStats() {
+        return wheel.stats();
+    }
+
+    String controlStats() {
+        return controlListener.stats();
+    }
+
+    ControlRateLimiter controlRateLimiter() {
+        return controlListener.rateLimiter();
+    }
+
+    private ResponseMessage handleControlMessage(ControlMessage msg) {
+        String target = msg.getTargetServerId();
+        if ("HOST".equalsIgnoreCase(target)) {
+            if ("GET_HOST_STATS".equalsIgnoreCase(msg.getCommand())) {
+                return new ResponseMessage(msg.getMessageId(), "OK", "Stations=" + stations.size() + ", ticks: "
+                        + wheel.stats() + ", channel: " + channel.stats() + ", control: " + controlListener.stats());
+            }
+            return new ResponseMessage(msg.getMessageId(), "ERROR", "Unknown host command: " + msg.getCommand());
+        }
+        if ("ALL".equalsIgnoreCase(target)) {
+            // Se aplica a todas en paralelo (una estación lenta no retrasa a las demás);
+            // el resultado resume cada respuesta en orden de serverId
+            List<Server> targets = new ArrayList<>(new TreeMap<>(stations).values());
+            List<CompletableFuture<ResponseMessage>> pending = new ArrayList<>(targets.size());
+            for (Server station : targets) {
+                pending.add(CompletableFuture.supplyAsync(() -> station.handleControlMessage(msg), commandExecutor));
+            }
+            StringBuilder details = new StringBuilder();
+            boolean allOk = true;
+            for (int i = 0; i < targets.size(); i++) {
+                Server station = targets.get(i);
+                ResponseMessage response = pending.get(i).join();
+                allOk &= "OK".equals(response.getStatus());
+                if (details.length() > 0) {
+                    details.append("; ");
+                }
+                details.append(station.getServerId()).append(": ").append(response.getDetails());
+            }
+            return new ResponseMessage(msg.getMessageId(), allOk ? "OK" : "ERROR", details.toString());
+        }
+        Server station = target != null ? stations.get(target.toUpperCase(Locale.ROOT)) : null;
+        if (station == null) {
+            return new ResponseMessage(msg.getMessageId(), "ERROR", "Station " + target + " is not hosted here.");
+        }
+        return station.handleControlMessage(msg);
+    }
+}
@@ -0,0 +1,186 @@
+package server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Rueda de temporización para muchas tareas periódicas con un solo hilo: cada
+ * tarea está en la casilla de su próximo vencimiento y en cada tick solo se mira
+ * la casilla actual. Los periodos se redondean al tick de la rueda.
+ *
+ * Las tareas se ejecutan en el {@code executor} indicado. Una misma tarea nunca
+ * se ejecuta dos veces a la vez: si al vencer sigue en marcha, esa ejecución se
+ * salta y se cuenta como {@code overrun}. Si el executor rechaza una ejecución
+ * (por ejemplo, porque se está parando) la tarea sigue en la rueda y se cuenta
+ * como {@code rejected}.
+ */
+final class TimerWheel {
+    private final long tickNanos;
+    private final List<List<Task>> slots;
+    private final ExecutorService executor;
+    private final ConcurrentLinkedQueue<Task> added = new ConcurrentLinkedQueue<>();
+    private final Thread thread;
+    private volatile boolean running = true;
+    private volatile long startNanos;
+    private volatile long currentTick;
+
+    private final LongAdder fired = new LongAdder();
+    private final LongAdder overruns = new LongAdder();
+    private final LongAdder lateTicks = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    /** Tarea periódica programada en la rueda. */
+    final class Task {
+        private final Runnable action;
+        private final long periodTicks;
+        private long deadlineTick; // Solo lo toca el hilo de la rueda
+        private volatile boolean cancelled;
+        private final AtomicBoolean busy = new AtomicBoolean();
+
+        private Task(Runnable action, long periodTicks) {
+            this.action = action;
+            this.periodTicks = periodTicks;
+        }
+
+        void cancel() {
+            cancelled = true;
+        }
+
+        private void runOnce() {
+            try {
+                action.run();
+            } catch (RuntimeException e) {
+                System.err.println("Timer wheel task failed: " + e.getMessage());
+            } finally {
+                busy.set(false);
+            }
+        }
+    }
+
+    TimerWheel(String name, long tickMillis, int slotCount, ExecutorService executor) {
+        this.tickNanos = tickMillis * 1_000_000L;
+        this.slots = new ArrayList<>(slotCount);
+        for (int i = 0; i < slotCount; i++) {
+            slots.add(new ArrayList<>());
+        }
+        this.executor = executor;
+        this.thread = new Thread(this::loop, name);
+        this.thread.setDaemon(true);
+    }
+
+    void start() {
+        startNanos = System.nanoTime();
+        thread.start();
+    }
+
+    void stop() {
+        running = false;
+        LockSupport.unpark(thread);
+    }
+
+    /** Programa {@code action} cada {@code periodMillis}, empezando tras {@code initialDelayMillis}. */
+    Task schedule(Runnable action, long initialDelayMillis, long periodMillis) {
+        long tickMillis = tickNanos / 1_000_000L;
+        Task task = new Task(action, Math.max(1, (periodMillis + tickMillis - 1) / tickMillis));
+        // Se coloca en la rueda desde su hilo; aquí solo se calcula el primer vencimiento
+        task.deadlineTick = currentTick + 1 + initialDelayMillis / tickMillis;
+        added.add(task);
+        return task;
+    }
+
+    private void loop() {
+        long processed = 0; // Último tick procesado
+        while (running) {
+            long now = System.nanoTime();
+            long target = (now - startNanos) / tickNanos;
+            if (target <= processed) {
+                LockSupport.parkNanos(startNanos + (processed + 1) * tickNanos - now);
+                continue;
+            }
+            if (target - processed > 1) {
+                lateTicks.add(target - processed - 1); // La rueda se retrasó: se procesan varias casillas seguidas
+            }
+            while (processed < target) {
+                processed++;
+                currentTick = processed;
+                drainAdded(processed);
+                processSlot(processed);
+            }
+        }
+    }
+
+    private void drainAdded(long tick) {
+        Task task;
+        while ((task = added.poll()) != null) {
+            if (task.deadlineTick < tick) {
+                task.deadlineTick = tick;
+            }
+            slotOf(task.deadlineTick).add(task);
+        }
+    }
+
+    private List<Task> slotOf(long tick) {
+        return slots.get((int) (tick % slots.size()));
+    }
+
+    private void processSlot(long tick) {
+        List<Task> slot = slotOf(tick);
+        List<Task> due = null;
+        for (int i = slot.size() - 1; i >= 0; i--) {
+            Task task = slot.get(i);
+            if (task.cancelled) {
+                removeAt(slot, i);
+            } else if (task.deadlineTick <= tick) {
+                removeAt(slot, i);
+                if (due == null) {
+                    due = new ArrayList<>();
+                }
+                due.add(task);
+            }
+            // Si no, vence en otra vuelta de la rueda
+        }
+        if (due == null) {
+            return;
+        }
+        for (Task task : due) {
+            if (task.busy.compareAndSet(false, true)) {
+                fired.increment();
+                try {
+                    executor.execute(task::runOnce);
+                } catch (RejectedExecutionException e) {
+                    // No se pierde la tarea: se reprograma como las demás y se intenta en su siguiente vencimiento
+                    task.busy.set(false);
+                    fired.decrement();
+                    rejected.increment();
+                    if (running) {
+                        System.err.println(thread.getName() + ": task rejected by executor, retrying next period: " + e.getMessage());
+                    }
+                }
+            } else {
+                overruns.increment();
+            }
+            task.deadlineTick += task.periodTicks;
+            if (task.deadlineTick <= tick) {
+                task.deadlineTick = tick + 1;
+            }
+            slotOf(task.deadlineTick).add(task);
+        }
+    }
+
+    // Quita sin desplazar el resto: el orden dentro de una casilla no importa
+    private static void removeAt(List<Task> list, int index) {
+        int last = list.size() - 1;
+        list.set(index, list.get(last));
+        list.remove(last);
+    }
+
+    String stats() {
+        return "fired=" + fired.sum() + ", overruns=" + overruns.sum() + ", lateTicks=" + lateTicks.sum() + ", rejected=" + rejected.sum();
+    }
+}
@@ -0,0 +1,33 @@
+package client;
+
+import common.DistributionMessage;
+import common.MessageUtils;
+import common.PacketHeader;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class StationStoreTest {
+
+	@Test
+	void sharedMessageIsReadOnly() {
+		DistributionMessage sent = new DistributionMessage("T1", MessageUtils.ENCODING_JSON);
+		sent.addVariable("temperature", 21.5, "C");
+		byte[] data = sent.toBytes();
+		StationStore store = new StationStore();
+		store.store(PacketHeader.peek(data, 0, data.length), data, 0, data.length, null, null);
+
+		DistributionMessage latest = store.asMap().get("T1");
+		assertNotNull(latest);
+		// Un lector no puede cambiar lo que ven los demás
+		assertThrows(UnsupportedOperationException.class, () -> latest.setValue(0, 99));
+		assertThrows(UnsupportedOperationException.class, () -> latest.getVariables().get(0).setValue(99));
+		assertThrows(UnsupportedOperationException.class, () -> latest.setTimestamp(0));
+		assertThrows(UnsupportedOperationException.class, () -> latest.addVariable("humidity", 50, "%"));
+		assertSame(latest, store.asMap().get("T1"));
+		assertEquals(21.5, store.asMap().get("T1").getValue(0));
+	}
+}
@@ -0,0 +1,37 @@
+package common;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class FixedPointTest {
+
+    private static void assertParsesLikeJdk(String text) {
+        assertEquals(Double.parseDouble(text), FixedPoint.parse(text), text);
+    }
+
+    @Test
+    void parsesSimpleDecimals() {
+        assertParsesLikeJdk("0");
+        assertParsesLikeJdk("21.5");
+        assertParsesLikeJdk("-1013.25");
+        assertParsesLikeJdk("+0.001");
+        assertParsesLikeJdk("  42.  ");
+    }
+
+    @Test
+    void moreFractionDigitsThanPowerTableFallsBackToJdk() {
+        assertParsesLikeJdk("0.0000000000000000000001"); // 22 decimales: aún en la tabla
+        assertParsesLikeJdk("0.00000000000000000000001"); // 23
+        assertParsesLikeJdk("-0.000000000000000000000000000000000000000000000000012");
+        assertParsesLikeJdk("1.00000000000000000000000000000");
+    }
+
+    @Test
+    void rejectsNonNumbers() {
+        assertThrows(NumberFormatException.class, () -> FixedPoint.parse("abc"));
+        assertThrows(NumberFormatException.class, () -> FixedPoint.parse(""));
+        assertThrows(NumberFormatException.class, () -> FixedPoint.parse("1.2.3"));
+    }
+}
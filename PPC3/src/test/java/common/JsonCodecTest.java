@@ -0,0 +1,39 @@
+package common;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class JsonCodecTest {
+
+    private static ResponseMessage response(String details) {
+        return new ResponseMessage("id-1", "OK", details);
+    }
+
+    private static String encode(ResponseMessage msg) {
+        ByteSink sink = new ByteSink();
+        JsonCodec.write(JsonCodec.RESPONSE_ADAPTER, msg, sink);
+        return sink.toString(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void reusedWriterMatchesGson() {
+        // El writer del hilo se reutiliza: el segundo mensaje no arrastra nada del primero
+        for (String details : new String[] { "primero", "temperatura 21,5 °C ñ €", "emoji 🌡 fin" }) {
+            ResponseMessage msg = response(details);
+            assertEquals(JsonCodec.COMPACT.toJson(msg), encode(msg));
+        }
+    }
+
+    @Test
+    void nonFiniteValuesAreStillRejected() {
+        ControlMessage msg = new ControlMessage("SET_PUBLISH_POLICY", "T1");
+        msg.addParameter("deadband", Double.NaN);
+        assertThrows(IllegalArgumentException.class, () -> JsonCodec.write(JsonCodec.CONTROL_ADAPTER, msg, new ByteSink()));
+        ResponseMessage next = response("tras el error");
+        assertEquals(JsonCodec.COMPACT.toJson(next), encode(next));
+    }
+}
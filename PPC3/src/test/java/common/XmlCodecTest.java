@@ -0,0 +1,27 @@
+package common;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import javax.xml.stream.XMLStreamException;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class XmlCodecTest {
+
+    @AfterEach
+    void restoreValidation() {
+        XmlCodec.setValidation(XmlCodec.Validation.FULL, 100);
+    }
+
+    @Test
+    void variableWithoutValueIsRejectedWithoutValidation() {
+        XmlCodec.setValidation(XmlCodec.Validation.OFF, 100);
+        // La segunda variable no trae <value>: no puede quedarse con el 21.5 de la primera
+        String xml = "<distributionMessage serverId=\"T1\" messageId=\"m\" timestamp=\"1\">"
+                + "<variable name=\"temperature\"><value>21.5</value><unit>C</unit></variable>"
+                + "<variable name=\"humidity\"><unit>%</unit></variable>"
+                + "</distributionMessage>";
+        assertThrows(XMLStreamException.class, () -> XmlCodec.decode(xml));
+    }
+}
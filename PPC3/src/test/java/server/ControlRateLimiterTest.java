@@ -0,0 +1,64 @@
+package server;
+
+import common.Fragmenter;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ControlRateLimiterTest {
+
+    @Test
+    void maximumSizeMessageFitsInDefaultBurst() throws Exception {
+        ControlRateLimiter limiter = ControlRateLimiter.fromProperties();
+        InetAddress source = InetAddress.getByName("10.0.0.1");
+        long now = System.nanoTime();
+        // Todos los fragmentos llegan a la vez: ninguno puede quedarse fuera
+        for (int i = 0; i < Fragmenter.MAX_FRAGMENTS; i++) {
+            assertTrue(limiter.tryAcquire(source, now), "fragment " + i + " dropped");
+        }
+    }
+
+    @Test
+    void burstBelowOneMessageIsRejected() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new ControlRateLimiter.Limits(20, Fragmenter.MAX_FRAGMENTS - 1, 200, 1024));
+        assertThrows(IllegalArgumentException.class,
+                () -> new ControlRateLimiter.Limits(20, 256, 200, 40));
+        new ControlRateLimiter.Limits(0, 0, 0, 0); // Sin límite el burst no importa
+    }
+
+    @Test
+    void floodIsStillCut() throws Exception {
+        ControlRateLimiter limiter = new ControlRateLimiter(new ControlRateLimiter.Limits(20, Fragmenter.MAX_FRAGMENTS, 0, 0));
+        InetAddress source = InetAddress.getByName("10.0.0.2");
+        long now = System.nanoTime();
+        for (int i = 0; i < Fragmenter.MAX_FRAGMENTS; i++) {
+            limiter.tryAcquire(source, now);
+        }
+        assertFalse(limiter.tryAcquire(source, now));
+    }
+
+    @Test
+    void globalDropsDoNotDrainTheSourceBucket() throws Exception {
+        int burst = Fragmenter.MAX_FRAGMENTS;
+        ControlRateLimiter limiter = new ControlRateLimiter(new ControlRateLimiter.Limits(1, burst, 1000, burst));
+        InetAddress flooder = InetAddress.getByName("10.0.0.3");
+        InetAddress wellBehaved = InetAddress.getByName("10.0.0.4");
+        long now = System.nanoTime();
+        for (int i = 0; i < burst; i++) {
+            assertTrue(limiter.tryAcquire(flooder, now)); // Vacía el cubo global
+        }
+        for (int i = 0; i < 10 * burst; i++) {
+            assertFalse(limiter.tryAcquire(wellBehaved, now)); // Descartados por el límite global
+        }
+        // El global se rellena en 0,13 s; el cubo del host tardaría 128 s si se hubiera gastado
+        long later = now + 200_000_000L;
+        for (int i = 0; i < burst; i++) {
+            assertTrue(limiter.tryAcquire(wellBehaved, later), "datagram " + i + " dropped");
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package server;
+
+import client.Client;
+import common.ResponseMessage;
+import org.junit.jupiter.api.Test;
+
+import java.net.DatagramSocket;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ControlRetryTest {
+
+    // Espera una condición, no un tiempo fijo; el límite solo evita colgar la prueba
+    private static boolean awaitCondition(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() - deadline > 0) {
+                return false;
+            }
+            Thread.sleep(5);
+        }
+        return true;
+    }
+
+    @Test
+    void retriedCommandRunsOnlyOnce() throws Exception {
+        int port;
+        try (DatagramSocket probe = new DatagramSocket(0)) {
+            port = probe.getLocalPort();
+        }
+        AtomicInteger executions = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        // El comando no termina hasta que la prueba lo suelta: el broker agota su espera
+        // y reenvía con el mismo messageId mientras tanto
+        ControlListener listener = new ControlListener("T", port, "test_received_control.log", msg -> {
+            executions.incrementAndGet();
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return new ResponseMessage(msg.getMessageId(), "OK", "done");
+        });
+        Thread thread = new Thread(listener);
+        thread.setDaemon(true);
+        thread.start();
+
+        System.setProperty("broker.stationHost", "localhost:" + port);
+        System.setProperty("broker.controlTimeoutMs", "50");
+        // Margen amplio: si el primer envío llega antes de que el listener escuche, lo cubre un reintento
+        System.setProperty("broker.controlAttempts", "1000");
+        try {
+            Client client = new Client();
+            CompletableFuture<ResponseMessage> pending =
+                    CompletableFuture.supplyAsync(() -> client.sendControlCommand("T1", "SLOW_COMMAND", null));
+            assertTrue(started.await(30, TimeUnit.SECONDS), "command never reached the station");
+
+            // El reenvío se encola detrás del comando en curso (misma cola de cliente)
+            assertTrue(awaitCondition(() -> listener.received() >= 2), "the broker never resent the command");
+            release.countDown();
+
+            ResponseMessage response = pending.get(30, TimeUnit.SECONDS);
+            assertEquals("OK", response.getStatus());
+            ResponseCache cache = listener.responseCache();
+            assertNotNull(cache);
+            assertTrue(awaitCondition(() -> cache.hits() >= 1), "the resend did not hit the response cache");
+            assertEquals(1, executions.get());
+        } finally {
+            release.countDown();
+            System.clearProperty("broker.stationHost");
+            System.clearProperty("broker.controlTimeoutMs");
+            System.clearProperty("broker.controlAttempts");
+            listener.closeLater(0);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package server;
+
+import common.ControlMessage;
+import common.FrameBatch;
+import common.WeatherVariable;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ServerBatchingTest {
+
+    /** Canal que guarda los datagramas en vez de enviarlos. */
+    static final class RecordingChannel extends BroadcastChannel {
+        final List<byte[]> datagrams = new ArrayList<>();
+
+        RecordingChannel() throws IOException {
+            super();
+        }
+
+        @Override
+        void send(byte[] data, int offset, int length, Target target) {
+            datagrams.add(Arrays.copyOfRange(data, offset, offset + length));
+        }
+    }
+
+    private static Server station(RecordingChannel channel) throws IOException {
+        Server server = new Server("T1", 0, List.of(new WeatherVariable("temperature", 0, "C"),
+                new WeatherVariable("humidity", 0, "%"), new WeatherVariable("pressure", 0, "hPa")));
+        server.configure("JSON", 10);
+        server.attachChannel(channel, new BroadcastChannel.Target("127.0.0.1", 5000, 1));
+        return server;
+    }
+
+    private static ControlMessage command(String name, Object... keyValues) {
+        ControlMessage msg = new ControlMessage(name, "T1");
+        for (int i = 0; i < keyValues.length; i += 2) {
+            msg.addParameter((String) keyValues[i], keyValues[i + 1]);
+        }
+        return msg;
+    }
+
+    private static int framesIn(byte[] datagram) throws Exception {
+        assertTrue(FrameBatch.hasPrefix(datagram, 0, datagram.length), "not a batch");
+        return FrameBatch.forEach(datagram, 0, datagram.length, (data, offset, length) -> { });
+    }
+
+    // Reloj de la prueba: los ticks se dan con instantes fijos, sin esperas reales
+    private static final long START_NANOS = 1_000_000_000L;
+    private static final long START_MILLIS = 1_700_000_000_000L;
+
+    private static void tickAt(Server server, long elapsedMs) {
+        server.tick(START_NANOS + elapsedMs * 1_000_000L, START_MILLIS + elapsedMs);
+    }
+
+    @Test
+    void twoTicksShareOneDatagramWithDefaultLatency() throws Exception {
+        try (RecordingChannel channel = new RecordingChannel()) {
+            Server server = station(channel);
+            assertEquals("OK", server.handleControlMessage(command("SET_BATCHING", "maxBytes", 1400)).getStatus());
+
+            tickAt(server, 0);
+            tickAt(server, 10); // Siguiente periodo de difusión, muy por debajo del plazo de 200 ms
+            assertEquals(0, channel.datagrams.size(), "batch flushed before its deadline");
+
+            server.handleControlMessage(command("TOGGLE_SENDING_DATA", "active", false));
+            tickAt(server, 20); // Al pausar se envía lo retenido
+            assertEquals(1, channel.datagrams.size());
+            assertEquals(2, framesIn(channel.datagrams.get(0)));
+        }
+    }
+
+    @Test
+    void batchLeavesAtItsDeadline() throws Exception {
+        try (RecordingChannel channel = new RecordingChannel()) {
+            Server server = station(channel);
+            server.configure("BIN", 10); // Tramas pequeñas: seis caben en un datagrama
+            server.handleControlMessage(command("SET_BATCHING", "maxBytes", 1400, "maxLatencyMs", 50));
+
+            for (long t = 0; t < 50; t += 10) {
+                tickAt(server, t);
+            }
+            assertEquals(0, channel.datagrams.size());
+            tickAt(server, 50);
+            assertEquals(1, channel.datagrams.size());
+            assertEquals(5, framesIn(channel.datagrams.get(0))); // La muestra de este tick abre el lote siguiente
+        }
+    }
+
+    @Test
+    void deadBandTicksStillFlushTheBatch() throws Exception {
+        try (RecordingChannel channel = new RecordingChannel()) {
+            Server server = station(channel);
+            server.configure("BIN", 10);
+            for (String variable : List.of("temperature", "humidity", "pressure")) {
+                // Ninguna variable sale de la banda: tras la primera muestra solo quedaría el heartbeat de 30 s
+                assertEquals("OK", server.handleControlMessage(command("SET_PUBLISH_POLICY", "variableName", variable,
+                        "deadband", 1e9, "heartbeatSec", 30)).getStatus());
+            }
+            server.handleControlMessage(command("SET_BATCHING", "maxBytes", 1400, "maxLatencyMs", 50));
+
+            for (long t = 0; t < 50; t += 10) {
+                tickAt(server, t);
+            }
+            assertEquals(0, channel.datagrams.size());
+            tickAt(server, 50); // Tick silencioso, pero el lote ya ha vencido
+            assertEquals(1, channel.datagrams.size());
+            assertEquals(1, framesIn(channel.datagrams.get(0)));
+        }
+    }
+
+    @Test
+    void zeroLatencyFlushesOnlyWhenFull() throws Exception {
+        try (RecordingChannel channel = new RecordingChannel()) {
+            Server server = station(channel);
+            server.handleControlMessage(command("SET_BATCHING", "maxBytes", 1400, "maxLatencyMs", 0));
+
+            int ticks = 0;
+            while (channel.datagrams.isEmpty() && ticks < 100) {
+                tickAt(server, ticks * 10L);
+                ticks++;
+            }
+            assertEquals(1, channel.datagrams.size());
+            byte[] datagram = channel.datagrams.get(0);
+            assertTrue(datagram.length <= 1400);
+            assertEquals(ticks, framesIn(datagram)); // Sale cuando la siguiente ya no cabría, no en el primer tick
+            assertTrue(ticks >= 2);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package server;
+
+import common.ControlMessage;
+import common.ResponseMessage;
+import common.WeatherVariable;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ServerCommandLockTest {
+
+    /** Canal cuyo envío se queda parado hasta que la prueba lo suelta. */
+    static final class BlockingChannel extends BroadcastChannel {
+        final CountDownLatch sending = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        BlockingChannel() throws IOException {
+            super();
+        }
+
+        @Override
+        void send(byte[] data, int offset, int length, Target target) {
+            sending.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Test
+    void schemaAnnouncementDoesNotHoldTheCommandLock() throws Exception {
+        try (BlockingChannel channel = new BlockingChannel()) {
+            Server server = new Server("T1", 0, List.of(new WeatherVariable("temperature", 0, "C")));
+            server.configure("JSON", 1000);
+            server.attachChannel(channel, new BroadcastChannel.Target("127.0.0.1", 5000, 1));
+            try {
+                // REQUEST_SCHEMA se queda enviando el esquema
+                CompletableFuture<ResponseMessage> slow =
+                        CompletableFuture.supplyAsync(() -> server.handleControlMessage(new ControlMessage("REQUEST_SCHEMA", "T1")));
+                assertTrue(channel.sending.await(30, TimeUnit.SECONDS), "schema was never sent");
+
+                // Mientras tanto otro comando y una consulta responden sin esperarle
+                ControlMessage batching = new ControlMessage("SET_BATCHING", "T1");
+                batching.addParameter("maxBytes", 1400);
+                assertEquals("OK", CompletableFuture.supplyAsync(() -> server.handleControlMessage(batching))
+                        .get(30, TimeUnit.SECONDS).getStatus());
+                assertEquals("OK", CompletableFuture.supplyAsync(
+                        () -> server.handleControlMessage(new ControlMessage("GET_BROADCAST_STATS", "T1")))
+                        .get(30, TimeUnit.SECONDS).getStatus());
+
+                channel.release.countDown();
+                assertEquals("OK", slow.get(30, TimeUnit.SECONDS).getStatus());
+            } finally {
+                channel.release.countDown();
+            }
+        }
+    }
+}